@@ -5,7 +5,18 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 
 @SpringBootApplication
 public class Application {
+
+    // Сколько секунд простаивающее соединение HTTP-клиента держится открытым для повторного
+    // использования. Настройка общая для всей JVM и читается один раз, до создания первого
+    // клиента, поэтому задаётся здесь; переопределяется при запуске:
+    // java -Djdk.httpclient.keepalive.timeout=30 -jar SearchEngine.jar
+    private static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+    private static final String DEFAULT_KEEP_ALIVE_SECONDS = "60";
+
     public static void main(String[] args) {
+        if (System.getProperty(KEEP_ALIVE_PROPERTY) == null) {
+            System.setProperty(KEEP_ALIVE_PROPERTY, DEFAULT_KEEP_ALIVE_SECONDS);
+        }
         SpringApplication.run(Application.class, args);
     }
 }
@@ -12,4 +12,97 @@ public class SearchEngineProperties {
     private String referrer;
     private int delayMinMs;
     private int delayMaxMs;
-}
\ No newline at end of file
+
+    private Crawl crawl = new Crawl();
+    private Politeness politeness = new Politeness();
+    private Fetch fetch = new Fetch();
+    private Discovery discovery = new Discovery();
+    private Storage storage = new Storage();
+    private Lemma lemma = new Lemma();
+    private Search search = new Search();
+
+    @Getter
+    @Setter
+    public static class Crawl {
+        // Количество потоков разбора страниц, общих для всех сайтов
+        private int threads = Runtime.getRuntime().availableProcessors();
+        // Сколько сайтов индексируется одновременно; остальные ждут освобождения места
+        private int activeSites = Runtime.getRuntime().availableProcessors();
+        // Сколько загрузок одновременно выполняется по всем сайтам
+        private int maxInFlight = 64;
+        // Сколько страниц одного сайта одновременно загружается и разбирается
+        private int perSiteMaxInFlight = 8;
+        // Сколько страниц может одновременно находиться в обработке и в очереди на запись
+        private int queueCapacity = 64;
+        // Сколько страниц записывается в БД одной транзакцией
+        private int batchSize = 20;
+        // Страницы, SimHash которых отличается не больше чем на столько бит, считаются дубликатами;
+        // отрицательное значение отключает поиск дубликатов
+        private int nearDuplicateDistance = 3;
+    }
+
+    @Getter
+    @Setter
+    public static class Politeness {
+        // Сколько запросов к хосту можно выполнить подряд без ожидания
+        private int burst = 1;
+        // Ответ медленнее этого порога считается признаком перегрузки хоста
+        private long slowResponseMs = 3000;
+        // Прирост частоты запросов (запр/с) после каждого быстрого ответа
+        private double increaseStep = 0.05;
+        // Множитель частоты запросов при перегрузке хоста
+        private double decreaseFactor = 0.5;
+    }
+
+    @Getter
+    @Setter
+    public static class Fetch {
+        private int connectTimeoutMs = 10000;
+        private int requestTimeoutMs = 10000;
+        // Тело ответа длиннее лимита обрезается (до и после распаковки)
+        private int maxBodyBytes = 5 * 1024 * 1024;
+        // Потоки обработки ответов HTTP-клиента; ожидание ответа потоков не занимает
+        private int ioThreads = 2;
+    }
+
+    @Getter
+    @Setter
+    public static class Discovery {
+        // Соблюдать Disallow и Crawl-delay из robots.txt
+        private boolean robots = true;
+        // Ставить в очередь адреса из sitemap.xml до начала обхода по ссылкам
+        private boolean sitemaps = true;
+        // Сколько карт сайта (включая вложенные в sitemap index) загружается не больше
+        private int maxSitemaps = 50;
+        private int maxSitemapUrls = 50000;
+    }
+
+    @Getter
+    @Setter
+    public static class Storage {
+        // Сохранять ли сжатый исходный HTML вместе с текстом страницы
+        private boolean storeHtml = false;
+        // Уровень сжатия deflate: 1 — быстрее, 9 — плотнее
+        private int compressionLevel = 6;
+    }
+
+    @Getter
+    @Setter
+    public static class Lemma {
+        // Сколько словоформ хранит кеш лемм, общий для индексации и поиска
+        private int cacheSize = 200_000;
+        // Потоки пакетной лемматизации; словари морфологии у них общие
+        private int threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    @Getter
+    @Setter
+    public static class Search {
+        // Держать индекс активных поколений в памяти и отвечать на запросы без обращения к БД
+        private boolean inMemory = false;
+        // Каталог файлов сегментов индекса; если не задан, сегменты не ведутся
+        private String segmentDir;
+        // Сколько сегментов может накопиться у сайта до слияния
+        private int maxSegments = 8;
+    }
+}
@@ -3,10 +3,30 @@ package searchengine.config;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Setter
 @Getter
 
 public class Site {
     private String url;
     private String name;
+    // Доля сайта в общем бюджете загрузок относительно других сайтов
+    private int weight = 1;
+    // Ограничения обхода; null — без ограничения
+    private Integer maxDepth;
+    private Integer maxPages;
+    private Long maxBytes;
+    // Поправки к очерёдности адресов: совпавший с шаблоном адрес загружается так,
+    // будто он на boost уровней ближе к корню (отрицательный boost откладывает адрес)
+    private List<UrlBoost> urlBoosts = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class UrlBoost {
+        // Регулярное выражение для полного канонического адреса
+        private String pattern;
+        private double boost;
+    }
 }
@@ -12,6 +12,7 @@ import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.services.IndexingService;
 import searchengine.services.SearchService;
 import searchengine.services.StatisticsService;
+import searchengine.services.crawler.CrawlMode;
 
 @RestController
 @RequestMapping("/api")
@@ -28,8 +29,10 @@ public class ApiController {
     }
 
     @GetMapping("/startIndexing")
-    public IndexingResponse startIndexing() {
-        return indexingService.startIndexing();
+    public IndexingResponse startIndexing(@RequestParam(defaultValue = "false") boolean incremental,
+                                          @RequestParam(defaultValue = "false") boolean resume) {
+        CrawlMode mode = resume ? CrawlMode.RESUME : incremental ? CrawlMode.INCREMENTAL : CrawlMode.FULL;
+        return indexingService.startIndexing(mode);
     }
 
     @GetMapping("/stopIndexing")
@@ -0,0 +1,39 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+@Getter
+@Setter
+@Entity
+@Table(name = "frontier", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"site_id", "url_hash"})
+})
+public class FrontierEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "frontier_id", nullable = false)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "site_id", nullable = false, foreignKey = @ForeignKey(name = "fk_frontier_site"))
+    private SiteEntity site;
+
+    // Отпечаток канонического адреса, см. UrlNormalizer.fingerprint
+    @Column(name = "url_hash", nullable = false)
+    private Long urlHash;
+
+    @Column(name = "url", columnDefinition = "TEXT", nullable = false)
+    private String url;
+
+    // Глубина ссылки от корня сайта
+    @Column(name = "depth", nullable = false)
+    private Integer depth;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false)
+    private FrontierState state;
+}
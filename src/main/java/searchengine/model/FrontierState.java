@@ -0,0 +1,10 @@
+package searchengine.model;
+
+public enum FrontierState {
+    // Адрес найден и ждёт загрузки
+    QUEUED,
+    // Адрес загружен, но записывать в индекс нечего
+    FETCHED,
+    // Страница записана в индекс
+    INDEXED
+}
@@ -12,6 +12,7 @@ import javax.persistence.*;
 public class IndexEntity {
 
     @Id
+    // Строки пишутся только в обход Hibernate, id берётся из значения столбца по умолчанию
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "index_id", nullable = false)
     private Long id;
@@ -9,11 +9,12 @@ import javax.persistence.*;
 @Setter
 @Entity
 @Table(name = "lemma", uniqueConstraints = {
-        @UniqueConstraint(columnNames = {"site_id", "lemma"})
+        @UniqueConstraint(columnNames = {"site_id", "generation", "lemma"})
 })
 public class LemmaEntity {
 
     @Id
+    // Строки пишутся только в обход Hibernate, id берётся из значения столбца по умолчанию
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "lemma_id", nullable = false)
     private Long id;
@@ -22,6 +23,10 @@ public class LemmaEntity {
     @JoinColumn(name = "site_id", nullable = false, foreignKey = @ForeignKey(name = "fk_lemma_site"))
     private SiteEntity site;
 
+    // Поколение индекса сайта, к которому относится лемма
+    @Column(name = "generation", nullable = false)
+    private int generation;
+
     @Column(name = "lemma", nullable = false)
     private String lemma;
 
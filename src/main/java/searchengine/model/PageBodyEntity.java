@@ -0,0 +1,25 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+// Сжатое содержимое страницы; читается только для построения сниппетов
+@Getter
+@Setter
+@Entity
+@Table(name = "page_body")
+public class PageBodyEntity {
+    @Id
+    @Column(name = "page_id", nullable = false)
+    private Long pageId;
+
+    // Извлечённый текст страницы, сжатый deflate
+    @Column(name = "text", nullable = false)
+    private byte[] text;
+
+    // Исходный HTML, сжатый deflate; хранится, только если включено search-engine.storage.store-html
+    @Column(name = "html")
+    private byte[] html;
+}
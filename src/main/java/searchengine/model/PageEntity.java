@@ -11,7 +11,9 @@ import javax.persistence.*;
 @Table(name = "page")
 public class PageEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Блоки id из последовательности позволяют Hibernate группировать вставки в пакеты
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "page_seq")
+    @SequenceGenerator(name = "page_seq", sequenceName = "page_seq", allocationSize = 50)
     @Column(name = "page_id", nullable = false)
     private Long id;
 
@@ -19,12 +21,35 @@ public class PageEntity {
     @JoinColumn(name = "site_id", nullable = false, foreignKey = @ForeignKey(name = "fk_page_site"))
     private SiteEntity site;
 
+    // Поколение индекса сайта: новое строится рядом с активным и заменяет его целиком
+    @Column(name = "generation", nullable = false)
+    private int generation;
+
     @Column(name = "path", nullable = false)
     private String path;
 
     @Column(name = "code", nullable = false)
     private Integer code;
 
-    @Column(name = "content", columnDefinition = "MEDIUMTEXT", nullable = false)
-    private String content;
+    @Column(name = "title", length = 512)
+    private String title;
+
+    @Column(name = "etag")
+    private String etag;
+
+    @Column(name = "last_modified", length = 64)
+    private String lastModified;
+
+    // SHA-256 текста страницы: совпадение означает, что леммы пересчитывать не нужно
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // SimHash текста страницы для поиска почти дубликатов; null для коротких страниц
+    @Column(name = "simhash")
+    private Long simhash;
+
+    // Страница, почти дубликатом которой является эта; у дубликатов нет тела и индексов
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "canonical_page_id", foreignKey = @ForeignKey(name = "fk_page_canonical_page"))
+    private PageEntity canonicalPage;
 }
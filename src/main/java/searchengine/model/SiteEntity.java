@@ -32,4 +32,12 @@ public class SiteEntity {
 
     @Column(name = "name", nullable = false)
     private String name;
+
+    // Поколение страниц и лемм, по которому идёт поиск; null, пока сайт ни разу не проиндексирован
+    @Column(name = "active_generation")
+    private Integer activeGeneration;
+
+    // Поколение, которое строит полная индексация; null, если она не выполняется
+    @Column(name = "building_generation")
+    private Integer buildingGeneration;
 }
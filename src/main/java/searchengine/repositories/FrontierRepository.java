@@ -0,0 +1,38 @@
+package searchengine.repositories;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import searchengine.model.FrontierEntity;
+import searchengine.model.FrontierState;
+
+public interface FrontierRepository extends JpaRepository<FrontierEntity, Long> {
+
+    boolean existsBySiteId(Long siteId);
+
+    @Query("SELECT f.urlHash FROM FrontierEntity f WHERE f.site.id = :siteId")
+    List<Long> findUrlHashesBySiteId(@Param("siteId") Long siteId);
+
+    interface QueuedUrl {
+        String getUrl();
+
+        int getDepth();
+    }
+
+    @Query("""
+            SELECT f.url AS url, f.depth AS depth FROM FrontierEntity f
+            WHERE f.site.id = :siteId AND f.state = searchengine.model.FrontierState.QUEUED
+            ORDER BY f.depth, f.id
+            """)
+    List<QueuedUrl> findQueuedBySiteId(@Param("siteId") Long siteId);
+
+    long countBySiteIdAndStateNot(Long siteId, FrontierState state);
+
+    @Modifying
+    @Query("DELETE FROM FrontierEntity f WHERE f.site.id = :siteId")
+    void deleteAllBySiteId(@Param("siteId") Long siteId);
+}
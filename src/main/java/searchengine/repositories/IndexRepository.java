@@ -1,5 +1,6 @@
 package searchengine.repositories;
 
+import java.util.Collection;
 import java.util.List;
 
 
@@ -11,16 +12,52 @@ import org.springframework.data.repository.query.Param;
 import searchengine.model.IndexEntity;
 
 public interface IndexRepository extends JpaRepository<IndexEntity, Long> {
-    void deleteByPageId(Long pageId);
 
-    long countByLemmaId(Long lemmaId);
+    // Страницы, содержащие все леммы запроса своего сайта: lemma_id запроса относятся
+    // к разным сайтам, поэтому число совпавших строк сравнивается с числом лемм сайта
+    String MATCHING_PAGES = """
+            WITH query_lemma AS (
+                SELECT lemma_id, site_id FROM lemma WHERE lemma_id IN (:lemmaIds)
+            ), needed AS (
+                SELECT site_id, count(*) AS lemma_count FROM query_lemma GROUP BY site_id
+            ), matches AS (
+                SELECT i.page_id, q.site_id, sum(i."rank") AS relevance, count(*) AS lemma_count
+                FROM "index" i
+                JOIN query_lemma q ON q.lemma_id = i.lemma_id
+                GROUP BY i.page_id, q.site_id
+            )
+            SELECT m.page_id, m.relevance
+            FROM matches m
+            JOIN needed n ON n.site_id = m.site_id AND n.lemma_count = m.lemma_count
+            """;
+
+    String RANKED_PAGES = "SELECT page_id AS pageId, relevance / max(relevance) OVER () AS relevance, "
+            + "count(*) OVER () AS total FROM (" + MATCHING_PAGES + ") found "
+            + "ORDER BY relevance DESC, page_id LIMIT :limit OFFSET :offset";
+
+    interface RankedPage {
+        Long getPageId();
 
-    boolean existsByLemmaIdAndPageId(Long lemmaId, Long pageId);
+        // Сумма rank лемм запроса, делённая на наибольшую среди всех найденных страниц
+        Double getRelevance();
 
-    @Query("SELECT ie.page.id FROM IndexEntity ie WHERE ie.lemma.id = :lemmaId")
-    List<Long> findPageIdsByLemmaId(@Param("lemmaId") Long lemmaId);
+        // Число всех найденных страниц, а не только попавших в выдачу
+        Long getTotal();
+    }
 
-    List<IndexEntity> findByPageIdAndLemmaIdIn(Long pageId, List<Long> lemmaIds);
+    /**
+     * Страница выдачи одним запросом: пересечение, релевантность, нормализация,
+     * сортировка и окно offset/limit. Общее число найденных страниц приходит в
+     * каждой строке; если окно за пределами выдачи, оно пусто.
+     */
+    @Query(value = RANKED_PAGES, nativeQuery = true)
+    List<RankedPage> findRankedPages(@Param("lemmaIds") Collection<Long> lemmaIds, @Param("limit") int limit,
+            @Param("offset") int offset);
+
+    @Query(value = "SELECT count(*) FROM (" + MATCHING_PAGES + ") found", nativeQuery = true)
+    long countMatchingPages(@Param("lemmaIds") Collection<Long> lemmaIds);
+
+    void deleteByPageId(Long pageId);
 
     @Modifying
     // @Transactional
@@ -30,4 +67,21 @@ public interface IndexRepository extends JpaRepository<IndexEntity, Long> {
     // @Transactional
     @Query("DELETE FROM IndexEntity ie WHERE ie.page.id IN :pageIds")
     void deleteAllByPageIdsIn(@Param("pageIds") List<Long> pageIds);
+
+    @Modifying
+    @Query("DELETE FROM IndexEntity ie WHERE ie.page.id IN "
+            + "(SELECT p.id FROM PageEntity p WHERE p.site.id = :siteId AND p.generation < :generation)")
+    void deleteAllBySiteIdAndGenerationLessThan(@Param("siteId") Long siteId, @Param("generation") int generation);
+
+    interface PageLemma {
+        Long getPageId();
+
+        Long getLemmaId();
+
+        String getLemma();
+    }
+
+    @Query("SELECT ie.page.id AS pageId, l.id AS lemmaId, l.lemma AS lemma FROM IndexEntity ie JOIN ie.lemma l "
+            + "WHERE ie.page.id IN :pageIds")
+    List<PageLemma> findPageLemmasByPageIdIn(@Param("pageIds") Collection<Long> pageIds);
 }
\ No newline at end of file
@@ -1,7 +1,7 @@
 package searchengine.repositories;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
@@ -12,23 +12,29 @@ import searchengine.model.LemmaEntity;
 
 public interface LemmaRepository extends JpaRepository<LemmaEntity, Long> {
     @Modifying
-    // @Transactional
-    void deleteAllBySiteId(Long siteId);
+    @Query("DELETE FROM LemmaEntity l WHERE l.site.id = :siteId AND l.generation < :generation")
+    void deleteAllBySiteIdAndGenerationLessThan(@Param("siteId") Long siteId, @Param("generation") int generation);
 
-    List<LemmaEntity> findBySiteId(Long id);
+    @Query("SELECT MAX(l.generation) FROM LemmaEntity l WHERE l.site.id = :siteId")
+    Integer findMaxGenerationBySiteId(@Param("siteId") Long siteId);
 
-    Optional<LemmaEntity> findBySiteIdAndLemma(Long id, String lemmaStr);
+    long countBySiteIdAndGeneration(Long id, int generation);
 
-    long countBySiteId(Long id);
+    // Леммы активных поколений сайтов
+    @Query("""
+            SELECT l FROM LemmaEntity l JOIN l.site s
+            WHERE l.lemma IN :lemmas AND s.id IN :siteIds AND l.generation = s.activeGeneration
+            """)
+    List<LemmaEntity> findActiveByLemmaInAndSiteIdIn(@Param("lemmas") List<String> lemmas,
+            @Param("siteIds") List<Long> siteIds);
 
-    List<LemmaEntity> findByLemmaInAndSiteIdIn(List<String> lemmas, List<Long> siteIds);
+    List<LemmaEntity> findBySiteIdAndGenerationAndLemmaIn(Long siteId, int generation, Collection<String> lemmas);
 
     @Modifying
-    // @Transactional
-    @Query(value = """
-            INSERT INTO lemma (site_id, lemma, frequency)
-            VALUES (:siteId, :lemma, 1)
-            ON CONFLICT (site_id, lemma) DO UPDATE SET frequency = lemma.frequency + 1
-            """, nativeQuery = true)
-    void upsertLemma(@Param("siteId") Long siteId, @Param("lemma") String lemma);
+    @Query("UPDATE LemmaEntity l SET l.frequency = l.frequency - :delta WHERE l.id IN :ids")
+    void decrementFrequency(@Param("ids") Collection<Long> ids, @Param("delta") int delta);
+
+    @Modifying
+    @Query("DELETE FROM LemmaEntity l WHERE l.id IN :ids AND l.frequency <= 0")
+    void deleteUnusedByIdIn(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,8 @@
+package searchengine.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import searchengine.model.PageBodyEntity;
+
+public interface PageBodyRepository extends JpaRepository<PageBodyEntity, Long> {
+}
@@ -1,5 +1,6 @@
 package searchengine.repositories;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,16 +12,81 @@ import org.springframework.data.repository.query.Param;
 import searchengine.model.PageEntity;
 
 public interface PageRepository extends JpaRepository<PageEntity, Long> {
+    // Поколение удаляется одним запросом вместе со своими дубликатами; тела удаляются каскадом
     @Modifying
-    // @Transactional
-    void deleteAllBySiteId(Long siteId);
+    @Query("DELETE FROM PageEntity p WHERE p.site.id = :siteId AND p.generation < :generation")
+    void deleteAllBySiteIdAndGenerationLessThan(@Param("siteId") Long siteId, @Param("generation") int generation);
 
-    @Query("SELECT p FROM PageEntity p WHERE p.site.id = :siteId")
-    List<PageEntity> findBySiteId(@Param("siteId") Long siteId);
+    @Query("SELECT MAX(p.generation) FROM PageEntity p WHERE p.site.id = :siteId")
+    Integer findMaxGenerationBySiteId(@Param("siteId") Long siteId);
 
-    Optional<PageEntity> findByPath(String path);
+    Optional<PageEntity> findBySiteIdAndGenerationAndPath(Long siteId, int generation, String path);
 
-    long countBySiteId(Long siteId);
-    
-    long countBySiteIdIn(List<Long> siteIds);
-}
\ No newline at end of file
+    long countBySiteIdAndGeneration(Long siteId, int generation);
+
+    // Почти дубликаты не индексируются и не учитываются при оценке популярности лемм
+    @Query("""
+            SELECT COUNT(p) FROM PageEntity p JOIN p.site s
+            WHERE s.id IN :siteIds AND p.generation = s.activeGeneration AND p.canonicalPage IS NULL
+            """)
+    long countActiveCanonicalBySiteIdIn(@Param("siteIds") List<Long> siteIds);
+
+    interface PageIdByPath {
+        Long getId();
+
+        String getPath();
+    }
+
+    @Query("""
+            SELECT p.id AS id, p.path AS path FROM PageEntity p
+            WHERE p.site.id = :siteId AND p.generation = :generation AND p.path IN :paths
+            """)
+    List<PageIdByPath> findIdsBySiteIdAndGenerationAndPathIn(@Param("siteId") Long siteId,
+            @Param("generation") int generation, @Param("paths") Collection<String> paths);
+
+    @Query("SELECT p.id AS id, p.path AS path FROM PageEntity p WHERE p.canonicalPage.id IN :canonicalIds")
+    List<PageIdByPath> findIdsByCanonicalPageIdIn(@Param("canonicalIds") Collection<Long> canonicalIds);
+
+    /**
+     * Отвязывает дубликаты от канонической страницы, которая удалена или сама
+     * стала дубликатом. Валидаторы и отпечатки стираются: следующая загрузка не
+     * получит 304 и проиндексирует страницу как изменившуюся.
+     */
+    @Modifying
+    @Query("""
+            UPDATE PageEntity p SET p.canonicalPage = NULL, p.etag = NULL, p.lastModified = NULL,
+                   p.contentHash = NULL, p.simhash = NULL
+            WHERE p.id IN :ids
+            """)
+    void detachDuplicates(@Param("ids") Collection<Long> ids);
+
+    // Сведения о ранее загруженной странице без её содержимого
+    interface PageState {
+        Long getId();
+
+        String getPath();
+
+        String getEtag();
+
+        String getLastModified();
+
+        String getContentHash();
+
+        Long getSimhash();
+
+        Long getCanonicalPageId();
+    }
+
+    @Query("""
+            SELECT p.id AS id, p.path AS path, p.etag AS etag, p.lastModified AS lastModified,
+                   p.contentHash AS contentHash, p.simhash AS simhash, c.id AS canonicalPageId
+            FROM PageEntity p LEFT JOIN p.canonicalPage c WHERE p.site.id = :siteId AND p.generation = :generation
+            """)
+    List<PageState> findStatesBySiteIdAndGeneration(@Param("siteId") Long siteId,
+            @Param("generation") int generation);
+
+    @Modifying
+    @Query("UPDATE PageEntity p SET p.code = :code, p.etag = :etag, p.lastModified = :lastModified WHERE p.id = :id")
+    void updateValidators(@Param("id") Long id, @Param("code") Integer code, @Param("etag") String etag,
+            @Param("lastModified") String lastModified);
+}
@@ -2,6 +2,7 @@ package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -10,6 +11,7 @@ import searchengine.model.SiteEntity;
 
 import javax.persistence.LockModeType;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,4 +27,19 @@ public interface SiteRepository extends JpaRepository<SiteEntity, Long> {
     boolean existsByIndexingStatus(IndexingStatus indexingStatus);
 
     List<SiteEntity> findByIndexingStatus(IndexingStatus status);
+
+    // Сайты, у которых есть готовое поколение индекса, — по ним идёт поиск
+    boolean existsByActiveGenerationIsNotNull();
+
+    List<SiteEntity> findByActiveGenerationIsNotNull();
+
+    // Переключение на новое поколение одним UPDATE: поиск видит либо старое, либо новое целиком
+    @Modifying
+    @Query("""
+            UPDATE SiteEntity s SET s.activeGeneration = :generation, s.buildingGeneration = NULL,
+                s.indexingStatus = :status, s.lastError = NULL, s.statusTime = :statusTime
+            WHERE s.id = :siteId
+            """)
+    void activateGeneration(@Param("siteId") Long siteId, @Param("generation") int generation,
+            @Param("status") IndexingStatus status, @Param("statusTime") LocalDateTime statusTime);
 }
@@ -1,9 +1,10 @@
 package searchengine.services;
 
 import searchengine.dto.Indexing.IndexingResponse;
+import searchengine.services.crawler.CrawlMode;
 
 public interface IndexingService {
-    IndexingResponse startIndexing();
+    IndexingResponse startIndexing(CrawlMode mode);
     IndexingResponse stopIndexing();
     IndexingResponse indexSinglePage(String url);
 }
@@ -3,8 +3,6 @@ package searchengine.services;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Service;
 
@@ -15,23 +13,30 @@ import searchengine.dto.Indexing.IndexingResponse;
 import searchengine.exceptions.IndexingAlreadyStartedException;
 import searchengine.exceptions.IndexingNotStartedException;
 import searchengine.exceptions.PageOutsideSitesException;
-import searchengine.model.IndexEntity;
 import searchengine.model.IndexingStatus;
-import searchengine.model.LemmaEntity;
+import searchengine.model.PageBodyEntity;
 import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
 import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
+import searchengine.services.crawler.ContentHash;
+import searchengine.services.crawler.CrawlMode;
+import searchengine.services.crawler.CrawledPage;
+import searchengine.services.crawler.FetchResult;
+import searchengine.services.crawler.LemmaDictionary;
+import searchengine.services.crawler.PageBodyCodec;
+import searchengine.services.crawler.PageFetcher;
+import searchengine.services.crawler.PagePostings;
+import searchengine.services.crawler.SimHash;
+import searchengine.services.crawler.SiteIndexWriter;
+import searchengine.services.crawler.UrlNormalizer;
 import searchengine.services.lemma.LemmaService;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -45,18 +50,18 @@ public class IndexingServiceImpl implements IndexingService {
     private final SitesList sitesList;
     private final SiteIndexer siteIndexer;
     private final LemmaService lemmaService;
+    private final PageFetcher pageFetcher;
     private final SearchEngineProperties props;
+    private final SiteIndexWriter indexWriter;
 
     private final PageRepository pageRepository;
-    private final IndexRepository indexRepository;
-    private final LemmaRepository lemmaRepository;
     private final SiteRepository siteRepository;
 
     private ExecutorService executorService;
     private volatile boolean isIndexing = false;
 
     @Override
-    public IndexingResponse startIndexing() {
+    public IndexingResponse startIndexing(CrawlMode mode) {
 
         synchronized (this) {
             if (isIndexing) {
@@ -65,11 +70,11 @@ public class IndexingServiceImpl implements IndexingService {
             isIndexing = true;
         }
 
-        int numberOfCores = Runtime.getRuntime().availableProcessors();
-        executorService = Executors.newFixedThreadPool(numberOfCores);
+        // Загрузки всех сайтов распределяет CrawlScheduler; здесь только потоки записи обходов
+        executorService = Executors.newFixedThreadPool(Math.max(1, props.getCrawl().getActiveSites()));
 
         for (Site site : sitesList.getSites()) {
-            executorService.submit(() -> siteIndexer.index(site));
+            executorService.submit(() -> siteIndexer.index(site, mode));
         }
         executorService.shutdown();
 
@@ -114,16 +119,30 @@ public class IndexingServiceImpl implements IndexingService {
             );
         }
 
+        String path = UrlNormalizer.normalize(url);
+        if (path == null) {
+            return new IndexingResponse(false, "Некорректный адрес страницы");
+        }
+
         try {
-            Connection.Response response = Jsoup.connect(url)
-                    .userAgent(props.getUserAgent())
-                    .referrer(props.getReferrer().trim())
-                    .timeout(10000)
-                    .followRedirects(true)
-                    .execute();
-
-            if (response.statusCode() >= 400) {
-                return new IndexingResponse(false, "Страница недоступна (HTTP " + response.statusCode() + ")");
+            FetchResult response;
+            try {
+                response = pageFetcher.fetch(path).join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                return new IndexingResponse(false, "Не удалось загрузить страницу: " + cause.getMessage());
+            }
+
+            if (response.getStatusCode() >= 400) {
+                return new IndexingResponse(false, "Страница недоступна (HTTP " + response.getStatusCode() + ")");
+            }
+            if (!response.hasBody()) {
+                return new IndexingResponse(false,
+                        "Не удалось загрузить страницу: неподдерживаемый тип содержимого " + response.getContentType());
+            }
+            if (response.isTruncated()) {
+                return new IndexingResponse(false, "Не удалось загрузить страницу: размер превышает лимит "
+                        + props.getFetch().getMaxBodyBytes() + " байт");
             }
 
             Document doc = response.parse();
@@ -136,24 +155,43 @@ public class IndexingServiceImpl implements IndexingService {
                         s.setName(allowedConfigSite.getName());
                         s.setIndexingStatus(IndexingStatus.INDEXED);
                         s.setStatusTime(LocalDateTime.now());
+                        s.setActiveGeneration(0);
                         return siteRepository.save(s);
                     });
+            int generation = liveGeneration(site);
 
-            Optional<PageEntity> existingPage = pageRepository.findByPath(url);
-            if (existingPage.isPresent()) {
-                deletePageAndItsLemmas(existingPage.get());
-            }
+            Optional<PageEntity> existingPage = pageRepository.findBySiteIdAndGenerationAndPath(site.getId(), generation,
+                            path)
+                    .or(() -> pageRepository.findBySiteIdAndGenerationAndPath(site.getId(), generation, url));
 
             PageEntity page = new PageEntity();
+            existingPage.ifPresent(existing -> page.setId(existing.getId()));
             page.setSite(site);
-            page.setPath(url);
-            page.setCode(response.statusCode());
-            page.setContent(doc.html());
-            page = pageRepository.save(page);
+            page.setPath(path);
+            page.setCode(response.getStatusCode());
+            String text = lemmaService.extractText(doc);
+            String title = doc.title().trim();
+            page.setTitle(title.isEmpty() ? null : title.substring(0, Math.min(title.length(), 512)));
+            page.setEtag(response.getEtag());
+            page.setLastModified(response.getLastModified());
+            page.setContentHash(ContentHash.of(text));
+            page.setSimhash(SimHash.of(text));
+
+            SearchEngineProperties.Storage storage = props.getStorage();
+            PageBodyEntity body = new PageBodyEntity();
+            body.setText(PageBodyCodec.compress(text, storage.getCompressionLevel()));
+            if (storage.isStoreHtml()) {
+                body.setHtml(PageBodyCodec.compress(doc.outerHtml(), storage.getCompressionLevel()));
+            }
 
-            String text = lemmaService.extractText(doc.html());
-            Map<String, Integer> lemmas = lemmaService.getLemmas(text);
-            saveLemmasForPage(page, lemmas);
+            // Разница между старым и новым набором лемм страницы применяется тем же
+            // писателем, что и при обходе, без пересчёта лемм всего сайта
+            LemmaDictionary dictionary = new LemmaDictionary();
+            CrawledPage crawledPage = existingPage.isPresent()
+                    ? CrawledPage.modified(page, body, text, List.of())
+                    : CrawledPage.created(page, body, text, List.of());
+            indexWriter.writePage(site.getId(), generation,
+                    crawledPage.withPostings(PagePostings.of(lemmaService.getLemmas(text), dictionary)), dictionary);
 
             log.info("Страница переиндексирована: " + url);
             return new IndexingResponse(true, null);
@@ -163,53 +201,11 @@ public class IndexingServiceImpl implements IndexingService {
         }
     }
 
-    @Transactional
-    public void deletePageAndItsLemmas(PageEntity page) {
-        // Удаляем связи в index
-        indexRepository.deleteByPageId(page.getId());
-
-        // Уменьшаем frequency для лемм
-        List<LemmaEntity> lemmas = lemmaRepository.findBySiteId(page.getSite().getId());
-        for (LemmaEntity lemma : lemmas) {
-            long count = indexRepository.countByLemmaId(lemma.getId());
-            if (count == 0) {
-                lemmaRepository.delete(lemma);
-            } else {
-                lemma.setFrequency((int) count);
-                lemmaRepository.save(lemma);
-            }
-        }
-
-        // Удаляем саму страницу
-        pageRepository.delete(page);
-    }
-
-    public void saveLemmasForPage(PageEntity page, Map<String, Integer> lemmaFrequencies) {
-        Long siteId = page.getSite().getId();
-
-        // 1. Обновляем frequency для всех лемм
-        List<String> lemmas = new ArrayList<>(lemmaFrequencies.keySet());
-        lemmas.sort(String::compareTo);
-
-        for (String lemma : lemmas) {
-            lemmaRepository.upsertLemma(siteId, lemma);
-        }
-
-        // 2. Получаем леммы и создаём связи
-        for (Map.Entry<String, Integer> entry : lemmaFrequencies.entrySet()) {
-            String lemma = entry.getKey();
-            int rank = entry.getValue();
-
-            LemmaEntity lemmaEntity = lemmaRepository.findBySiteIdAndLemma(siteId, lemma)
-                    .orElseThrow(() -> new IllegalStateException("Лемма не найдена после upsert: " + lemma));
-
-            if (!indexRepository.existsByLemmaIdAndPageId(lemmaEntity.getId(), page.getId())) {
-                IndexEntity index = new IndexEntity();
-                index.setLemma(lemmaEntity);
-                index.setPage(page);
-                index.setRank(rank);
-                indexRepository.save(index);
-            }
+    // Страница переиндексируется в поколении, по которому идёт поиск, а если его ещё нет — в строящемся
+    private static int liveGeneration(SiteEntity site) {
+        if (site.getActiveGeneration() != null) {
+            return site.getActiveGeneration();
         }
+        return site.getBuildingGeneration() != null ? site.getBuildingGeneration() : 0;
     }
 }
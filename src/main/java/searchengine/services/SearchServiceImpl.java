@@ -4,23 +4,27 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Jsoup;
 import org.jsoup.safety.Safelist;
-import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Service;
 import searchengine.dto.search.SearchResponse;
 import searchengine.dto.search.SearchResultItem;
 import searchengine.exceptions.EmptyUrlException;
 import searchengine.exceptions.NoIndexedSitesException;
 import searchengine.exceptions.NoMatchingWordsException;
-import searchengine.model.IndexEntity;
-import searchengine.model.IndexingStatus;
 import searchengine.model.LemmaEntity;
+import searchengine.model.PageBodyEntity;
 import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
 import searchengine.repositories.IndexRepository;
 import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.PageBodyRepository;
 import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
+import searchengine.services.crawler.PageBodyCodec;
 import searchengine.services.lemma.LemmaService;
+import searchengine.services.search.InvertedIndex;
+import searchengine.services.search.SearchHit;
+import searchengine.services.search.SegmentIndex;
+import searchengine.services.search.TopHits;
 
 import java.util.*;
 import java.util.regex.Matcher;
@@ -37,6 +41,9 @@ public class SearchServiceImpl implements SearchService {
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
+    private final PageBodyRepository pageBodyRepository;
+    private final InvertedIndex invertedIndex;
+    private final SegmentIndex segmentIndex;
 
     private static final int MAX_LEMMA_FREQUENCY_PERCENT = 70; // порог популярности леммы
 
@@ -50,8 +57,9 @@ public class SearchServiceImpl implements SearchService {
             throw new EmptyUrlException("Задан пустой поисковый запрос");
         }
 
-        // Проверка: есть ли хотя бы один проиндексированный сайт?
-        boolean hasIndexed = siteRepository.existsByIndexingStatus(IndexingStatus.INDEXED);
+        // Проверка: есть ли хотя бы один проиндексированный сайт? Сайт, который
+        // переиндексируется, остаётся доступным для поиска по активному поколению
+        boolean hasIndexed = siteRepository.existsByActiveGenerationIsNotNull();
         if (!hasIndexed) {
             throw new NoIndexedSitesException("Нет проиндексированных сайтов");
         }
@@ -70,83 +78,114 @@ public class SearchServiceImpl implements SearchService {
             String normalizedUrl = normalizeUrl(siteUrl);
             SiteEntity site = siteRepository.findByUrl(normalizedUrl)
                     .orElse(null);
-            if (site == null || site.getIndexingStatus() != IndexingStatus.INDEXED) {
+            if (site == null || site.getActiveGeneration() == null) {
                 throw new NoIndexedSitesException("Сайт не проиндексирован или не найден");
             }
             sitesToSearch = List.of(site);
         } else {
-            sitesToSearch = siteRepository.findByIndexingStatus(IndexingStatus.INDEXED);
+            sitesToSearch = siteRepository.findByActiveGenerationIsNotNull();
+        }
+
+        // Если все сайты загружены в память, БД нужна только для страниц выдачи
+        if (invertedIndex.isReady(sitesToSearch)) {
+            TopHits hits = new TopHits(offset, limit);
+            invertedIndex.search(sitesToSearch, queryLemmasMap.keySet(), MAX_LEMMA_FREQUENCY_PERCENT, hits);
+            return toResponse(hits, queryLemmasMap.keySet(), offset);
         }
 
         List<Long> siteIds = sitesToSearch.stream().map(SiteEntity::getId).collect(Collectors.toList());
 
+        // Списки страниц по леммам читаются из файлов сегментов, если они записаны для всех сайтов
+        if (segmentIndex.isReady(sitesToSearch)) {
+            long totalPages = pageRepository.countActiveCanonicalBySiteIdIn(siteIds);
+            int maxFreq = (int) (totalPages * (MAX_LEMMA_FREQUENCY_PERCENT / 100.0));
+            TopHits hits = new TopHits(offset, limit);
+            segmentIndex.search(sitesToSearch, queryLemmasMap.keySet(), maxFreq, hits);
+            return toResponse(hits, queryLemmasMap.keySet(), offset);
+        }
+
         // Фильтруем леммы по частоте
-        List<LemmaEntity> validLemmas = lemmaRepository.findByLemmaInAndSiteIdIn(queryLemmas, siteIds);
+        List<LemmaEntity> validLemmas = lemmaRepository.findActiveByLemmaInAndSiteIdIn(queryLemmas, siteIds);
         if (validLemmas.isEmpty()) {
             return createEmptyResponse();
         }
 
         // Считаем общий порог популярности
-        long totalPages = pageRepository.countBySiteIdIn(siteIds);
+        long totalPages = pageRepository.countActiveCanonicalBySiteIdIn(siteIds);
         int maxFreq = (int) (totalPages * (MAX_LEMMA_FREQUENCY_PERCENT / 100.0));
 
-        // Фильтруем и сортируем по частоте (от редких к частым)
+        // Фильтруем по частоте
         List<LemmaEntity> filteredLemmas = validLemmas.stream()
                 .filter(l -> l.getFrequency() <= maxFreq)
-                .sorted(Comparator.comparingInt(LemmaEntity::getFrequency))
                 .collect(Collectors.toList());
 
         if (filteredLemmas.isEmpty()) {
             return createEmptyResponse();
         }
 
-        // Поиск страниц по первой (самой редкой) лемме
-        List<Long> pageIds = indexRepository.findPageIdsByLemmaId(filteredLemmas.get(0).getId());
+        // Пересечение, релевантность и окно выдачи считаются одним запросом
+        List<Long> lemmaIds = filteredLemmas.stream().map(LemmaEntity::getId).collect(Collectors.toList());
+        List<IndexRepository.RankedPage> ranked = indexRepository.findRankedPages(lemmaIds, limit, offset);
+        long totalCount = !ranked.isEmpty() ? ranked.get(0).getTotal()
+                : offset > 0 ? indexRepository.countMatchingPages(lemmaIds) : 0;
 
-        // Пересечение с остальными леммами
-        for (int i = 1; i < filteredLemmas.size(); i++) {
-            List<Long> nextPageIds = indexRepository.findPageIdsByLemmaId(filteredLemmas.get(i).getId());
-            pageIds.retainAll(nextPageIds);
-            if (pageIds.isEmpty())
-                break;
-        }
+        Map<Long, Float> normalizedRelevance = new HashMap<>();
+        ranked.forEach(page -> normalizedRelevance.put(page.getPageId(), page.getRelevance().floatValue()));
+        Map<Long, PageEntity> pagesById = pageRepository.findAllById(normalizedRelevance.keySet()).stream()
+                .collect(Collectors.toMap(PageEntity::getId, page -> page));
+        List<PageEntity> window = ranked.stream()
+                .map(page -> pagesById.get(page.getPageId()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
 
-        if (pageIds.isEmpty()) {
-            return createEmptyResponse();
-        }
+        response.setResult(true);
+        response.setCount((int) totalCount);
+        response.setData(toItems(window, normalizedRelevance, queryLemmasMap.keySet()));
+        return response;
+    }
 
-        // Получаем страницы
-        List<PageEntity> pages = pageRepository.findAllById(pageIds);
-        if (pages.isEmpty()) {
+    // Страницы и тексты загружаются только для окна выдачи, отобранного кучей лучших
+    private SearchResponse toResponse(TopHits hits, Set<String> queryLemmas, int offset) {
+        if (hits.total() == 0) {
             return createEmptyResponse();
         }
 
-        // Группируем rank по страницам
-        Map<Long, Float> pageRelevance = new HashMap<>();
-        for (Long pageId : pageIds) {
-            List<IndexEntity> indexes = indexRepository.findByPageIdAndLemmaIdIn(pageId,
-                    filteredLemmas.stream().map(LemmaEntity::getId).collect(Collectors.toList()));
-            double totalRank = indexes.stream().mapToDouble(IndexEntity::getRank).sum();
-            pageRelevance.put(pageId, (float) totalRank);
-        }
+        float maxRelevance = hits.maxRelevance() > 0 ? hits.maxRelevance() : 1;
+        List<SearchHit> window = hits.window(offset);
 
-        // Нормализация релевантности
-        float maxRelevance = Collections.max(pageRelevance.values());
         Map<Long, Float> normalizedRelevance = new HashMap<>();
-        for (Map.Entry<Long, Float> entry : pageRelevance.entrySet()) {
-            normalizedRelevance.put(entry.getKey(), entry.getValue() / maxRelevance);
-        }
+        window.forEach(hit -> normalizedRelevance.put(hit.pageId(), hit.relevance() / maxRelevance));
+        Map<Long, PageEntity> pagesById = pageRepository.findAllById(normalizedRelevance.keySet()).stream()
+                .collect(Collectors.toMap(PageEntity::getId, page -> page));
+        // Порядок выдачи задаёт индекс; страница, удалённая после поиска, пропускается
+        List<PageEntity> pages = window.stream()
+                .map(hit -> pagesById.get(hit.pageId()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
 
-        // Формируем результат
-        List<SearchResultItem> items = new ArrayList<>();
-        for (PageEntity page : pages) {
-            Float rel = normalizedRelevance.get(page.getId());
-            if (rel == null)
-                continue;
+        SearchResponse response = new SearchResponse();
+        response.setResult(true);
+        response.setCount((int) hits.total());
+        response.setData(toItems(pages, normalizedRelevance, queryLemmas));
+        return response;
+    }
 
-            String title = extractTitle(page.getContent());
+    private List<SearchResultItem> toItems(List<PageEntity> window, Map<Long, Float> relevance,
+            Set<String> queryLemmas) {
+        // Сжатые тексты читаются только для страниц, попавших в выдачу
+        Map<Long, PageBodyEntity> bodies = pageBodyRepository.findAllById(
+                        window.stream().map(PageEntity::getId).collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(PageBodyEntity::getPageId, body -> body));
+
+        List<SearchResultItem> items = new ArrayList<>();
+        for (PageEntity page : window) {
+            String title = page.getTitle() == null || page.getTitle().isBlank() ? "Без заголовка" : page.getTitle();
 
-            String snippet = extractSnippet(page.getContent(), queryLemmasMap.keySet());
+            PageBodyEntity body = bodies.get(page.getId());
+            String snippet = body == null
+                    ? "Текст недоступен"
+                    : extractSnippet(PageBodyCodec.decompress(body.getText()), queryLemmas);
 
             SearchResultItem item = new SearchResultItem();
             item.setSite(page.getSite().getUrl());
@@ -154,25 +193,11 @@ public class SearchServiceImpl implements SearchService {
             item.setUri(page.getPath().replaceFirst("^https?://[^/]+", ""));
             item.setTitle(title);
             item.setSnippet(snippet);
-            item.setRelevance(rel);
+            item.setRelevance(relevance.get(page.getId()));
             items.add(item);
         }
-
-        // Сортировка по релевантности (убывание)
-        items.sort((a, b) -> Float.compare(b.getRelevance(), a.getRelevance()));
-
-        int totalCount = items.size();
-        List<SearchResultItem> paginated = items.stream()
-                .skip(offset)
-                .limit(limit)
-                .collect(Collectors.toList());
-
-        response.setResult(true);
-        response.setCount(totalCount);
-        response.setData(paginated);
-        return response;
+        return items;
     }
-
     private String normalizeUrl(String url) {
         if (!url.endsWith("/"))
             url += "/";
@@ -187,21 +212,10 @@ public class SearchServiceImpl implements SearchService {
         return r;
     }
 
-    private String extractTitle(String html) {
-        try {
-            Document doc = Jsoup.parse(html);
-            String title = doc.title();
-            return title.isEmpty() ? "Без заголовка" : title;
-        } catch (Exception e) {
-            return "Без заголовка";
-        }
-    }
-
-    private String extractSnippet(String html, Set<String> queryLemmas) {
+    private String extractSnippet(String originalText, Set<String> queryLemmas) {
         try {
-            String originalText = Jsoup.parse(html).text();
             if (originalText.isEmpty()) {
-                log.debug("HTML content is empty, returning default snippet.");
+                log.debug("Page text is empty, returning default snippet.");
                 return "...";
             }
 
@@ -214,11 +228,7 @@ public class SearchServiceImpl implements SearchService {
                 int start = matcher.start();
                 int end = matcher.end();
 
-                Map<String, Integer> tokenLemmaMap = lemmaService.getLemmas(token);
-                String tokenLemma = null;
-                if (!tokenLemmaMap.isEmpty()) {
-                    tokenLemma = tokenLemmaMap.keySet().iterator().next();
-                }
+                String tokenLemma = lemmaService.lemmaOf(token);
 
                 tokensWithLemmas.add(new TokenWithLemma(token, start, end, tokenLemma));
             }
@@ -259,7 +269,8 @@ public class SearchServiceImpl implements SearchService {
             return Jsoup.clean(highlightedSnippet, Safelist.simpleText()).trim();
 
         } catch (Exception e) {
-            log.error("Ошибка обработки фрагмента HTML: {}", html.substring(0, Math.min(100, html.length())), e);
+            log.error("Ошибка обработки фрагмента текста: {}",
+                    originalText.substring(0, Math.min(100, originalText.length())), e);
             return "Текст недоступен";
         }
     }
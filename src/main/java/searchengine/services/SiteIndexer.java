@@ -1,24 +1,21 @@
 package searchengine.services;
 
-import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
-import javax.persistence.EntityManager;
+import javax.annotation.PreDestroy;
 
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -27,15 +24,26 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import searchengine.config.SearchEngineProperties;
 import searchengine.config.Site;
-import searchengine.model.IndexEntity;
+import searchengine.model.FrontierState;
 import searchengine.model.IndexingStatus;
-import searchengine.model.LemmaEntity;
-import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
-import searchengine.repositories.IndexRepository;
+import searchengine.repositories.FrontierRepository;
+import searchengine.repositories.FrontierRepository.QueuedUrl;
 import searchengine.repositories.LemmaRepository;
 import searchengine.repositories.PageRepository;
+import searchengine.repositories.PageRepository.PageState;
 import searchengine.repositories.SiteRepository;
+import searchengine.services.crawler.CrawlMode;
+import searchengine.services.crawler.CrawlScheduler;
+import searchengine.services.crawler.FrontierEntry;
+import searchengine.services.crawler.LemmaDictionary;
+import searchengine.services.crawler.PageFetcher;
+import searchengine.services.crawler.PolitenessScheduler;
+import searchengine.services.crawler.RobotsRules;
+import searchengine.services.crawler.SiteCrawl;
+import searchengine.services.crawler.SiteDiscovery;
+import searchengine.services.crawler.SiteIndexWriter;
+import searchengine.services.crawler.UrlNormalizer;
 import searchengine.services.lemma.LemmaService;
 
 @RequiredArgsConstructor
@@ -44,58 +52,28 @@ import searchengine.services.lemma.LemmaService;
 public class SiteIndexer {
 
     private final SearchEngineProperties props;
-    private final PageRepository pageRepository;
     private final SiteRepository siteRepository;
-    private final LemmaService lemmaService;
+    private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
-    private final EntityManager entityManager;
-
-    private volatile boolean running = true;
-
-    // Подкласс для результата парсинга одной страницы
-    private static class ParseResult {
-        private final List<PageEntity> pages;
-        private final List<RawIndexData> rawIndexes;
-
-        public ParseResult(List<PageEntity> pages, List<RawIndexData> rawIndexes) {
-            this.pages = pages;
-            this.rawIndexes = rawIndexes;
-        }
-
-        public List<PageEntity> getPages() {
-            return pages;
-        }
-
-        public List<RawIndexData> getRawIndexes() {
-            return rawIndexes;
-        }
-    }
-
-    // Подкласс для временного хранения связи индекса
-    private static class RawIndexData {
-        private final PageEntity page;
-        private final String lemmaText;
-        private final int rank;
-
-        public RawIndexData(PageEntity page, String lemmaText, int rank) {
-            this.page = page;
-            this.lemmaText = lemmaText;
-            this.rank = rank;
-        }
-
-        public PageEntity getPage() {
-            return page;
-        }
-
-        public String getLemmaText() {
-            return lemmaText;
-        }
-
-        public int getRank() {
-            return rank;
-        }
-    }
+    private final LemmaService lemmaService;
+    private final SiteIndexWriter indexWriter;
+    private final PolitenessScheduler politeness;
+    private final PageFetcher pageFetcher;
+    private final FrontierRepository frontierRepository;
+    private final SiteDiscovery discovery;
+    private final CrawlScheduler scheduler;
+
+    // Обходы, выполняющиеся в данный момент, по id сайта
+    private final Map<Long, SiteCrawl> activeCrawls = new ConcurrentHashMap<>();
+    // Сигналы остановки индексаций по id сайта: действуют и до создания обхода,
+    // пока загружаются robots.txt и карты сайта
+    private final Map<Long, CompletableFuture<Void>> stopSignals = new ConcurrentHashMap<>();
+    // Фоновое удаление устаревших поколений индекса
+    private final ExecutorService cleanup = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "generation-cleanup");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void updateSiteStatus(Long siteId, IndexingStatus status, String errorMessage) {
@@ -106,271 +84,206 @@ public class SiteIndexer {
             site.setLastError(errorMessage);
             site.setStatusTime(LocalDateTime.now());
             siteRepository.save(site);
-            entityManager.flush();
-            entityManager.clear(); 
             log.info("Статус сайта обновлён в отдельной транзакции: ID={}, Status={}", siteId, status);
         }
     }
 
-    @Transactional
-    public void index(Site configSite) {
-        log.info("Запуск индексации: {}", configSite.getUrl());
-
-        this.running = true;
+    /**
+     * Индексирует сайт. Полная индексация строит новое поколение страниц и лемм
+     * рядом с активным, по которому всё это время продолжает работать поиск, и по
+     * завершении атомарно переключает сайт на него; прежние поколения удаляются в
+     * фоне. Инкрементальная индексация перепроверяет страницы активного поколения
+     * условным GET и на месте переиндексирует только изменившиеся. В режиме RESUME
+     * обход продолжается с контрольной точки, сохранённой прерванным обходом, в то
+     * же поколение; если точки нет, выполняется полная индексация.
+     */
+    public void index(Site configSite, CrawlMode mode) {
+        log.info("Запуск индексации ({}): {}", mode, configSite.getUrl());
 
         SiteEntity siteEntity = new SiteEntity();
         Optional<SiteEntity> sOptional = siteRepository.findByUrl(configSite.getUrl());
+        Map<String, PageState> knownPages = Map.of();
+        boolean resume = false;
+        int generation;
 
         if (sOptional.isPresent()) {
             log.info("Сайт уже существует, обновляется сайт.");
             siteEntity = sOptional.get();
-            List<PageEntity> pages = pageRepository.findBySiteId(siteEntity.getId());
-            if (!pages.isEmpty()) {
-                List<Long> pageIds = pages.stream().map(PageEntity::getId).collect(Collectors.toList());
-                indexRepository.deleteAllByPageIdsIn(pageIds);
-                lemmaRepository.deleteAllBySiteId(siteEntity.getId());
+            if (mode == CrawlMode.RESUME) {
+                if (siteEntity.getIndexingStatus() == IndexingStatus.INDEXED) {
+                    log.info("Сайт {} уже проиндексирован, продолжать нечего", siteEntity.getUrl());
+                    return;
+                }
+                resume = frontierRepository.existsBySiteId(siteEntity.getId());
+                if (!resume) {
+                    log.info("Контрольная точка для {} не найдена, выполняется полная индексация",
+                            siteEntity.getUrl());
+                }
+            }
+            Integer active = siteEntity.getActiveGeneration();
+            Integer building = siteEntity.getBuildingGeneration();
+            if (resume && (building != null || active != null)) {
+                // Продолжается прерванная полная индексация или инкрементальный обход активного поколения
+                generation = building != null ? building : active;
+            } else if (mode == CrawlMode.INCREMENTAL && active != null) {
+                generation = active;
+                siteEntity.setBuildingGeneration(null);
+            } else {
+                resume = false;
+                generation = nextGeneration(siteEntity);
+                siteEntity.setBuildingGeneration(generation);
+            }
+            if (resume || mode == CrawlMode.INCREMENTAL) {
+                knownPages = pageRepository.findStatesBySiteIdAndGeneration(siteEntity.getId(), generation).stream()
+                        .collect(Collectors.toMap(SiteIndexer::canonicalPath, p -> p, (a, b) -> a));
+                log.info("Известных страниц сайта: {}", knownPages.size());
             }
-            pageRepository.deleteAllBySiteId(siteEntity.getId());
             siteEntity.setIndexingStatus(IndexingStatus.INDEXING);
             siteEntity.setLastError(null);
             siteEntity.setStatusTime(LocalDateTime.now());
             siteRepository.save(siteEntity);
-            log.info("Статус INDEXING установлен и сохранён (UPDATE) для существующего сайта: {}", siteEntity.getId());
+            log.info("Статус INDEXING установлен и сохранён (UPDATE) для существующего сайта: {}, поколение {}",
+                    siteEntity.getId(), generation);
         } else {
             log.info("Сайт новый, создаём...");
+            generation = 0;
             siteEntity = new SiteEntity();
             siteEntity.setName(configSite.getName());
             siteEntity.setUrl(configSite.getUrl());
             siteEntity.setIndexingStatus(IndexingStatus.INDEXING);
             siteEntity.setLastError(null);
             siteEntity.setStatusTime(LocalDateTime.now());
+            siteEntity.setBuildingGeneration(generation);
             siteRepository.save(siteEntity);
             log.info("Статус INDEXING установлен и сохранён (INSERT) для нового сайта: {}", siteEntity.getId());
         }
 
         updateSiteStatus(siteEntity.getId(), IndexingStatus.INDEXING, null);
 
-        Set<String> visited = ConcurrentHashMap.newKeySet();
-
-        ForkJoinPool localPool = new ForkJoinPool();
+        Long siteId = siteEntity.getId();
+        // Адрес без http(s)-схемы или имени хоста (например, http:/example.com) обходить нечем
+        if (UrlNormalizer.normalize(siteEntity.getUrl()) == null) {
+            log.error("Некорректный адрес сайта в конфигурации: {}", siteEntity.getUrl());
+            updateSiteStatus(siteId, IndexingStatus.FAILED, "Некорректный адрес сайта: " + siteEntity.getUrl()
+                    + ". Ожидается адрес вида https://example.com/");
+            return;
+        }
+        CompletableFuture<Void> stopSignal = new CompletableFuture<>();
+        stopSignals.put(siteId, stopSignal);
+        SiteCrawl crawl = null;
         try {
-            ParseHtml task = new ParseHtml(configSite.getUrl(), siteEntity, visited);
-            List<ParseResult> results = localPool.invoke(new InvokeAllTask(List.of(task)));
-
-            if (running) {
-                List<PageEntity> allPages = new ArrayList<>();
-                List<RawIndexData> allRawIndexes = new ArrayList<>();
-                for (ParseResult result : results) {
-                    allPages.addAll(result.getPages());
-                    allRawIndexes.addAll(result.getRawIndexes());
-                }
-
-                List<PageEntity> savedPages = pageRepository.saveAll(allPages);
-
-                Map<Long, PageEntity> pageIdToEntityMap = savedPages.stream()
-                        .collect(Collectors.toMap(PageEntity::getId, p -> p));
+            RobotsRules robots = await(discovery.loadRobots(siteEntity.getUrl()), stopSignal);
+            crawl = new SiteCrawl(siteEntity, configSite, props, lemmaService, politeness, pageFetcher, scheduler,
+                    knownPages, robots);
+            activeCrawls.put(siteId, crawl);
+            if (stopSignal.isDone()) {
+                crawl.stop();
+            }
+            if (resume) {
+                List<QueuedUrl> queued = frontierRepository.findQueuedBySiteId(siteId);
+                crawl.restore(frontierRepository.findUrlHashesBySiteId(siteId), queued,
+                        frontierRepository.countBySiteIdAndStateNot(siteId, FrontierState.QUEUED));
+                log.info("Обход {} продолжается с контрольной точки: в очереди {} адресов", siteEntity.getUrl(),
+                        queued.size());
+            } else {
+                // Адреса из карты сайта и известные страницы считаются ссылками с главной страницы
+                List<FrontierEntry> seeds = new ArrayList<>(crawl.seed(List.of(siteEntity.getUrl()), 0));
+                List<String> sitemapUrls = await(discovery.loadSitemapUrls(siteEntity.getUrl(), robots), stopSignal);
+                seeds.addAll(crawl.seed(sitemapUrls, 1));
+                seeds.addAll(crawl.seed(knownPages.keySet(), 1));
+                indexWriter.resetFrontier(siteId, seeds);
+            }
 
-                saveLemmasAndIndexes(siteEntity.getId(), allRawIndexes, pageIdToEntityMap);
+            scheduler.register(crawl, configSite.getWeight());
+            LemmaDictionary dictionary = crawl.getDictionary();
+            crawl.run(batch -> indexWriter.write(siteId, generation, batch, dictionary));
 
-                updateSiteStatus(siteEntity.getId(), IndexingStatus.INDEXED, null);
-                log.info("Индексация сайта завершена: " + siteEntity.getName());
+            if (crawl.isRunning()) {
+                indexWriter.activateGeneration(siteId, generation);
+                dropPreviousGenerations(siteId, generation);
+                log.info("Индексация сайта завершена: {}, активно поколение {}", siteEntity.getName(), generation);
+                log.info("Кеш лемм: {}", lemmaService.cacheStats());
             } else {
-                updateSiteStatus(siteEntity.getId(), IndexingStatus.FAILED, "Индексация остановлена пользователем");
+                updateSiteStatus(siteId, IndexingStatus.FAILED, "Индексация остановлена пользователем");
             }
 
+        } catch (CancellationException e) {
+            if (crawl != null) {
+                crawl.stop();
+            }
+            updateSiteStatus(siteId, IndexingStatus.FAILED, "Индексация остановлена пользователем");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (crawl != null) {
+                crawl.stop();
+            }
+            updateSiteStatus(siteId, IndexingStatus.FAILED, "Индексация прервана");
         } catch (Exception e) {
-            log.error("Ошибка в ForkJoinPool для сайта: " + siteEntity.getUrl(), e);
-            updateSiteStatus(siteEntity.getId(), IndexingStatus.FAILED, "Ошибка обхода: " + e.getMessage());
+            log.error("Ошибка обхода сайта: " + siteEntity.getUrl(), e);
+            if (crawl != null) {
+                crawl.stop();
+            }
+            updateSiteStatus(siteId, IndexingStatus.FAILED, "Ошибка обхода: " + e.getMessage());
         } finally {
-            localPool.shutdown();
+            stopSignals.remove(siteId);
+            activeCrawls.remove(siteId);
+            if (crawl != null) {
+                scheduler.unregister(crawl);
+            }
+            politeness.clearCrawlDelay(siteEntity.getUrl());
         }
     }
 
     public void stop() {
-        this.running = false;
+        stopSignals.values().forEach(signal -> signal.complete(null));
+        activeCrawls.values().forEach(SiteCrawl::stop);
     }
 
-    @Transactional
-    public void saveLemmasAndIndexes(Long siteId, List<RawIndexData> rawIndexes,
-            Map<Long, PageEntity> pageIdToEntityMap) {
-        log.info("Начало сохранения лемм и индексов");
-
-        // 1. Извлекаем уникальные леммы из rawIndexes
-        Set<String> uniqueLemmas = rawIndexes.stream()
-                .map(RawIndexData::getLemmaText)
-                .collect(Collectors.toSet());
-
-        // 2. Upsert всех уникальных лемм
-        for (String lemmaText : uniqueLemmas) {
-            lemmaRepository.upsertLemma(siteId, lemmaText);
+    // Ждёт этап подготовки обхода; при остановке этап отменяется и бросается CancellationException
+    private static <T> T await(CompletableFuture<T> stage, CompletableFuture<Void> stopSignal)
+            throws InterruptedException, ExecutionException {
+        CompletableFuture.anyOf(stage, stopSignal).get();
+        if (!stage.isDone()) {
+            stage.cancel(false);
+            throw new CancellationException("Индексация остановлена пользователем");
         }
-
-        // 3. Находим все обновлённые/созданные леммы
-        List<LemmaEntity> allLemmas = lemmaRepository.findBySiteId(siteId);
-
-        // 4. Создаём мапу текст леммы -> объект LemmaEntity
-        Map<String, LemmaEntity> lemmaTextToEntityMap = allLemmas.stream()
-                .collect(Collectors.toMap(LemmaEntity::getLemma, l -> l));
-
-        // 5. Создаём и сохраняем IndexEntity
-        List<IndexEntity> indexesToSave = new ArrayList<>();
-        for (RawIndexData rawData : rawIndexes) {
-            LemmaEntity lemmaEntity = lemmaTextToEntityMap.get(rawData.getLemmaText());
-            PageEntity pageEntity = pageIdToEntityMap.get(rawData.getPage().getId());
-
-            if (lemmaEntity != null && pageEntity != null) {
-                if (!indexRepository.existsByLemmaIdAndPageId(lemmaEntity.getId(), pageEntity.getId())) {
-                    IndexEntity index = new IndexEntity();
-                    index.setLemma(lemmaEntity);
-                    index.setPage(pageEntity);
-                    index.setRank(rawData.getRank());
-                    indexesToSave.add(index);
-                }
-            } else {
-                log.warn("Не найдена лемма '{}' или страница '{}' для создания индекса.", rawData.getLemmaText(),
-                        rawData.getPage().getPath());
-            }
-        }
-
-        indexRepository.saveAll(indexesToSave);
-        log.info("Сохранение лемм и индексов завершено");
+        return stage.get();
     }
 
-    // Вспомогательная задача для выполнения нескольких задач параллельно
-    private static class InvokeAllTask extends RecursiveTask<List<ParseResult>> {
-        private final List<ParseHtml> tasks;
-
-        public InvokeAllTask(List<ParseHtml> tasks) {
-            this.tasks = tasks;
-        }
-
-        @Override
-        protected List<ParseResult> compute() {
-            if (tasks.size() <= 1) {
-                ParseHtml task = tasks.get(0);
-                task.fork();
-                return List.of(task.join());
-            } else {
-                int mid = tasks.size() / 2;
-                List<ParseHtml> leftTasks = tasks.subList(0, mid);
-                List<ParseHtml> rightTasks = tasks.subList(mid, tasks.size());
-
-                InvokeAllTask leftTask = new InvokeAllTask(leftTasks);
-                InvokeAllTask rightTask = new InvokeAllTask(rightTasks);
-
-                rightTask.fork();
-                List<ParseResult> leftResults = leftTask.compute();
-                List<ParseResult> rightResults = rightTask.join();
+    @PreDestroy
+    public void shutdown() {
+        cleanup.shutdown();
+    }
 
-                List<ParseResult> combinedResults = new ArrayList<>();
-                combinedResults.addAll(leftResults);
-                combinedResults.addAll(rightResults);
-                return combinedResults;
+    // Номер больше всех, что встречаются у сайта, включая остатки прерванных обходов
+    private int nextGeneration(SiteEntity site) {
+        int max = -1;
+        for (Integer generation : Arrays.asList(site.getActiveGeneration(), site.getBuildingGeneration(),
+                pageRepository.findMaxGenerationBySiteId(site.getId()),
+                lemmaRepository.findMaxGenerationBySiteId(site.getId()))) {
+            if (generation != null) {
+                max = Math.max(max, generation);
             }
         }
+        return max + 1;
     }
 
-    @RequiredArgsConstructor
-    private class ParseHtml extends RecursiveTask<ParseResult> {
-        private final String url;
-        private final SiteEntity siteEntity;
-        private final Set<String> visited;
-
-        @Override
-        protected ParseResult compute() {
+    // Прежние поколения, в том числе брошенные прерванными обходами, удаляются в фоне:
+    // поиск уже переключён на новое поколение и их не читает
+    private void dropPreviousGenerations(Long siteId, int generation) {
+        cleanup.submit(() -> {
             try {
-                if (!running || !url.startsWith(siteEntity.getUrl())) {
-                    return new ParseResult(new ArrayList<>(), new ArrayList<>());
-                }
-
-                log.info("Обработка URL: {}", url);
-
-                long delay = props.getDelayMinMs() +
-                        (long) (Math.random() * (props.getDelayMaxMs() - props.getDelayMinMs()));
-                Thread.sleep(delay);
-
-                Connection.Response response = Jsoup.connect(url)
-                        .userAgent(props.getUserAgent())
-                        .referrer(props.getReferrer().trim())
-                        .timeout(10000)
-                        .followRedirects(true)
-                        .execute();
-
-                String contentType = response.contentType();
-
-                if (contentType != null) {
-                    String lowerContentType = contentType.toLowerCase();
-                    if (!lowerContentType.startsWith("text/") &&
-                            !lowerContentType.contains("xml") &&
-                            !lowerContentType.contains("html") &&
-                            !lowerContentType.contains("javascript") &&
-                            !lowerContentType.contains("json")) {
-                        log.warn("Пропущен не текстовый контент (MIME: {}): {}", contentType, url);
-                        return new ParseResult(new ArrayList<>(), new ArrayList<>());
-                    }
-                }
-
-                Document doc = response.parse();
-                int statusCode = response.statusCode();
-
-                PageEntity pageEntity = new PageEntity();
-                pageEntity.setSite(siteEntity);
-                pageEntity.setCode(statusCode);
-                pageEntity.setContent(doc.html());
-                pageEntity.setPath(url);
-
-                pageRepository.save(pageEntity);
-
-                String text = lemmaService.extractText(doc.html());
-                Map<String, Integer> lemmas = lemmaService.getLemmas(text);
-
-                List<PageEntity> pages = List.of(pageEntity);
-                List<RawIndexData> rawIndexes = lemmas.entrySet().stream()
-                        .map(entry -> new RawIndexData(pageEntity, entry.getKey(), entry.getValue()))
-                        .collect(Collectors.toList());
-
-                Elements links = doc.select("a[href]");
-                List<ParseHtml> subtasks = new ArrayList<>();
-
-                for (Element link : links) {
-                    String href = link.absUrl("href");
-                    if (href.isEmpty() || href.contains("#") || !href.startsWith(siteEntity.getUrl())
-                            || visited.contains(href))
-                        continue;
-
-                    visited.add(href);
-                    subtasks.add(new ParseHtml(href, siteEntity, visited));
-                }
-
-                invokeAll(subtasks);
-                List<ParseResult> subResults = subtasks.stream()
-                        .map(ParseHtml::join)
-                        .collect(Collectors.toList());
-
-                List<PageEntity> allPages = new ArrayList<>(pages);
-                List<RawIndexData> allRawIndexes = new ArrayList<>(rawIndexes);
-
-                for (ParseResult subResult : subResults) {
-                    allPages.addAll(subResult.getPages());
-                    allRawIndexes.addAll(subResult.getRawIndexes());
-                }
-
-                return new ParseResult(allPages, allRawIndexes);
-
-            } catch (org.jsoup.UnsupportedMimeTypeException e) {
-                log.warn("Пропущен URL с неподдерживаемым MIME-типом ({}): {}", e.getMimeType(), url);
-                return new ParseResult(new ArrayList<>(), new ArrayList<>());
-            } catch (InterruptedException e) {
-                log.warn("Задача прервана при обработке страницы: " + url, e);
-                Thread.currentThread().interrupt();
-                throw new RuntimeException(e);
-            } catch (IOException e) {
-                log.warn("Не удалось обработать страницу: " + url, e);
-                return new ParseResult(new ArrayList<>(), new ArrayList<>());
-            } catch (Throwable t) {
-                log.error("Непредвиденная ошибка при обработке задачи для URL: " + this.url, t);
-                return new ParseResult(new ArrayList<>(), new ArrayList<>());
+                indexWriter.dropGenerationsBefore(siteId, generation);
+                log.info("Удалены прежние поколения сайта {}", siteId);
+            } catch (Exception e) {
+                log.error("Не удалось удалить прежние поколения сайта " + siteId, e);
             }
-        }
+        });
+    }
+
+    // Страницы, сохранённые до нормализации адресов, сопоставляются по каноническому виду
+    private static String canonicalPath(PageState page) {
+        String canonical = UrlNormalizer.normalize(page.getPath());
+        return canonical != null ? canonical : page.getPath();
     }
-}
\ No newline at end of file
+}
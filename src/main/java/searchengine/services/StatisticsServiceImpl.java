@@ -32,9 +32,6 @@ public class StatisticsServiceImpl implements StatisticsService {
         TotalStatistics total = new TotalStatistics();
         total.setSites(sites.size());
         total.setIndexing(indexing);
-        total.setPages(pageRepository.count());
-        total.setLemmas(lemmaRepository.count());
-
         List<DetailedStatisticsItem> detailed = sites.stream().map(site -> {
             DetailedStatisticsItem item = new DetailedStatisticsItem();
             item.setUrl(site.getUrl());
@@ -44,10 +41,18 @@ public class StatisticsServiceImpl implements StatisticsService {
             if (site.getLastError() != null && !site.getLastError().isEmpty()) {
                 item.setError(site.getLastError());
             }
-            item.setPages(pageRepository.countBySiteId(site.getId()));
-            item.setLemmas(lemmaRepository.countBySiteId(site.getId()));
+            // Во время полной индексации показывается прогресс строящегося поколения
+            Integer generation = site.getBuildingGeneration() != null
+                    ? site.getBuildingGeneration()
+                    : site.getActiveGeneration();
+            if (generation != null) {
+                item.setPages(pageRepository.countBySiteIdAndGeneration(site.getId(), generation));
+                item.setLemmas(lemmaRepository.countBySiteIdAndGeneration(site.getId(), generation));
+            }
             return item;
         }).collect(Collectors.toList());
+        total.setPages(detailed.stream().mapToLong(DetailedStatisticsItem::getPages).sum());
+        total.setLemmas(detailed.stream().mapToLong(DetailedStatisticsItem::getLemmas).sum());
 
         StatisticsData data = new StatisticsData();
         data.setTotal(total);
@@ -0,0 +1,10 @@
+package searchengine.services.crawler;
+
+public enum CrawlMode {
+    // Прежние данные сайта удаляются, сайт обходится заново
+    FULL,
+    // Известные страницы перепроверяются условным GET, переиндексируются только изменившиеся
+    INCREMENTAL,
+    // Прерванный обход продолжается с последней сохранённой контрольной точки
+    RESUME
+}
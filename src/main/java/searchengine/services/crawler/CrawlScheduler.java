@@ -0,0 +1,170 @@
+package searchengine.services.crawler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.SearchEngineProperties;
+
+/**
+ * Общий для всех сайтов планировщик обхода. Один пул потоков разбирает и
+ * лемматизирует страницы всех сайтов, а число одновременных загрузок ограничено
+ * глобальным бюджетом {@code crawl.max-in-flight}. Свободные места бюджета
+ * распределяются между сайтами взвешенным циклическим перебором (smooth
+ * weighted round-robin); сайт, у которого нет готовых адресов, достигнут
+ * предел {@code crawl.per-site-max-in-flight} или нужно выдержать паузу перед
+ * запросом к хосту, пропускается. Когда обход сайта завершается, его доля
+ * сразу переходит к остальным сайтам.
+ * <p>
+ * Под блокировкой планировщика только выбирается сайт и занимается место
+ * бюджета; сама загрузка запускается после её освобождения, поэтому отправка
+ * запроса одним сайтом не задерживает выбор для остальных.
+ */
+@Component
+@Slf4j
+public class CrawlScheduler {
+
+    private final SearchEngineProperties props;
+    // Потоки разбора и лемматизации страниц всех сайтов
+    @Getter
+    private final ExecutorService workers;
+    // Зарегистрированные обходы; доступ под блокировкой планировщика
+    private final List<Entry> sites = new ArrayList<>();
+    // Загрузки, выполняющиеся во всех обходах, включая запускаемые в данный момент
+    private int inFlight;
+    // Места бюджета, занятые на время запуска загрузки вне блокировки
+    private int starting;
+    // Кто-то не нашёл места в бюджете, пока шёл запуск: при неудаче запуска
+    // пропущенные сайты нужно перебрать заново
+    private boolean retry;
+
+    public CrawlScheduler(SearchEngineProperties props) {
+        this.props = props;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, props.getCrawl().getThreads()), r -> {
+            Thread thread = new Thread(r, "crawl-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void register(SiteCrawl crawl, int weight) {
+        synchronized (this) {
+            sites.add(new Entry(crawl, Math.max(1, weight)));
+            log.info("Обход {} добавлен в планировщик (вес {}), активных сайтов: {}", crawl.getSite().getUrl(),
+                    weight, sites.size());
+        }
+        dispatch();
+    }
+
+    public void unregister(SiteCrawl crawl) {
+        boolean removed;
+        synchronized (this) {
+            removed = sites.removeIf(entry -> entry.crawl == crawl);
+            if (removed) {
+                log.info("Обход {} удалён из планировщика, активных сайтов: {}", crawl.getSite().getUrl(),
+                        sites.size());
+            }
+        }
+        if (removed) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Запускает загрузки, пока есть место в глобальном бюджете и хотя бы один
+     * сайт готов к запросу.
+     */
+    public void dispatch() {
+        int budget = Math.max(1, props.getCrawl().getMaxInFlight());
+        // Сайты, которые в этом проходе не смогли запустить загрузку
+        Set<Entry> skipped = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (true) {
+            Entry next;
+            synchronized (this) {
+                if (inFlight >= budget) {
+                    retry |= starting > 0;
+                    return;
+                }
+                if (retry) {
+                    retry = false;
+                    skipped.clear();
+                }
+                List<Entry> candidates = new ArrayList<>(sites.size());
+                for (Entry entry : sites) {
+                    if (!skipped.contains(entry)) {
+                        candidates.add(entry);
+                    }
+                }
+                if (candidates.isEmpty()) {
+                    return;
+                }
+                next = selectWeighted(candidates);
+                inFlight++;
+                starting++;
+            }
+            boolean started = false;
+            try {
+                started = next.crawl.tryDispatch();
+            } finally {
+                synchronized (this) {
+                    starting--;
+                    if (!started) {
+                        inFlight--;
+                        skipped.add(next);
+                    }
+                }
+            }
+        }
+    }
+
+    // Вызывается обходом после обработки каждой загрузки, запущенной через tryDispatch
+    void onComplete() {
+        synchronized (this) {
+            inFlight--;
+        }
+        dispatch();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    // Каждый сайт получает долю запусков, пропорциональную весу, без серий подряд
+    private static Entry selectWeighted(List<Entry> candidates) {
+        int totalWeight = 0;
+        Entry best = null;
+        for (Entry entry : candidates) {
+            entry.currentWeight += entry.weight;
+            totalWeight += entry.weight;
+            if (best == null || entry.currentWeight > best.currentWeight) {
+                best = entry;
+            }
+        }
+        best.currentWeight -= totalWeight;
+        return best;
+    }
+
+    private static class Entry {
+        private final SiteCrawl crawl;
+        private final int weight;
+        private int currentWeight;
+
+        Entry(SiteCrawl crawl, int weight) {
+            this.crawl = crawl;
+            this.weight = weight;
+        }
+    }
+}
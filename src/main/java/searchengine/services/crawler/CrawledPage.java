@@ -0,0 +1,98 @@
+package searchengine.services.crawler;
+
+import java.util.List;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import searchengine.model.PageBodyEntity;
+import searchengine.model.PageEntity;
+
+// Результат обработки одного адреса, ожидающий записи в БД
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class CrawledPage {
+
+    public enum Change {
+        // Страница встретилась впервые
+        NEW,
+        // Текст ранее загруженной страницы изменился, леммы пересчитываются
+        MODIFIED,
+        // Текст не изменился, обновляются только код ответа и валидаторы кеша
+        UNCHANGED,
+        // Страница больше не существует на сайте
+        GONE,
+        // Адрес обработан, но менять в индексе нечего
+        SKIPPED,
+        // Почти дубликат другой страницы сайта: сохраняется ссылкой на неё, без тела и лемм.
+        // Тело и текст сохраняются до записи на случай, если канонической страницы уже нет
+        DUPLICATE
+    }
+
+    private final Change change;
+    // Канонический адрес, по которому выполнялась загрузка
+    private final String url;
+    // null для SKIPPED
+    private final PageEntity page;
+    // Сжатое содержимое; только для NEW, MODIFIED и DUPLICATE, pageId заполняет писатель
+    private final PageBodyEntity body;
+    // Текст страницы, ожидающий лемматизации; только для NEW и MODIFIED до вызова withPostings
+    // и для DUPLICATE
+    private final String text;
+    // Заполняется для NEW и MODIFIED перед записью; null для остальных
+    private final PagePostings postings;
+    // Адреса, впервые найденные на этой странице и поставленные в очередь
+    private final List<FrontierEntry> discovered;
+    // Адрес канонической страницы; только для DUPLICATE
+    private final String canonicalUrl;
+
+    private CrawledPage(Change change, String url, PageEntity page, PageBodyEntity body, String text,
+            List<FrontierEntry> discovered) {
+        this(change, url, page, body, text, null, discovered, null);
+    }
+
+    public static CrawledPage created(PageEntity page, PageBodyEntity body, String text,
+            List<FrontierEntry> discovered) {
+        return new CrawledPage(Change.NEW, page.getPath(), page, body, text, discovered);
+    }
+
+    public static CrawledPage modified(PageEntity page, PageBodyEntity body, String text,
+            List<FrontierEntry> discovered) {
+        return new CrawledPage(Change.MODIFIED, page.getPath(), page, body, text, discovered);
+    }
+
+    public static CrawledPage unchanged(PageEntity page, List<FrontierEntry> discovered) {
+        return new CrawledPage(Change.UNCHANGED, page.getPath(), page, null, null, discovered);
+    }
+
+    public static CrawledPage gone(PageEntity page) {
+        return new CrawledPage(Change.GONE, page.getPath(), page, null, null, List.of());
+    }
+
+    public static CrawledPage skipped(String url, List<FrontierEntry> discovered) {
+        return new CrawledPage(Change.SKIPPED, url, null, null, null, discovered);
+    }
+
+    // Та же страница, но сохраняемая как почти дубликат canonicalUrl
+    public CrawledPage asDuplicateOf(String canonicalUrl) {
+        return new CrawledPage(Change.DUPLICATE, url, page, body, text, null, discovered, canonicalUrl);
+    }
+
+    // Дубликат, каноническая страница которого не найдена, индексируется как обычная страница
+    public CrawledPage asCanonical() {
+        return new CrawledPage(page.getId() == null ? Change.NEW : Change.MODIFIED, url, page, body, text, discovered);
+    }
+
+    // Та же страница с посчитанными леммами; текст больше не нужен
+    public CrawledPage withPostings(PagePostings postings) {
+        return new CrawledPage(change, url, page, body, null, postings, discovered, canonicalUrl);
+    }
+
+    public boolean needsLemmas() {
+        return text != null && change != Change.DUPLICATE;
+    }
+
+    public boolean hasPostings() {
+        return postings != null;
+    }
+}
@@ -0,0 +1,156 @@
+package searchengine.services.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// Ответ сервера: статус, заголовки и тело в том виде, в котором оно пришло по сети
+@Getter
+@RequiredArgsConstructor
+public class FetchResult {
+    // Адрес, с которого пришёл ответ (после перенаправлений); от него отсчитываются относительные ссылки
+    private final String url;
+    private final int statusCode;
+    private final HttpHeaders headers;
+    // null, если тело не загружалось (не текстовый контент)
+    private final byte[] body;
+    // Тело длиннее max-body-bytes и загружено не полностью
+    private final boolean truncated;
+    private final long maxDecodedBytes;
+
+    // Распакованное тело длиннее лимита: разобрать можно только его начало
+    public static class BodyTooLargeException extends IOException {
+        public BodyTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    public String getContentType() {
+        return headers.firstValue("Content-Type").orElse(null);
+    }
+
+    public String getEtag() {
+        return headers.firstValue("ETag").orElse(null);
+    }
+
+    public String getLastModified() {
+        return headers.firstValue("Last-Modified").orElse(null);
+    }
+
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+
+    public boolean hasBody() {
+        return body != null;
+    }
+
+    // Разбирает тело, распаковывая его потоком прямо в парсер
+    public Document parse() throws IOException {
+        try (InputStream in = openBody()) {
+            return Jsoup.parse(in, charset(), url);
+        }
+    }
+
+    // Разбирает тело как XML (sitemap), без правил исправления HTML
+    public Document parseXml() throws IOException {
+        try (InputStream in = openBody()) {
+            return Jsoup.parse(in, charset(), url, Parser.xmlParser());
+        }
+    }
+
+    // Распакованное тело как текст; без указанной кодировки считается UTF-8
+    public String text() throws IOException {
+        try (InputStream in = openBody()) {
+            String charset = charset();
+            return new String(in.readAllBytes(), charset != null ? Charset.forName(charset) : StandardCharsets.UTF_8);
+        }
+    }
+
+    private InputStream openBody() throws IOException {
+        InputStream raw = new ByteArrayInputStream(body);
+        String encoding = headers.firstValue("Content-Encoding").orElse("identity").trim().toLowerCase();
+        InputStream decoded = switch (encoding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(raw);
+            // Часть серверов отдаёт deflate без zlib-заголовка
+            case "deflate" -> new InflaterInputStream(raw, new Inflater(!hasZlibHeader(body)));
+            default -> raw;
+        };
+        return new BoundedInputStream(decoded, maxDecodedBytes);
+    }
+
+    private String charset() {
+        String contentType = getContentType();
+        if (contentType == null) {
+            return null;
+        }
+        int index = contentType.toLowerCase().indexOf("charset=");
+        if (index < 0) {
+            return null;
+        }
+        String charset = contentType.substring(index + "charset=".length()).split(";")[0]
+                .replace("\"", "").trim();
+        try {
+            return Charset.isSupported(charset) ? charset : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean hasZlibHeader(byte[] data) {
+        return data.length >= 2 && (data[0] & 0x0F) == 8 && (((data[0] & 0xFF) << 8) | (data[1] & 0xFF)) % 31 == 0;
+    }
+
+    // Не даёт прочитать больше лимита распакованных данных: за лимитом — BodyTooLargeException.
+    // Тело, обрезанное при загрузке, читается до обрыва
+    private static class BoundedInputStream extends FilterInputStream {
+        private final long limit;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                if (remaining <= 0) {
+                    if (super.read() == -1) {
+                        return -1;
+                    }
+                    throw new BodyTooLargeException("Распакованное тело длиннее " + limit + " байт");
+                }
+                int read = super.read(b, off, (int) Math.min(len, remaining));
+                if (read > 0) {
+                    remaining -= read;
+                }
+                return read;
+            } catch (EOFException e) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package searchengine.services.crawler;
+
+import java.util.Comparator;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// Адрес в очереди обхода вместе с глубиной, на которой он найден
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class FrontierEntry {
+
+    // Сначала адреса с меньшим приоритетом (глубина минус вес шаблона), при равенстве — в порядке добавления
+    static final Comparator<FrontierEntry> ORDER = Comparator.comparingDouble(FrontierEntry::getPriority)
+            .thenComparingLong(FrontierEntry::getSequence);
+
+    private final String url;
+    // 0 — корень сайта, у ссылок со страницы глубины d глубина d + 1
+    private final int depth;
+    private final double priority;
+    private final long sequence;
+}
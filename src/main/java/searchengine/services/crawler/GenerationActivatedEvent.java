@@ -0,0 +1,5 @@
+package searchengine.services.crawler;
+
+// Поиск сайта переключён на новое поколение
+public record GenerationActivatedEvent(Long siteId, int generation) {
+}
@@ -0,0 +1,116 @@
+package searchengine.services.crawler;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.SearchEngineProperties;
+
+/**
+ * Асинхронная загрузка страниц через {@link HttpClient}: один клиент на всё
+ * приложение держит пул соединений к хостам (keep-alive, HTTP/2 где сервер
+ * его поддерживает), запрашивает сжатую передачу и не занимает поток на
+ * время ожидания ответа.
+ */
+@Component
+@Slf4j
+public class HttpClientPageFetcher implements PageFetcher {
+
+    private final SearchEngineProperties props;
+    private final ExecutorService ioExecutor;
+    private final HttpClient client;
+
+    public HttpClientPageFetcher(SearchEngineProperties props) {
+        this.props = props;
+        SearchEngineProperties.Fetch settings = props.getFetch();
+
+        // Время жизни простаивающих соединений задаётся при запуске, см. Application.main
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.ioExecutor = Executors.newFixedThreadPool(Math.max(1, settings.getIoThreads()), r -> {
+            Thread thread = new Thread(r, "page-fetcher-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(settings.getConnectTimeoutMs()))
+                .executor(ioExecutor)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<FetchResult> fetch(String url, String etag, String lastModified) {
+        SearchEngineProperties.Fetch settings = props.getFetch();
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofMillis(settings.getRequestTimeoutMs()))
+                    .header("User-Agent", props.getUserAgent())
+                    .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
+                    .header("Accept-Encoding", "gzip, deflate")
+                    .GET();
+            String referrer = props.getReferrer() == null ? "" : props.getReferrer().trim();
+            if (!referrer.isEmpty()) {
+                builder.header("Referer", referrer);
+            }
+            if (etag != null) {
+                builder.header("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                builder.header("If-Modified-Since", lastModified);
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return client.sendAsync(request, bodyHandler(settings.getMaxBodyBytes()))
+                .thenApply(response -> new FetchResult(finalUrl(response), response.statusCode(),
+                        response.headers(), response.body().bytes(), response.body().truncated(),
+                        settings.getMaxBodyBytes()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ioExecutor.shutdownNow();
+    }
+
+    // После перенаправлений относительные ссылки считаются от адреса, с которого пришёл ответ
+    private static String finalUrl(HttpResponse<?> response) {
+        String uri = response.uri().toString();
+        String canonical = UrlNormalizer.normalize(uri);
+        return canonical != null ? canonical : uri;
+    }
+
+    // Тело загружается только для текстового контента и не больше maxBodyBytes
+    private HttpResponse.BodyHandler<LimitedBodySubscriber.Body> bodyHandler(int maxBodyBytes) {
+        return info -> {
+            String contentType = info.headers().firstValue("Content-Type").orElse(null);
+            return new LimitedBodySubscriber(isTextual(contentType) ? maxBodyBytes : 0);
+        };
+    }
+
+    private static boolean isTextual(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String lowerContentType = contentType.toLowerCase();
+        return lowerContentType.startsWith("text/") ||
+                lowerContentType.contains("xml") ||
+                lowerContentType.contains("html") ||
+                lowerContentType.contains("javascript") ||
+                lowerContentType.contains("json");
+    }
+}
@@ -0,0 +1,7 @@
+package searchengine.services.crawler;
+
+import java.util.List;
+
+// Записанный пакет изменений поколения сайта; публикуется SiteIndexWriter в транзакции записи
+public record IndexUpdatedEvent(Long siteId, int generation, List<PageUpdate> pages) {
+}
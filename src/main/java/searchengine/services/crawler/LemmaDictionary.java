@@ -0,0 +1,59 @@
+package searchengine.services.crawler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Словарь лемм одного обхода сайта: каждой лемме при первом появлении
+ * присваивается компактный int-номер, и дальше страницы ссылаются на лемму
+ * номером, а не своей копией строки. Вместе с номером запоминается id строки
+ * таблицы lemma, чтобы не искать в БД уже известные леммы.
+ * <p>
+ * Используется только потоком записи обхода и не синхронизирован.
+ */
+public class LemmaDictionary {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] lemmas = new String[INITIAL_CAPACITY];
+    // id строки lemma в БД; 0 — ещё не известен
+    private long[] lemmaIds = new long[INITIAL_CAPACITY];
+    private int size;
+
+    public int idOf(String lemma) {
+        Integer id = ids.get(lemma);
+        if (id != null) {
+            return id;
+        }
+        if (size == lemmas.length) {
+            lemmas = Arrays.copyOf(lemmas, size * 2);
+            lemmaIds = Arrays.copyOf(lemmaIds, size * 2);
+        }
+        lemmas[size] = lemma;
+        ids.put(lemma, size);
+        return size++;
+    }
+
+    public String lemma(int id) {
+        return lemmas[id];
+    }
+
+    public long lemmaId(int id) {
+        return lemmaIds[id];
+    }
+
+    public void setLemmaId(int id, long lemmaId) {
+        lemmaIds[id] = lemmaId;
+    }
+
+    // Строка lemma могла быть удалена при обнулении frequency — id придётся найти заново
+    public void forgetLemmaId(int id) {
+        lemmaIds[id] = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
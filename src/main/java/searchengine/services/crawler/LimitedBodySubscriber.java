@@ -0,0 +1,74 @@
+package searchengine.services.crawler;
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Собирает тело ответа не больше {@code limit} байт; при превышении лимита
+ * загрузка отменяется, а полученная часть возвращается с отметкой truncated.
+ * При лимите 0 тело не загружается вовсе и bytes будет null.
+ */
+class LimitedBodySubscriber implements HttpResponse.BodySubscriber<LimitedBodySubscriber.Body> {
+
+    record Body(byte[] bytes, boolean truncated) {
+    }
+
+    private final int limit;
+    private final CompletableFuture<Body> result = new CompletableFuture<>();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private Flow.Subscription subscription;
+
+    LimitedBodySubscriber(int limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public CompletionStage<Body> getBody() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (limit <= 0) {
+            subscription.cancel();
+            result.complete(new Body(null, false));
+        } else {
+            subscription.request(Long.MAX_VALUE);
+        }
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        if (result.isDone()) {
+            return;
+        }
+        for (ByteBuffer item : items) {
+            int length = Math.min(item.remaining(), limit - buffer.size());
+            byte[] chunk = new byte[length];
+            item.get(chunk);
+            buffer.write(chunk, 0, length);
+            // Тело длиннее лимита: хотя бы один байт пришлось отбросить
+            if (item.hasRemaining()) {
+                subscription.cancel();
+                result.complete(new Body(buffer.toByteArray(), true));
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        result.complete(new Body(buffer.toByteArray(), false));
+    }
+}
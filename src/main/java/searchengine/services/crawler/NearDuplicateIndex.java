@@ -0,0 +1,99 @@
+package searchengine.services.crawler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Индекс отпечатков {@link SimHash} страниц одного сайта для поиска почти
+ * дубликатов. Отпечаток делится на {@code maxDistance + 1} блоков: если два
+ * отпечатка различаются не более чем в {@code maxDistance} битах, хотя бы один
+ * блок у них совпадает, поэтому кандидаты ищутся точным поиском по блокам.
+ * <p>
+ * Не потокобезопасен: используется потоком, записывающим пакеты обхода.
+ */
+public class NearDuplicateIndex {
+
+    private final int maxDistance;
+    private final int[] shifts;
+    private final long[] masks;
+    private final List<Map<Long, List<Entry>>> tables;
+
+    public NearDuplicateIndex(int maxDistance) {
+        this.maxDistance = maxDistance;
+        int blocks = maxDistance + 1;
+        this.shifts = new int[blocks];
+        this.masks = new long[blocks];
+        this.tables = new ArrayList<>(blocks);
+        int shift = 0;
+        for (int block = 0; block < blocks; block++) {
+            int width = 64 / blocks + (block < 64 % blocks ? 1 : 0);
+            shifts[block] = shift;
+            masks[block] = width == 64 ? -1L : (1L << width) - 1;
+            tables.add(new HashMap<>());
+            shift += width;
+        }
+    }
+
+    /**
+     * Ищет ранее добавленную страницу, отпечаток которой отличается не более
+     * чем на {@code maxDistance} бит; если такой нет, добавляет страницу.
+     * @return адрес канонической страницы или null, если страница не дубликат
+     */
+    public String findOrAdd(long simhash, String url) {
+        boolean present = false;
+        for (int block = 0; block < shifts.length; block++) {
+            List<Entry> candidates = tables.get(block).get(key(simhash, block));
+            if (candidates == null) {
+                continue;
+            }
+            for (Entry candidate : candidates) {
+                if (candidate.url.equals(url)) {
+                    present |= candidate.simhash == simhash;
+                } else if (SimHash.distance(candidate.simhash, simhash) <= maxDistance) {
+                    return candidate.url;
+                }
+            }
+        }
+        if (!present) {
+            add(simhash, url);
+        }
+        return null;
+    }
+
+    public void add(long simhash, String url) {
+        Entry entry = new Entry(simhash, url);
+        for (int block = 0; block < shifts.length; block++) {
+            tables.get(block).computeIfAbsent(key(simhash, block), k -> new ArrayList<>(1)).add(entry);
+        }
+    }
+
+    // Удаляет устаревший отпечаток страницы, текст которой изменился
+    public void remove(long simhash, String url) {
+        for (int block = 0; block < shifts.length; block++) {
+            Long key = key(simhash, block);
+            List<Entry> candidates = tables.get(block).get(key);
+            if (candidates != null) {
+                candidates.removeIf(entry -> entry.simhash == simhash && entry.url.equals(url));
+                if (candidates.isEmpty()) {
+                    tables.get(block).remove(key);
+                }
+            }
+        }
+    }
+
+    private long key(long simhash, int block) {
+        return (simhash >>> shifts[block]) & masks[block];
+    }
+
+    private static class Entry {
+        private final long simhash;
+        private final String url;
+
+        Entry(long simhash, String url) {
+            this.simhash = simhash;
+            this.url = url;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package searchengine.services.crawler;
+
+import java.util.concurrent.CompletableFuture;
+
+// Загрузка страниц; реализация выбирается конфигурацией Spring
+public interface PageFetcher {
+    default CompletableFuture<FetchResult> fetch(String url) {
+        return fetch(url, null, null);
+    }
+
+    // Условный GET: при неизменившейся странице сервер ответит 304 без тела
+    CompletableFuture<FetchResult> fetch(String url, String etag, String lastModified);
+}
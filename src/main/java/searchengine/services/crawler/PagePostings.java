@@ -0,0 +1,54 @@
+package searchengine.services.crawler;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Леммы одной страницы в виде пар номер леммы из {@link LemmaDictionary} — rank,
+ * хранящихся в примитивных массивах, упорядоченных по номеру леммы.
+ */
+public final class PagePostings {
+
+    public static final PagePostings EMPTY = new PagePostings(new int[0], new float[0]);
+
+    private final int[] lemmaIds;
+    private final float[] ranks;
+
+    private PagePostings(int[] lemmaIds, float[] ranks) {
+        this.lemmaIds = lemmaIds;
+        this.ranks = ranks;
+    }
+
+    public static PagePostings of(Map<String, Integer> lemmas, LemmaDictionary dictionary) {
+        // Номер и rank упаковываются в long, чтобы отсортировать пары одним массивом
+        long[] packed = new long[lemmas.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
+            packed[i++] = ((long) dictionary.idOf(entry.getKey()) << 32) | (entry.getValue() & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+        int[] lemmaIds = new int[packed.length];
+        float[] ranks = new float[packed.length];
+        for (i = 0; i < packed.length; i++) {
+            lemmaIds[i] = (int) (packed[i] >>> 32);
+            ranks[i] = (int) packed[i];
+        }
+        return new PagePostings(lemmaIds, ranks);
+    }
+
+    public int size() {
+        return lemmaIds.length;
+    }
+
+    public int lemmaId(int index) {
+        return lemmaIds[index];
+    }
+
+    public float rank(int index) {
+        return ranks[index];
+    }
+
+    public boolean contains(int lemmaId) {
+        return Arrays.binarySearch(lemmaIds, lemmaId) >= 0;
+    }
+}
@@ -0,0 +1,16 @@
+package searchengine.services.crawler;
+
+/**
+ * Новое содержимое страницы в индексе: леммы и их rank; lemmas == null, если
+ * страница убрана из индекса (удалена или стала дубликатом).
+ */
+public record PageUpdate(long pageId, String[] lemmas, float[] ranks) {
+
+    public static PageUpdate removal(long pageId) {
+        return new PageUpdate(pageId, null, null);
+    }
+
+    public boolean isRemoval() {
+        return lemmas == null;
+    }
+}
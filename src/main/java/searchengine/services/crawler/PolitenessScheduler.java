@@ -0,0 +1,185 @@
+package searchengine.services.crawler;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.SearchEngineProperties;
+
+/**
+ * Ограничение частоты запросов к каждому хосту без блокировки потоков.
+ * Для хоста ведётся token bucket, скорость которого подстраивается по AIMD:
+ * растёт на постоянный шаг при быстрых ответах и уменьшается в разы при
+ * ответах 429/503, сетевых ошибках и медленных ответах. Границы скорости
+ * задаются {@code delay-min-ms}/{@code delay-max-ms} — минимальным и
+ * максимальным интервалом между запросами к одному хосту.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PolitenessScheduler {
+
+    private final SearchEngineProperties props;
+    private final Map<String, HostBucket> buckets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "politeness-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Пытается взять разрешение на запрос к хосту.
+     * @return 0, если запрос можно выполнять сразу, иначе сколько миллисекунд подождать
+     */
+    public long tryAcquire(String host) {
+        return bucket(host).tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * Разрешение на запрос к хосту, которое ждёт своей очереди на таймере, а не
+     * в потоке. Отмена возвращённого future прекращает ожидание.
+     */
+    public CompletableFuture<Void> acquire(String host) {
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        acquire(host, permit);
+        return permit;
+    }
+
+    private void acquire(String host, CompletableFuture<Void> permit) {
+        if (permit.isDone()) {
+            return;
+        }
+        long waitMs = tryAcquire(host);
+        if (waitMs == 0) {
+            permit.complete(null);
+        } else {
+            schedule(() -> acquire(host, permit), waitMs);
+        }
+    }
+
+    // Выполняет действие через delayMs на потоке таймера; действие должно быть коротким
+    public void schedule(Runnable action, long delayMs) {
+        timer.schedule(action, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void onResponse(String host, int statusCode, long latencyMs) {
+        SearchEngineProperties.Politeness settings = props.getPoliteness();
+        HostBucket bucket = bucket(host);
+        if (statusCode == 429 || statusCode == 503 || latencyMs > settings.getSlowResponseMs()) {
+            double rate = bucket.decrease(settings.getDecreaseFactor(), minRate());
+            log.info("Снижение частоты запросов к {} до {} запр/с (HTTP {}, {} мс)",
+                    host, String.format("%.2f", rate), statusCode, latencyMs);
+        } else {
+            bucket.increase(settings.getIncreaseStep(), maxRate());
+        }
+    }
+
+    // Crawl-delay из robots.txt ограничивает частоту сверху сильнее delay-min-ms
+    // на время обхода сайта; 0 снимает ограничение сайта. Сайты одного хоста
+    // задают пределы независимо, действует наибольшая из задержек
+    public void setCrawlDelay(String siteUrl, long crawlDelayMs) {
+        bucket(URI.create(siteUrl).getHost()).setCrawlDelay(siteUrl, crawlDelayMs, initialRate());
+    }
+
+    // По окончании обхода предел сайта снимается: следующий обход прочитает robots.txt заново
+    public void clearCrawlDelay(String siteUrl) {
+        setCrawlDelay(siteUrl, 0);
+    }
+
+    public void onFailure(String host) {
+        bucket(host).decrease(props.getPoliteness().getDecreaseFactor(), minRate());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private HostBucket bucket(String host) {
+        return buckets.computeIfAbsent(host.toLowerCase(),
+                h -> new HostBucket(initialRate(), Math.max(1, props.getPoliteness().getBurst())));
+    }
+
+    private double minRate() {
+        return 1000.0 / Math.max(1, props.getDelayMaxMs());
+    }
+
+    private double maxRate() {
+        return 1000.0 / Math.max(1, props.getDelayMinMs());
+    }
+
+    private double initialRate() {
+        return 2000.0 / Math.max(2, props.getDelayMinMs() + props.getDelayMaxMs());
+    }
+
+    private static class HostBucket {
+        private final int capacity;
+        private double rate;
+        // Crawl-delay сайтов хоста, которые сейчас обходятся
+        private final Map<String, Long> crawlDelays = new HashMap<>();
+        // Предел частоты по наибольшему Crawl-delay
+        private double ceiling = Double.MAX_VALUE;
+        private double tokens;
+        private long lastRefillNanos;
+
+        HostBucket(double rate, int capacity) {
+            this.rate = rate;
+            this.capacity = capacity;
+            this.tokens = 1;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        synchronized long tryAcquire(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / rate * 1000));
+        }
+
+        synchronized void increase(double step, double maxRate) {
+            rate = Math.min(Math.min(maxRate, ceiling), rate + step);
+        }
+
+        synchronized void setCrawlDelay(String siteUrl, long crawlDelayMs, double initialRate) {
+            if (crawlDelayMs > 0) {
+                crawlDelays.put(siteUrl, crawlDelayMs);
+            } else {
+                crawlDelays.remove(siteUrl);
+            }
+            long maxDelayMs = crawlDelays.values().stream().mapToLong(Long::longValue).max().orElse(0);
+            if (maxDelayMs > 0) {
+                ceiling = 1000.0 / maxDelayMs;
+                rate = Math.min(rate, ceiling);
+            } else if (ceiling != Double.MAX_VALUE) {
+                // Без предела скорость не ниже начальной, иначе она долго оставалась бы на уровне Crawl-delay
+                ceiling = Double.MAX_VALUE;
+                rate = Math.max(rate, initialRate);
+            }
+        }
+
+        synchronized double decrease(double factor, double minRate) {
+            refill(System.nanoTime());
+            rate = Math.min(ceiling, Math.max(minRate, rate * factor));
+            tokens = Math.min(tokens, 0);
+            return rate;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1e9 * rate);
+            lastRefillNanos = now;
+        }
+    }
+}
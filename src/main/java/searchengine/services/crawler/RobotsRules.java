@@ -0,0 +1,210 @@
+package searchengine.services.crawler;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import lombok.Getter;
+
+/**
+ * Правила robots.txt для нашего робота: Allow/Disallow (с подстановками
+ * {@code *} и {@code $}), Crawl-delay и ссылки на sitemap. Группа выбирается
+ * по RFC 9309: имя агента сравнивается с product token нашего User-Agent без
+ * учёта регистра, из подходящих действует самое длинное имя, иначе группа
+ * {@code *}; группы с одним и тем же агентом объединяются.
+ * Из совпавших правил действует самое длинное, при равной длине — Allow.
+ */
+public class RobotsRules {
+
+    private static final RobotsRules ALLOW_ALL = new RobotsRules(List.of(), 0, List.of());
+
+    private final List<Rule> rules;
+    // 0, если Crawl-delay не задан
+    @Getter
+    private final long crawlDelayMs;
+    @Getter
+    private final List<String> sitemaps;
+
+    private RobotsRules(List<Rule> rules, long crawlDelayMs, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelayMs = crawlDelayMs;
+        this.sitemaps = sitemaps;
+    }
+
+    public static RobotsRules allowAll() {
+        return ALLOW_ALL;
+    }
+
+    public static RobotsRules parse(String content, String userAgent) {
+        String agent = productToken(userAgent);
+        List<String> sitemaps = new ArrayList<>();
+        List<Group> groups = new ArrayList<>();
+        Group current = null;
+        boolean readingAgents = false;
+
+        for (String rawLine : content.split("\r\n|\r|\n")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).trim();
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+
+            switch (field) {
+                case "user-agent" -> {
+                    if (!readingAgents) {
+                        current = new Group();
+                        groups.add(current);
+                        readingAgents = true;
+                    }
+                    String name = value.equals("*") ? "*" : productToken(value);
+                    if (!name.isEmpty()) {
+                        current.agents.add(name);
+                    }
+                }
+                case "allow", "disallow" -> {
+                    readingAgents = false;
+                    // Пустой Disallow ничего не запрещает
+                    if (current != null && !value.isEmpty()) {
+                        current.rules.add(new Rule(value, field.equals("allow")));
+                    }
+                }
+                case "crawl-delay" -> {
+                    readingAgents = false;
+                    if (current != null) {
+                        current.crawlDelayMs = Math.max(current.crawlDelayMs, parseDelayMs(value));
+                    }
+                }
+                case "sitemap" -> {
+                    if (!value.isEmpty()) {
+                        sitemaps.add(value);
+                    }
+                }
+                default -> readingAgents = false;
+            }
+        }
+
+        // Самое длинное подходящее имя агента; "*" подходит всем и короче любого имени
+        String best = null;
+        for (Group group : groups) {
+            for (String name : group.agents) {
+                if (matchesAgent(agent, name) && (best == null || best.equals("*") || name.length() > best.length())) {
+                    best = name;
+                }
+            }
+        }
+        List<Rule> rules = new ArrayList<>();
+        long crawlDelayMs = 0;
+        for (Group group : groups) {
+            if (best != null && group.agents.contains(best)) {
+                rules.addAll(group.rules);
+                crawlDelayMs = Math.max(crawlDelayMs, group.crawlDelayMs);
+            }
+        }
+        return new RobotsRules(List.copyOf(rules), crawlDelayMs, Collections.unmodifiableList(sitemaps));
+    }
+
+    public boolean isAllowed(String url) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+        String path;
+        try {
+            URI uri = URI.create(url);
+            path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            if (uri.getRawQuery() != null) {
+                path += "?" + uri.getRawQuery();
+            }
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+        Rule best = null;
+        for (Rule rule : rules) {
+            if (rule.matches(path) && (best == null || rule.pattern.length() > best.pattern.length()
+                    || (rule.pattern.length() == best.pattern.length() && rule.allow))) {
+                best = rule;
+            }
+        }
+        return best == null || best.allow;
+    }
+
+    // Имя группы подходит, если совпадает с нашим product token или является его
+    // частью до дефиса: группа "heliontsearchbot" действует и для "heliontsearchbot-news"
+    private static boolean matchesAgent(String agent, String name) {
+        if (name.equals("*")) {
+            return true;
+        }
+        return !agent.isEmpty() && (agent.equals(name) || agent.startsWith(name + "-"));
+    }
+
+    // "HeliontSearchBot/1.0 (+https://...)" -> "heliontsearchbot"
+    private static String productToken(String userAgent) {
+        if (userAgent == null) {
+            return "";
+        }
+        String token = userAgent.trim().split("[/\\s]", 2)[0];
+        return token.toLowerCase(Locale.ROOT);
+    }
+
+    private static long parseDelayMs(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            return seconds > 0 ? (long) (seconds * 1000) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static class Group {
+        private final List<String> agents = new ArrayList<>();
+        private final List<Rule> rules = new ArrayList<>();
+        private long crawlDelayMs;
+    }
+
+    private static class Rule {
+        private final String pattern;
+        private final boolean allow;
+
+        Rule(String pattern, boolean allow) {
+            this.pattern = pattern;
+            this.allow = allow;
+        }
+
+        // Сопоставление с начала пути; * — любая последовательность, $ в конце — конец пути
+        boolean matches(String path) {
+            boolean anchored = pattern.endsWith("$");
+            String body = anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+            return matches(body, 0, path, 0, anchored);
+        }
+
+        private static boolean matches(String pattern, int p, String path, int s, boolean anchored) {
+            while (p < pattern.length()) {
+                char c = pattern.charAt(p);
+                if (c == '*') {
+                    while (p < pattern.length() && pattern.charAt(p) == '*') {
+                        p++;
+                    }
+                    if (p == pattern.length()) {
+                        return true;
+                    }
+                    for (int i = s; i <= path.length(); i++) {
+                        if (matches(pattern, p, path, i, anchored)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (s >= path.length() || path.charAt(s) != c) {
+                    return false;
+                }
+                p++;
+                s++;
+            }
+            return !anchored || s == path.length();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package searchengine.services.crawler;
+
+/**
+ * 64-битный SimHash текста страницы по шинглам из трёх слов. У почти
+ * одинаковых текстов отпечатки различаются в нескольких битах, поэтому
+ * близость страниц оценивается расстоянием Хэмминга между отпечатками.
+ */
+public final class SimHash {
+
+    // Короткие тексты (меню, заглушки) дают случайные совпадения и не сравниваются
+    public static final int MIN_WORDS = 20;
+
+    private SimHash() {
+    }
+
+    /**
+     * @return отпечаток текста или null, если в тексте меньше {@link #MIN_WORDS} слов
+     */
+    public static Long of(String text) {
+        int[] weights = new int[64];
+        long w1 = 0;
+        long w2 = 0;
+        int words = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i >= length) {
+                break;
+            }
+            // FNV-1a по символам слова в нижнем регистре, без выделения подстрок
+            long word = 0xcbf29ce484222325L;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                word ^= Character.toLowerCase(text.charAt(i));
+                word *= 0x100000001b3L;
+                i++;
+            }
+            words++;
+            if (words >= 3) {
+                long shingle = mix(w1 ^ Long.rotateLeft(w2, 21) ^ Long.rotateLeft(word, 42));
+                for (int bit = 0; bit < 64; bit++) {
+                    weights[bit] += ((shingle >>> bit) & 1L) != 0 ? 1 : -1;
+                }
+            }
+            w1 = w2;
+            w2 = word;
+        }
+        if (words < MIN_WORDS) {
+            return null;
+        }
+        long hash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                hash |= 1L << bit;
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
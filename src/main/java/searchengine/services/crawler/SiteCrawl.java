@@ -0,0 +1,603 @@
+package searchengine.services.crawler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.SearchEngineProperties;
+import searchengine.config.Site;
+import searchengine.model.PageBodyEntity;
+import searchengine.model.PageEntity;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.FrontierRepository.QueuedUrl;
+import searchengine.repositories.PageRepository.PageState;
+import searchengine.services.lemma.LemmaService;
+
+/**
+ * Обход одного сайта в виде конвейера загрузка → разбор → лемматизация → запись.
+ * Число страниц, одновременно находящихся в обработке и в очереди на запись,
+ * ограничено {@code queueCapacity}: новые загрузки не запускаются, пока запись
+ * не освободит место, поэтому расход памяти не зависит от размера сайта.
+ * Паузы между запросами к хосту выдерживает {@link PolitenessScheduler}:
+ * пока хост недоступен, обход ждёт на таймере, не занимая потоки исполнителя.
+ * Загрузка выполняется асинхронно через {@link PageFetcher}, потоки исполнителя
+ * заняты только разбором страниц, а лемматизация пакета перед записью идёт в
+ * отдельном пуле {@link LemmaService}. Когда запускать загрузки, решает общий
+ * для всех сайтов {@link CrawlScheduler}.
+ * <p>
+ * Адреса приводятся к каноническому виду {@link UrlNormalizer}, поэтому каждая
+ * страница загружается один раз, как бы на неё ни ссылались.
+ * <p>
+ * При инкрементальном обходе в конструктор передаются уже известные страницы
+ * сайта (по каноническому адресу): они сразу ставятся в очередь и запрашиваются условным GET, а леммы
+ * пересчитываются только для страниц, текст которых изменился.
+ * <p>
+ * Вместе с каждой страницей на запись передаются впервые найденные на ней
+ * адреса: писатель сохраняет их в таблицу frontier той же транзакцией, что и
+ * страницу, поэтому прерванный обход можно продолжить через {@link #restore}.
+ * Адреса, запрещённые robots.txt, в очередь не попадают и не запрашиваются.
+ * Страницы, текст которых почти совпадает с уже записанной страницей сайта
+ * (по {@link SimHash}), сохраняются как её дубликаты и не индексируются.
+ * <p>
+ * Очередь обхода упорядочена по глубине ссылки с поправкой на веса шаблонов
+ * адресов сайта, поэтому неглубокие и важные страницы загружаются первыми.
+ * Обход ограничивается глубиной, числом загруженных страниц и объёмом
+ * загруженных данных из настроек сайта: при исчерпании бюджета новые загрузки
+ * не запускаются, а уже начатые дописываются.
+ */
+@Slf4j
+public class SiteCrawl {
+
+    private static final long POLL_TIMEOUT_MS = 200;
+    // Длина столбца page.title
+    private static final int MAX_TITLE_LENGTH = 512;
+
+    @Getter
+    private final SiteEntity site;
+    private final SearchEngineProperties props;
+    private final LemmaService lemmaService;
+    private final PolitenessScheduler politeness;
+    private final PageFetcher fetcher;
+    private final CrawlScheduler scheduler;
+    // Сколько страниц сайта одновременно загружается и разбирается
+    private final int maxInFlight;
+    private final String host;
+    // Канонический адрес сайта — префикс всех его страниц
+    private final String siteUrl;
+    // Ранее загруженные страницы по адресу; пусто при полной переиндексации
+    private final Map<String, PageState> knownPages;
+    private final RobotsRules robots;
+    // Отпечатки канонических страниц сайта; null, если поиск дубликатов отключён
+    private final NearDuplicateIndex duplicates;
+    // Id записанных дубликатов по их адресам и адресу канонической страницы;
+    // используется только потоком записи
+    private final Map<String, Map<String, Long>> duplicatesByCanonical = new HashMap<>();
+    // Id записанных страниц, которые загружаются без условного GET и индексируются,
+    // даже если их текст не изменился
+    private final Map<String, Long> refetch = new ConcurrentHashMap<>();
+    private final int maxDepth;
+    private final long maxPages;
+    private final long maxBytes;
+    private final List<Boost> boosts;
+    // Номера лемм обхода; используется только потоком записи
+    @Getter
+    private final LemmaDictionary dictionary = new LemmaDictionary();
+
+    private final PriorityBlockingQueue<FrontierEntry> frontier = new PriorityBlockingQueue<>(64, FrontierEntry.ORDER);
+    private final AtomicLong sequence = new AtomicLong();
+    // Отпечатки канонических адресов, когда-либо поставленных в очередь
+    private final UrlFingerprintSet visited = new UrlFingerprintSet();
+    private final BlockingQueue<CrawledPage> results;
+    // Свободные места конвейера: занимается при запуске загрузки, освобождается после записи в БД
+    private final Semaphore slots;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean wakeUpScheduled = new AtomicBoolean();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger disallowed = new AtomicInteger();
+    // Запущенные загрузки и объём полученных тел ответов — расход бюджета обхода
+    private final AtomicLong fetchedPages = new AtomicLong();
+    private final AtomicLong fetchedBytes = new AtomicLong();
+
+    private volatile boolean running = true;
+    private volatile boolean budgetExhausted;
+
+    public SiteCrawl(SiteEntity site, Site config, SearchEngineProperties props, LemmaService lemmaService,
+            PolitenessScheduler politeness, PageFetcher fetcher, CrawlScheduler scheduler,
+            Map<String, PageState> knownPages, RobotsRules robots) {
+        this.site = site;
+        this.props = props;
+        this.lemmaService = lemmaService;
+        this.politeness = politeness;
+        this.fetcher = fetcher;
+        this.scheduler = scheduler;
+        this.maxInFlight = Math.max(1, props.getCrawl().getPerSiteMaxInFlight());
+        String canonicalSiteUrl = UrlNormalizer.normalize(site.getUrl());
+        if (canonicalSiteUrl == null) {
+            throw new IllegalArgumentException("Некорректный адрес сайта: " + site.getUrl());
+        }
+        this.siteUrl = canonicalSiteUrl;
+        this.host = URI.create(canonicalSiteUrl).getHost();
+        this.knownPages = knownPages;
+        this.robots = robots;
+        int maxDistance = props.getCrawl().getNearDuplicateDistance();
+        this.duplicates = maxDistance < 0 ? null : new NearDuplicateIndex(Math.min(maxDistance, 15));
+        Map<Long, String> urlsById = new HashMap<>();
+        knownPages.forEach((url, state) -> urlsById.put(state.getId(), url));
+        knownPages.forEach((url, state) -> {
+            if (state.getCanonicalPageId() != null) {
+                String canonicalUrl = urlsById.get(state.getCanonicalPageId());
+                if (canonicalUrl != null) {
+                    rememberDuplicate(canonicalUrl, url, state.getId());
+                }
+            } else if (duplicates != null && state.getSimhash() != null) {
+                duplicates.add(state.getSimhash(), url);
+            }
+        });
+        this.maxDepth = config.getMaxDepth() != null ? config.getMaxDepth() : Integer.MAX_VALUE;
+        this.maxPages = config.getMaxPages() != null ? config.getMaxPages() : Long.MAX_VALUE;
+        this.maxBytes = config.getMaxBytes() != null ? config.getMaxBytes() : Long.MAX_VALUE;
+        this.boosts = config.getUrlBoosts().stream()
+                .map(boost -> new Boost(Pattern.compile(boost.getPattern()), boost.getBoost()))
+                .toList();
+        int capacity = Math.max(1, props.getCrawl().getQueueCapacity());
+        this.results = new LinkedBlockingQueue<>(capacity);
+        this.slots = new Semaphore(capacity);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public boolean isBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    /**
+     * Ставит адреса в очередь обхода с глубиной {@code depth}.
+     * @return адреса, которые действительно добавлены в очередь
+     */
+    public List<FrontierEntry> seed(Collection<String> urls, int depth) {
+        List<FrontierEntry> accepted = new ArrayList<>();
+        for (String url : urls) {
+            FrontierEntry entry = enqueue(url, depth);
+            if (entry != null) {
+                accepted.add(entry);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Восстанавливает состояние прерванного обхода: адреса с отпечатками
+     * {@code visitedHashes} повторно в очередь не попадут, {@code queued}
+     * будут загружены, а {@code fetched} уже обработанных адресов учитываются
+     * в бюджете страниц.
+     */
+    public void restore(Collection<Long> visitedHashes, Collection<QueuedUrl> queued, long fetched) {
+        visitedHashes.forEach(visited::add);
+        fetchedPages.set(fetched);
+        for (QueuedUrl url : queued) {
+            // Правила robots.txt и ограничения сайта могли измениться с момента прерывания
+            if (url.getDepth() <= maxDepth && robots.isAllowed(url.getUrl())) {
+                frontier.add(entry(url.getUrl(), url.getDepth()));
+            }
+        }
+    }
+
+    /**
+     * Запускает обход адресов, поставленных в очередь через {@link #seed} или
+     * {@link #restore}, и в текущем потоке записывает готовые страницы пакетами,
+     * пока обход не завершится или не будет остановлен.
+     */
+    public void run(BatchSink sink) throws InterruptedException {
+        scheduler.dispatch();
+
+        int batchSize = Math.max(1, props.getCrawl().getBatchSize());
+        List<CrawledPage> batch = new ArrayList<>(batchSize);
+        while (true) {
+            CrawledPage next = results.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (next != null) {
+                batch.add(next);
+                results.drainTo(batch, batchSize - batch.size());
+            }
+            boolean finished = next == null && isFinished() && results.isEmpty();
+            if (batch.size() >= batchSize || (next == null && !batch.isEmpty()) || finished) {
+                flush(batch, sink);
+            }
+            if (finished) {
+                if (budgetExhausted) {
+                    log.info("Обход {} остановлен по бюджету: загружено страниц {}, байт {}, в очереди осталось {}",
+                            site.getUrl(), fetchedPages.get(), fetchedBytes.get(), frontier.size());
+                }
+                if (disallowed.get() > 0) {
+                    log.info("Обход {}: пропущено адресов по robots.txt {}", site.getUrl(), disallowed.get());
+                }
+                if (!knownPages.isEmpty()) {
+                    log.info("Инкрементальный обход {}: известных страниц {}, без изменений (304) {}",
+                            site.getUrl(), knownPages.size(), notModified.get());
+                }
+                return;
+            }
+        }
+    }
+
+    private void flush(List<CrawledPage> batch, BatchSink sink) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        markDuplicates(batch);
+        lemmatize(batch);
+        sink.write(batch);
+        // Id новых страниц назначаются при записи
+        for (CrawledPage crawledPage : batch) {
+            if (crawledPage.getChange() == CrawledPage.Change.DUPLICATE) {
+                rememberDuplicate(crawledPage.getCanonicalUrl(), crawledPage.getUrl(), crawledPage.getPage().getId());
+            }
+        }
+        slots.release(batch.size());
+        batch.clear();
+        scheduler.dispatch();
+    }
+
+    // Выполняется в потоке записи в порядке пакетов, поэтому каноническая страница
+    // всегда записывается не позже своих дубликатов. Удалённые страницы пакета
+    // обрабатываются первыми, чтобы новый адрес с тем же текстом не стал их дубликатом
+    private void markDuplicates(List<CrawledPage> batch) {
+        for (CrawledPage crawledPage : batch) {
+            if (crawledPage.getChange() == CrawledPage.Change.GONE) {
+                forgetCanonical(crawledPage.getUrl());
+            }
+        }
+        if (duplicates == null) {
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            CrawledPage crawledPage = batch.get(i);
+            CrawledPage.Change change = crawledPage.getChange();
+            if (change != CrawledPage.Change.NEW && change != CrawledPage.Change.MODIFIED) {
+                continue;
+            }
+            PageState known = knownPages.get(crawledPage.getUrl());
+            if (known != null && known.getSimhash() != null) {
+                duplicates.remove(known.getSimhash(), crawledPage.getUrl());
+            }
+            Long simhash = crawledPage.getPage().getSimhash();
+            String canonicalUrl = simhash == null ? null : duplicates.findOrAdd(simhash, crawledPage.getUrl());
+            if (canonicalUrl != null) {
+                log.info("Почти дубликат {} страницы {}", crawledPage.getUrl(), canonicalUrl);
+                batch.set(i, crawledPage.asDuplicateOf(canonicalUrl));
+                requeueDuplicatesOf(crawledPage.getUrl());
+            }
+        }
+    }
+
+    // Удалённая страница больше не может быть канонической: её отпечаток убирается
+    // из индекса, а её дубликаты загружаются заново
+    private void forgetCanonical(String url) {
+        PageState known = knownPages.get(url);
+        if (duplicates != null && known != null && known.getSimhash() != null) {
+            duplicates.remove(known.getSimhash(), url);
+        }
+        requeueDuplicatesOf(url);
+    }
+
+    private void rememberDuplicate(String canonicalUrl, String url, Long pageId) {
+        if (pageId != null) {
+            duplicatesByCanonical.computeIfAbsent(canonicalUrl, key -> new HashMap<>()).put(url, pageId);
+        }
+    }
+
+    // Дубликаты страницы, которая перестала быть канонической, писатель отвязывает от неё,
+    // а обход загружает их снова и индексирует самостоятельно или как дубликаты другой страницы
+    private void requeueDuplicatesOf(String canonicalUrl) {
+        Map<String, Long> pages = duplicatesByCanonical.remove(canonicalUrl);
+        if (pages == null || !running) {
+            return;
+        }
+        pages.forEach((url, pageId) -> {
+            refetch.put(url, pageId);
+            // Как и остальные известные страницы, считаются ссылками с главной страницы
+            frontier.add(entry(url, 1));
+        });
+    }
+
+    // Леммы всех новых и изменившихся страниц пакета считаются параллельно в пуле
+    // лемматизации; дубликаты, отмеченные перед этим, не лемматизируются.
+    // Строки лемм сразу заменяются номерами из словаря обхода
+    private void lemmatize(List<CrawledPage> batch) {
+        List<Integer> positions = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.get(i).needsLemmas()) {
+                positions.add(i);
+                texts.add(batch.get(i).getText());
+            }
+        }
+        if (texts.isEmpty()) {
+            return;
+        }
+        List<Map<String, Integer>> lemmas = lemmaService.getLemmas(texts);
+        for (int i = 0; i < positions.size(); i++) {
+            int position = positions.get(i);
+            batch.set(position, batch.get(position).withPostings(PagePostings.of(lemmas.get(i), dictionary)));
+        }
+    }
+
+    private boolean isFinished() {
+        return inFlight.get() == 0 && (!running || budgetExhausted || frontier.isEmpty());
+    }
+
+    // Возвращает элемент очереди, если адрес впервые поставлен в очередь, иначе null
+    private FrontierEntry enqueue(String url, int depth) {
+        // Глубина проверяется до отметки о посещении: адрес ещё может встретиться ближе к корню
+        if (depth > maxDepth) {
+            return null;
+        }
+        String canonical = UrlNormalizer.normalize(url);
+        if (canonical == null || !canonical.startsWith(siteUrl)) {
+            return null;
+        }
+        // Запрещённый robots.txt адрес тоже запоминается, чтобы не проверять его повторно
+        if (!visited.add(canonical)) {
+            return null;
+        }
+        if (!robots.isAllowed(canonical)) {
+            disallowed.incrementAndGet();
+            return null;
+        }
+        FrontierEntry entry = entry(canonical, depth);
+        frontier.add(entry);
+        return entry;
+    }
+
+    private FrontierEntry entry(String url, int depth) {
+        double priority = depth;
+        for (Boost boost : boosts) {
+            if (boost.pattern.matcher(url).matches()) {
+                priority -= boost.boost;
+            }
+        }
+        return new FrontierEntry(url, depth, priority, sequence.getAndIncrement());
+    }
+
+    /**
+     * Вызывается {@link CrawlScheduler} вне его блокировки: запускает загрузку
+     * одной страницы, если в очереди есть адрес, не исчерпаны места конвейера и
+     * предел одновременных загрузок сайта, а хост готов принять запрос.
+     * @return true, если загрузка запущена; по её завершении вызывается
+     * {@link CrawlScheduler#onComplete()}
+     */
+    boolean tryDispatch() {
+        FrontierEntry entry = reserve();
+        if (entry == null) {
+            return false;
+        }
+        dispatch(entry);
+        return true;
+    }
+
+    // Проверки и резервирование мест под блокировкой сайта, чтобы одновременные
+    // вызовы из разных потоков не превысили пределы; сам запрос отправляется без неё
+    private synchronized FrontierEntry reserve() {
+        if (!running || budgetExhausted || inFlight.get() >= maxInFlight) {
+            return null;
+        }
+        if (fetchedPages.get() >= maxPages || fetchedBytes.get() >= maxBytes) {
+            budgetExhausted = true;
+            return null;
+        }
+        if (!slots.tryAcquire()) {
+            return null;
+        }
+        // inFlight увеличивается до извлечения ссылки, иначе isFinished()
+        // может увидеть пустую очередь в момент передачи ссылки исполнителю
+        inFlight.incrementAndGet();
+        FrontierEntry entry = frontier.poll();
+        long waitMs = entry == null ? 0 : politeness.tryAcquire(host);
+        if (entry == null || waitMs > 0) {
+            if (entry != null) {
+                // Элемент сохраняет порядковый номер и возвращается на своё место в очереди
+                frontier.add(entry);
+                scheduleWakeUp(waitMs);
+            }
+            inFlight.decrementAndGet();
+            slots.release();
+            return null;
+        }
+        fetchedPages.incrementAndGet();
+        return entry;
+    }
+
+    // Загрузка идёт асинхронно, а разбор и лемматизация — на потоках исполнителя
+    private void dispatch(FrontierEntry entry) {
+        String url = entry.getUrl();
+        long started = System.nanoTime();
+        Long forcedPageId = refetch.remove(url);
+        PageState known = forcedPageId != null ? null : knownPages.get(url);
+        String etag = known == null ? null : known.getEtag();
+        String lastModified = known == null ? null : known.getLastModified();
+        fetcher.fetch(url, etag, lastModified).whenCompleteAsync((result, error) -> {
+            boolean produced = false;
+            try {
+                produced = process(entry, result, error, elapsedMs(started), forcedPageId);
+            } finally {
+                if (!produced) {
+                    slots.release();
+                }
+                inFlight.decrementAndGet();
+                scheduler.onComplete();
+            }
+        }, scheduler.getWorkers());
+    }
+
+    private void scheduleWakeUp(long delayMs) {
+        if (wakeUpScheduled.compareAndSet(false, true)) {
+            politeness.schedule(() -> {
+                wakeUpScheduled.set(false);
+                scheduler.dispatch();
+            }, delayMs);
+        }
+    }
+
+    // Возвращает true, если результат передан на запись. Адреса, загрузка которых
+    // не удалась, на запись не передаются и остаются в frontier в состоянии QUEUED.
+    // forcedPageId — id записанной страницы, которая индексируется, даже если её текст не изменился
+    private boolean process(FrontierEntry entry, FetchResult result, Throwable error, long latencyMs,
+            Long forcedPageId) {
+        String url = entry.getUrl();
+        if (error != null) {
+            politeness.onFailure(host);
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            log.warn("Не удалось обработать страницу: " + url, cause);
+            return false;
+        }
+        politeness.onResponse(host, result.getStatusCode(), latencyMs);
+        if (result.hasBody()) {
+            fetchedBytes.addAndGet(result.getBody().length);
+        }
+
+        try {
+            if (!running) {
+                return false;
+            }
+            PageState known = forcedPageId != null ? null : knownPages.get(url);
+            Long knownId = forcedPageId != null ? forcedPageId : known != null ? known.getId() : null;
+            // Место в очереди уже зарезервировано в tryDispatch(), поэтому offer не откажет
+            if (result.isNotModified() && known != null) {
+                notModified.incrementAndGet();
+                return results.offer(CrawledPage.skipped(url, List.of()));
+            }
+            if (result.getStatusCode() >= 400) {
+                log.warn("Страница недоступна (HTTP {}): {}", result.getStatusCode(), url);
+                int code = result.getStatusCode();
+                if (knownId != null && (code == 404 || code == 410)) {
+                    PageEntity gone = new PageEntity();
+                    gone.setId(knownId);
+                    gone.setPath(url);
+                    return results.offer(CrawledPage.gone(gone));
+                }
+                return results.offer(CrawledPage.skipped(url, List.of()));
+            }
+            if (!result.hasBody()) {
+                log.warn("Пропущен не текстовый контент (MIME: {}): {}", result.getContentType(), url);
+                return results.offer(CrawledPage.skipped(url, List.of()));
+            }
+            // Начало документа без конца дало бы неполный текст и часть ссылок
+            if (result.isTruncated()) {
+                log.warn("Пропущена страница больше {} байт: {}", props.getFetch().getMaxBodyBytes(), url);
+                return results.offer(CrawledPage.skipped(url, List.of()));
+            }
+
+            log.info("Обработка URL: {}", url);
+            Document doc = result.parse();
+
+            List<FrontierEntry> discovered = new ArrayList<>();
+            for (Element link : doc.select("a[href]")) {
+                FrontierEntry found = enqueue(link.absUrl("href"), entry.getDepth() + 1);
+                if (found != null) {
+                    discovered.add(found);
+                }
+            }
+
+            String text = lemmaService.extractText(doc);
+            PageEntity pageEntity = new PageEntity();
+            pageEntity.setSite(site);
+            pageEntity.setCode(result.getStatusCode());
+            pageEntity.setPath(url);
+            pageEntity.setTitle(title(doc));
+            pageEntity.setEtag(result.getEtag());
+            pageEntity.setLastModified(result.getLastModified());
+            pageEntity.setContentHash(ContentHash.of(text));
+            pageEntity.setSimhash(SimHash.of(text));
+
+            if (knownId == null) {
+                return results.offer(CrawledPage.created(pageEntity, body(text, doc), text, discovered));
+            }
+            pageEntity.setId(knownId);
+            if (known == null) {
+                return results.offer(CrawledPage.modified(pageEntity, body(text, doc), text, discovered));
+            }
+            if (pageEntity.getContentHash().equals(known.getContentHash())) {
+                boolean validatorsChanged = !Objects.equals(pageEntity.getEtag(), known.getEtag())
+                        || !Objects.equals(pageEntity.getLastModified(), known.getLastModified());
+                return results.offer(validatorsChanged
+                        ? CrawledPage.unchanged(pageEntity, discovered)
+                        : CrawledPage.skipped(url, discovered));
+            }
+            return results.offer(CrawledPage.modified(pageEntity, body(text, doc), text, discovered));
+
+        } catch (FetchResult.BodyTooLargeException e) {
+            log.warn("Пропущена страница: {}: {}", e.getMessage(), url);
+            return results.offer(CrawledPage.skipped(url, List.of()));
+        } catch (IOException e) {
+            log.warn("Не удалось обработать страницу: " + url, e);
+        } catch (Throwable t) {
+            log.error("Непредвиденная ошибка при обработке задачи для URL: " + url, t);
+        }
+        return false;
+    }
+
+    // Сжатие выполняется на потоках исполнителя, а не в транзакции записи
+    private PageBodyEntity body(String text, Document doc) {
+        SearchEngineProperties.Storage storage = props.getStorage();
+        PageBodyEntity body = new PageBodyEntity();
+        body.setText(PageBodyCodec.compress(text, storage.getCompressionLevel()));
+        if (storage.isStoreHtml()) {
+            body.setHtml(PageBodyCodec.compress(doc.outerHtml(), storage.getCompressionLevel()));
+        }
+        return body;
+    }
+
+    private static String title(Document doc) {
+        String title = doc.title().trim();
+        if (title.isEmpty()) {
+            return null;
+        }
+        return title.length() > MAX_TITLE_LENGTH ? title.substring(0, MAX_TITLE_LENGTH) : title;
+    }
+
+    private static long elapsedMs(long startedNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+    }
+
+    @FunctionalInterface
+    public interface BatchSink {
+        void write(List<CrawledPage> batch);
+    }
+
+    private static class Boost {
+        private final Pattern pattern;
+        private final double boost;
+
+        Boost(Pattern pattern, double boost) {
+            this.pattern = pattern;
+            this.boost = boost;
+        }
+    }
+}
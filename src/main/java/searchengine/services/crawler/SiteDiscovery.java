@@ -0,0 +1,259 @@
+package searchengine.services.crawler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.SearchEngineProperties;
+
+/**
+ * Поиск адресов сайта до начала обхода: правила robots.txt и карта сайта.
+ * Адреса из sitemap.xml (и вложенных в sitemap index карт) ставятся в очередь
+ * сразу, начиная с недавно изменённых по {@code lastmod}, поэтому глубокие
+ * страницы не ждут, пока до них дойдёт обход по ссылкам.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SiteDiscovery {
+
+    private final SearchEngineProperties props;
+    private final PageFetcher fetcher;
+    private final PolitenessScheduler politeness;
+
+    /**
+     * Загружает robots.txt сайта и применяет его Crawl-delay к хосту на время обхода.
+     * Если файла нет или он недоступен, ограничений нет. Отмена возвращённого
+     * future прекращает ожидание очереди к хосту.
+     */
+    public CompletableFuture<RobotsRules> loadRobots(String siteUrl) {
+        CompletableFuture<RobotsRules> loaded = new CompletableFuture<>();
+        if (!props.getDiscovery().isRobots()) {
+            politeness.setCrawlDelay(siteUrl, 0);
+            loaded.complete(RobotsRules.allowAll());
+            return loaded;
+        }
+        String robotsUrl = resolve(siteUrl, "/robots.txt");
+        // Разбор идёт в общем пуле, а не на потоках HTTP-клиента
+        fetch(robotsUrl, loaded)
+                .thenApplyAsync(result -> parseRobots(robotsUrl, result))
+                .whenComplete((rules, error) -> {
+                    if (error != null) {
+                        loaded.completeExceptionally(error);
+                    } else {
+                        politeness.setCrawlDelay(siteUrl, rules.getCrawlDelayMs());
+                        loaded.complete(rules);
+                    }
+                });
+        return loaded;
+    }
+
+    private RobotsRules parseRobots(String robotsUrl, FetchResult result) {
+        if (result == null || result.getStatusCode() >= 400 || !result.hasBody()) {
+            return RobotsRules.allowAll();
+        }
+        try {
+            RobotsRules rules = RobotsRules.parse(result.text(), props.getUserAgent());
+            log.info("robots.txt {}: Crawl-delay {} мс, карт сайта {}", robotsUrl, rules.getCrawlDelayMs(),
+                    rules.getSitemaps().size());
+            return rules;
+        } catch (IOException e) {
+            log.warn("Не удалось прочитать robots.txt: " + robotsUrl, e);
+            return RobotsRules.allowAll();
+        }
+    }
+
+    /**
+     * Собирает адреса страниц из карт сайта, указанных в robots.txt (или
+     * /sitemap.xml), включая вложенные sitemap index. Адреса упорядочены по
+     * {@code lastmod} от новых к старым, адреса без даты идут последними.
+     * Карты загружаются по одной; после отмены возвращённого future следующие
+     * не загружаются.
+     */
+    public CompletableFuture<List<String>> loadSitemapUrls(String siteUrl, RobotsRules robots) {
+        CompletableFuture<List<String>> loaded = new CompletableFuture<>();
+        if (!props.getDiscovery().isSitemaps()) {
+            loaded.complete(List.of());
+            return loaded;
+        }
+        SitemapWalk walk = new SitemapWalk(siteUrl, robots.getSitemaps().isEmpty()
+                ? List.of(resolve(siteUrl, "/sitemap.xml"))
+                : new LinkedHashSet<>(robots.getSitemaps()), loaded);
+        walk.next();
+        return loaded;
+    }
+
+    // Обход карт сайта: следующая карта запрашивается, когда разобрана предыдущая
+    private class SitemapWalk {
+        private final String siteUrl;
+        private final Deque<String> sitemaps;
+        private final CompletableFuture<List<String>> loaded;
+        private final Set<String> seenSitemaps = new HashSet<>();
+        private final Set<String> seenUrls = new HashSet<>();
+        private final List<SitemapEntry> entries = new ArrayList<>();
+
+        SitemapWalk(String siteUrl, Collection<String> sitemaps, CompletableFuture<List<String>> loaded) {
+            this.siteUrl = siteUrl;
+            this.sitemaps = new ArrayDeque<>(sitemaps);
+            this.loaded = loaded;
+        }
+
+        void next() {
+            SearchEngineProperties.Discovery settings = props.getDiscovery();
+            if (loaded.isDone()) {
+                return;
+            }
+            String sitemapUrl = null;
+            if (seenSitemaps.size() < settings.getMaxSitemaps() && entries.size() < settings.getMaxSitemapUrls()) {
+                while (!sitemaps.isEmpty() && sitemapUrl == null) {
+                    String candidate = sitemaps.poll();
+                    if (seenSitemaps.add(candidate)) {
+                        sitemapUrl = candidate;
+                    }
+                }
+            }
+            if (sitemapUrl == null) {
+                finish();
+                return;
+            }
+            String url = sitemapUrl;
+            // Разбор идёт в общем пуле, а не на потоках HTTP-клиента
+            fetch(url, loaded)
+                    .thenAcceptAsync(result -> {
+                        collect(parseXml(url, result), settings.getMaxSitemapUrls());
+                        next();
+                    })
+                    .exceptionally(error -> {
+                        loaded.completeExceptionally(error);
+                        return null;
+                    });
+        }
+
+        private void collect(Document doc, int maxUrls) {
+            if (doc == null) {
+                return;
+            }
+            for (Element sitemap : doc.getElementsByTag("sitemap")) {
+                String loc = childText(sitemap, "loc");
+                if (loc != null) {
+                    sitemaps.add(loc);
+                }
+            }
+            for (Element url : doc.getElementsByTag("url")) {
+                String loc = childText(url, "loc");
+                if (loc != null && seenUrls.add(loc) && entries.size() < maxUrls) {
+                    entries.add(new SitemapEntry(loc, parseLastmod(childText(url, "lastmod"))));
+                }
+            }
+        }
+
+        private void finish() {
+            entries.sort(Comparator.comparingLong(SitemapEntry::lastmod).reversed());
+            log.info("Карты сайта {}: загружено {}, найдено адресов {}", siteUrl, seenSitemaps.size(),
+                    entries.size());
+            loaded.complete(entries.stream().map(SitemapEntry::url).toList());
+        }
+    }
+
+    private Document parseXml(String url, FetchResult result) {
+        if (result == null || result.getStatusCode() >= 400 || !result.hasBody()) {
+            return null;
+        }
+        try {
+            return result.parseXml();
+        } catch (IOException e) {
+            log.warn("Не удалось разобрать карту сайта: " + url, e);
+            return null;
+        }
+    }
+
+    /**
+     * Служебные файлы загружаются через ту же очередь к хосту, что и страницы:
+     * ожидание разрешения и загрузка не занимают поток. Результат null, если файл
+     * загрузить не удалось; если owner завершён (отменён), запрос не выполняется.
+     */
+    private CompletableFuture<FetchResult> fetch(String url, CompletableFuture<?> owner) {
+        String host = URI.create(url).getHost();
+        if (host == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> permit = politeness.acquire(host);
+        owner.whenComplete((value, error) -> permit.cancel(false));
+        return permit
+                .thenCompose(ignored -> owner.isDone()
+                        ? CompletableFuture.<FetchResult>completedFuture(null)
+                        : fetcher.fetch(url))
+                .handle((result, error) -> {
+                    if (error != null) {
+                        if (!owner.isDone()) {
+                            politeness.onFailure(host);
+                            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                    ? error.getCause() : error;
+                            log.warn("Не удалось загрузить {}: {}", url, cause.getMessage());
+                        }
+                        return null;
+                    }
+                    if (result != null) {
+                        politeness.onResponse(host, result.getStatusCode(), 0);
+                        if (result.isTruncated()) {
+                            log.warn("Файл {} больше лимита загрузки и прочитан не полностью", url);
+                        }
+                    }
+                    return result;
+                });
+    }
+
+    private static String resolve(String siteUrl, String path) {
+        return URI.create(siteUrl).resolve(path).toString();
+    }
+
+    private static String childText(Element parent, String tag) {
+        for (Element child : parent.children()) {
+            if (child.tagName().equalsIgnoreCase(tag)) {
+                String text = child.text().trim();
+                return text.isEmpty() ? null : text;
+            }
+        }
+        return null;
+    }
+
+    // W3C Datetime: полная дата-время со смещением или только дата
+    private static long parseLastmod(String lastmod) {
+        if (lastmod == null) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return OffsetDateTime.parse(lastmod).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDate.parse(lastmod.length() > 10 ? lastmod.substring(0, 10) : lastmod)
+                        .atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+                return Long.MIN_VALUE;
+            }
+        }
+    }
+
+    private record SitemapEntry(String url, long lastmod) {
+    }
+}
@@ -0,0 +1,445 @@
+package searchengine.services.crawler;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import searchengine.model.FrontierState;
+import searchengine.model.IndexingStatus;
+import searchengine.model.LemmaEntity;
+import searchengine.model.PageBodyEntity;
+import searchengine.model.PageEntity;
+import searchengine.repositories.BulkIndexRepository;
+import searchengine.repositories.FrontierRepository;
+import searchengine.repositories.IndexRepository;
+import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.PageBodyRepository;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.lemma.LemmaService;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SiteIndexWriter {
+
+    // Ограничение на размер IN (...) при выборке лемм
+    private static final int LEMMA_LOOKUP_CHUNK = 1000;
+
+    private final PageRepository pageRepository;
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+    private final FrontierRepository frontierRepository;
+    private final PageBodyRepository pageBodyRepository;
+    private final BulkIndexRepository bulkIndexRepository;
+    private final SiteRepository siteRepository;
+    private final LemmaService lemmaService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Удаляет поколения сайта, предшествующие указанному, запросами над множествами
+     * строк, не загружая страницы в память. Поколения, построенные позже, включая
+     * строящееся в этот момент, не затрагиваются.
+     */
+    @Transactional
+    public void dropGenerationsBefore(Long siteId, int generation) {
+        indexRepository.deleteAllBySiteIdAndGenerationLessThan(siteId, generation);
+        pageRepository.deleteAllBySiteIdAndGenerationLessThan(siteId, generation);
+        lemmaRepository.deleteAllBySiteIdAndGenerationLessThan(siteId, generation);
+    }
+
+    /**
+     * Делает поколение активным: поиск переключается на него одним UPDATE строки сайта.
+     * Контрольная точка законченного обхода больше не нужна.
+     */
+    @Transactional
+    public void activateGeneration(Long siteId, int generation) {
+        frontierRepository.deleteAllBySiteId(siteId);
+        siteRepository.activateGeneration(siteId, generation, IndexingStatus.INDEXED, LocalDateTime.now());
+        eventPublisher.publishEvent(new GenerationActivatedEvent(siteId, generation));
+    }
+
+    /**
+     * Записывает пакет страниц вместе с их леммами и индексами одной транзакцией
+     * в заданное поколение индекса сайта.
+     * Для изменившихся и удалённых страниц frequency лемм корректируется на разницу
+     * между старым и новым набором лемм, остальные леммы сайта не затрагиваются.
+     * Леммы страниц задаются номерами из словаря обхода, в котором кешируются и id
+     * строк lemma, поэтому в БД ищутся только ещё не встречавшиеся леммы.
+     * Леммы, индексы и контрольная точка пишутся через {@link BulkIndexRepository}
+     * несколькими запросами на пакет, а не запросом на строку.
+     * В той же транзакции сохраняется контрольная точка обхода: найденные адреса
+     * и состояние обработанных, поэтому frontier всегда согласован со страницами.
+     * Дубликаты удалённых страниц снова ставятся в очередь обхода.
+     * Записанные изменения публикуются как {@link IndexUpdatedEvent}.
+     */
+    @Transactional
+    public void write(Long siteId, int generation, List<CrawledPage> batch, LemmaDictionary dictionary) {
+        List<String> detached = new ArrayList<>();
+        List<CrawledPage> written = apply(siteId, generation, batch, dictionary, detached);
+        saveCheckpoint(siteId, written, detached);
+    }
+
+    /**
+     * Переиндексирует одну страницу вне обхода тем же путём, что и пакет обхода:
+     * frequency меняется только у лемм, которые появились на странице или исчезли
+     * с неё, поэтому стоимость не зависит от размера сайта. Контрольная точка
+     * обхода не затрагивается.
+     */
+    @Transactional
+    public void writePage(Long siteId, int generation, CrawledPage crawledPage, LemmaDictionary dictionary) {
+        apply(siteId, generation, List.of(crawledPage), dictionary, new ArrayList<>());
+    }
+
+    // Возвращает записанный пакет: дубликаты без канонической страницы в нём заменены
+    // проиндексированными страницами. В detached добавляются адреса отвязанных дубликатов
+    private List<CrawledPage> apply(Long siteId, int generation, List<CrawledPage> batch,
+            LemmaDictionary dictionary, List<String> detached) {
+        Map<String, Long> canonicalIds = new HashMap<>();
+        batch = resolveCanonicals(siteId, generation, batch, canonicalIds, dictionary);
+        List<CrawledPage> indexed = new ArrayList<>();
+        List<Long> replacedPageIds = new ArrayList<>();
+        List<Long> gonePageIds = new ArrayList<>();
+        List<CrawledPage> duplicatePages = new ArrayList<>();
+        // Страницы, которые перестают быть каноническими: удалённые и ставшие дубликатами
+        List<Long> formerCanonicalIds = new ArrayList<>();
+        // Изменения для слушателей: страницы, убранные из индекса, и новые наборы лемм
+        List<PageUpdate> updates = new ArrayList<>();
+        for (CrawledPage crawledPage : batch) {
+            PageEntity page = crawledPage.getPage();
+            if (page != null) {
+                page.setGeneration(generation);
+            }
+            switch (crawledPage.getChange()) {
+                case SKIPPED -> {
+                }
+                case NEW -> indexed.add(crawledPage);
+                case MODIFIED -> {
+                    indexed.add(crawledPage);
+                    replacedPageIds.add(page.getId());
+                }
+                case UNCHANGED -> pageRepository.updateValidators(page.getId(), page.getCode(), page.getEtag(),
+                        page.getLastModified());
+                case GONE -> {
+                    replacedPageIds.add(page.getId());
+                    gonePageIds.add(page.getId());
+                    formerCanonicalIds.add(page.getId());
+                    updates.add(PageUpdate.removal(page.getId()));
+                }
+                case DUPLICATE -> {
+                    duplicatePages.add(crawledPage);
+                    if (page.getId() != null) {
+                        replacedPageIds.add(page.getId());
+                        formerCanonicalIds.add(page.getId());
+                        updates.add(PageUpdate.removal(page.getId()));
+                    }
+                }
+            }
+        }
+
+        detached.addAll(detachDuplicatesOf(formerCanonicalIds));
+
+        // Сохранение новых страниц и слияние изменившихся: для индексов нужны управляемые сущности
+        List<PageEntity> savedPages = pageRepository.saveAll(
+                indexed.stream().map(CrawledPage::getPage).collect(Collectors.toList()));
+        Long[] bodyPageIds = new Long[indexed.size()];
+        byte[][] bodyTexts = new byte[indexed.size()][];
+        byte[][] bodyHtmls = new byte[indexed.size()][];
+        for (int i = 0; i < indexed.size(); i++) {
+            PageBodyEntity body = indexed.get(i).getBody();
+            bodyPageIds[i] = savedPages.get(i).getId();
+            bodyTexts[i] = body.getText();
+            bodyHtmls[i] = body.getHtml();
+        }
+        saveDuplicates(duplicatePages, savedPages, canonicalIds);
+
+        // Старые наборы лемм заменяемых страниц — номерами словаря
+        Map<Long, Set<Integer>> oldLemmas = new HashMap<>();
+        if (!replacedPageIds.isEmpty()) {
+            for (IndexRepository.PageLemma row : indexRepository.findPageLemmasByPageIdIn(replacedPageIds)) {
+                int id = dictionary.idOf(row.getLemma());
+                dictionary.setLemmaId(id, row.getLemmaId());
+                oldLemmas.computeIfAbsent(row.getPageId(), pageId -> new HashSet<>()).add(id);
+            }
+            indexRepository.deleteAllByPageIdsIn(replacedPageIds);
+        }
+
+        // frequency леммы — число страниц, на которых она встречается.
+        // Сортировка фиксирует порядок блокировок строк lemma между параллельными писателями
+        SortedMap<String, Integer> increments = new TreeMap<>();
+        Map<Integer, Integer> decrements = new HashMap<>();
+        for (CrawledPage crawledPage : batch) {
+            if (crawledPage.getChange() == CrawledPage.Change.UNCHANGED
+                    || crawledPage.getChange() == CrawledPage.Change.SKIPPED) {
+                continue;
+            }
+            Set<Integer> previous = crawledPage.getChange() == CrawledPage.Change.NEW
+                    || crawledPage.getPage().getId() == null
+                    ? Set.of()
+                    : oldLemmas.getOrDefault(crawledPage.getPage().getId(), Set.of());
+            PagePostings current = crawledPage.hasPostings() ? crawledPage.getPostings() : PagePostings.EMPTY;
+            for (int i = 0; i < current.size(); i++) {
+                if (!previous.contains(current.lemmaId(i))) {
+                    increments.merge(dictionary.lemma(current.lemmaId(i)), 1, Integer::sum);
+                }
+            }
+            for (int id : previous) {
+                if (!current.contains(id)) {
+                    decrements.merge(id, 1, Integer::sum);
+                }
+            }
+        }
+        applyDecrements(decrements, dictionary);
+        bulkIndexRepository.upsertLemmas(siteId, generation, increments)
+                .forEach((lemma, lemmaId) -> dictionary.setLemmaId(dictionary.idOf(lemma), lemmaId));
+        List<Long> decremented = decrements.keySet().stream().map(dictionary::lemmaId).collect(Collectors.toList());
+        for (int from = 0; from < decremented.size(); from += LEMMA_LOOKUP_CHUNK) {
+            lemmaRepository.deleteUnusedByIdIn(
+                    decremented.subList(from, Math.min(decremented.size(), from + LEMMA_LOOKUP_CHUNK)));
+        }
+        decrements.keySet().forEach(dictionary::forgetLemmaId);
+
+        resolveLemmaIds(siteId, generation, indexed, dictionary);
+
+        int indexCount = indexed.stream().mapToInt(crawledPage -> crawledPage.getPostings().size()).sum();
+        Long[] indexPageIds = new Long[indexCount];
+        Long[] indexLemmaIds = new Long[indexCount];
+        Double[] indexRanks = new Double[indexCount];
+        int indexes = 0;
+        for (int i = 0; i < indexed.size(); i++) {
+            PagePostings postings = indexed.get(i).getPostings();
+            PageEntity page = savedPages.get(i);
+            String[] pageLemmas = new String[postings.size()];
+            float[] pageRanks = new float[postings.size()];
+            int written = 0;
+            for (int j = 0; j < postings.size(); j++) {
+                long lemmaId = dictionary.lemmaId(postings.lemmaId(j));
+                if (lemmaId == 0) {
+                    log.warn("Не найдена лемма '{}' для страницы '{}'", dictionary.lemma(postings.lemmaId(j)),
+                            page.getPath());
+                    continue;
+                }
+                indexPageIds[indexes] = page.getId();
+                indexLemmaIds[indexes] = lemmaId;
+                indexRanks[indexes] = (double) postings.rank(j);
+                indexes++;
+                pageLemmas[written] = dictionary.lemma(postings.lemmaId(j));
+                pageRanks[written] = postings.rank(j);
+                written++;
+            }
+            updates.add(new PageUpdate(page.getId(), Arrays.copyOf(pageLemmas, written),
+                    Arrays.copyOf(pageRanks, written)));
+        }
+        // Изменения сущностей должны попасть в БД раньше строк, записанных мимо Hibernate
+        pageRepository.flush();
+        bulkIndexRepository.upsertBodies(bodyPageIds, bodyTexts, bodyHtmls);
+        bulkIndexRepository.insertIndexes(Arrays.copyOf(indexPageIds, indexes), Arrays.copyOf(indexLemmaIds, indexes),
+                Arrays.copyOf(indexRanks, indexes));
+
+        if (!gonePageIds.isEmpty()) {
+            pageRepository.deleteAllByIdInBatch(gonePageIds);
+        }
+        if (!updates.isEmpty()) {
+            eventPublisher.publishEvent(new IndexUpdatedEvent(siteId, generation, updates));
+        }
+        log.debug("Записан пакет: {} страниц, +{}/-{} лемм, {} индексов", batch.size(), increments.size(),
+                decrements.size(), indexes);
+        return batch;
+    }
+
+    /**
+     * Ищет канонические страницы дубликатов пакета: записанные раньше находятся
+     * в БД, остальные должны быть новыми или изменившимися страницами того же
+     * пакета. Найденные id записываются в canonicalIds. Дубликат, каноническая
+     * страница которого не нашлась или удаляется этим же пакетом, лемматизируется
+     * и индексируется как обычная страница, а не сохраняется без тела и лемм.
+     */
+    private List<CrawledPage> resolveCanonicals(Long siteId, int generation, List<CrawledPage> batch,
+            Map<String, Long> canonicalIds, LemmaDictionary dictionary) {
+        Set<String> inBatch = new HashSet<>();
+        Set<String> gone = new HashSet<>();
+        Set<String> wanted = new HashSet<>();
+        for (CrawledPage crawledPage : batch) {
+            switch (crawledPage.getChange()) {
+                case NEW, MODIFIED -> inBatch.add(crawledPage.getUrl());
+                case GONE -> gone.add(crawledPage.getUrl());
+                case DUPLICATE -> wanted.add(crawledPage.getCanonicalUrl());
+                default -> {
+                }
+            }
+        }
+        if (wanted.isEmpty()) {
+            return batch;
+        }
+        wanted.removeAll(inBatch);
+        wanted.removeAll(gone);
+        if (!wanted.isEmpty()) {
+            pageRepository.findIdsBySiteIdAndGenerationAndPathIn(siteId, generation, wanted)
+                    .forEach(row -> canonicalIds.put(row.getPath(), row.getId()));
+        }
+
+        List<CrawledPage> resolved = new ArrayList<>(batch.size());
+        for (CrawledPage crawledPage : batch) {
+            String canonicalUrl = crawledPage.getCanonicalUrl();
+            if (crawledPage.getChange() == CrawledPage.Change.DUPLICATE && !inBatch.contains(canonicalUrl)
+                    && !canonicalIds.containsKey(canonicalUrl)) {
+                log.warn("Не найдена каноническая страница '{}' для дубликата '{}', страница индексируется",
+                        canonicalUrl, crawledPage.getUrl());
+                crawledPage = crawledPage.asCanonical()
+                        .withPostings(PagePostings.of(lemmaService.getLemmas(crawledPage.getText()), dictionary));
+            }
+            resolved.add(crawledPage);
+        }
+        return resolved;
+    }
+
+    /**
+     * Отвязывает дубликаты страниц, которые перестают быть каноническими. У
+     * дубликатов нет тела и лемм, поэтому они не удаляются вместе с канонической
+     * страницей, а загружаются заново и индексируются самостоятельно или как
+     * дубликаты другой страницы.
+     * @return адреса отвязанных дубликатов
+     */
+    private List<String> detachDuplicatesOf(List<Long> canonicalIds) {
+        if (canonicalIds.isEmpty()) {
+            return List.of();
+        }
+        List<PageRepository.PageIdByPath> orphans = pageRepository.findIdsByCanonicalPageIdIn(canonicalIds);
+        if (orphans.isEmpty()) {
+            return List.of();
+        }
+        pageRepository.detachDuplicates(orphans.stream().map(PageRepository.PageIdByPath::getId).toList());
+        log.info("Отвязано дубликатов удалённых или изменившихся страниц: {}", orphans.size());
+        // Страницы, сохранённые до нормализации адресов, ставятся в очередь по каноническому виду
+        return orphans.stream().map(orphan -> {
+            String canonical = UrlNormalizer.normalize(orphan.getPath());
+            return canonical != null ? canonical : orphan.getPath();
+        }).toList();
+    }
+
+    /**
+     * Сохраняет почти дубликаты ссылкой на каноническую страницу, найденную
+     * {@link #resolveCanonicals} или сохранённую в этом же пакете. Тела страниц,
+     * ставших дубликатами, больше не нужны.
+     */
+    private void saveDuplicates(List<CrawledPage> duplicatePages, List<PageEntity> savedPages,
+            Map<String, Long> canonicalIds) {
+        if (duplicatePages.isEmpty()) {
+            return;
+        }
+        savedPages.forEach(page -> canonicalIds.put(page.getPath(), page.getId()));
+
+        List<PageEntity> pages = new ArrayList<>();
+        List<Long> formerPageIds = new ArrayList<>();
+        for (CrawledPage crawledPage : duplicatePages) {
+            PageEntity page = crawledPage.getPage();
+            page.setCanonicalPage(pageRepository.getReferenceById(canonicalIds.get(crawledPage.getCanonicalUrl())));
+            if (page.getId() != null) {
+                formerPageIds.add(page.getId());
+            }
+            pages.add(page);
+        }
+        pageRepository.saveAll(pages);
+        if (!formerPageIds.isEmpty()) {
+            pageBodyRepository.deleteAllByIdInBatch(formerPageIds);
+        }
+    }
+
+    /**
+     * Начинает новый обход сайта: прежняя контрольная точка удаляется,
+     * начальные адреса ставятся в очередь.
+     */
+    @Transactional
+    public void resetFrontier(Long siteId, List<FrontierEntry> seeds) {
+        frontierRepository.deleteAllBySiteId(siteId);
+        saveQueued(siteId, seeds);
+    }
+
+    // Отвязанные дубликаты ставятся в очередь, если не обработаны этим же пакетом
+    private void saveCheckpoint(Long siteId, List<CrawledPage> batch, List<String> detached) {
+        List<FrontierEntry> discovered = new ArrayList<>();
+        List<Long> urlHashes = new ArrayList<>(batch.size());
+        List<String> urls = new ArrayList<>(batch.size());
+        List<String> states = new ArrayList<>(batch.size());
+        Set<String> written = batch.stream().map(CrawledPage::getUrl).collect(Collectors.toSet());
+        for (String url : detached) {
+            if (!written.contains(url)) {
+                urlHashes.add(UrlNormalizer.fingerprint(url));
+                urls.add(url);
+                states.add(FrontierState.QUEUED.name());
+            }
+        }
+        for (CrawledPage crawledPage : batch) {
+            discovered.addAll(crawledPage.getDiscovered());
+            FrontierState state = switch (crawledPage.getChange()) {
+                case NEW, MODIFIED, UNCHANGED -> FrontierState.INDEXED;
+                case GONE, SKIPPED, DUPLICATE -> FrontierState.FETCHED;
+            };
+            urlHashes.add(UrlNormalizer.fingerprint(crawledPage.getUrl()));
+            urls.add(crawledPage.getUrl());
+            states.add(state.name());
+        }
+        saveQueued(siteId, discovered);
+        bulkIndexRepository.upsertStates(siteId, urlHashes, urls, states);
+    }
+
+    private void saveQueued(Long siteId, List<FrontierEntry> entries) {
+        List<Long> urlHashes = new ArrayList<>(entries.size());
+        List<String> urls = new ArrayList<>(entries.size());
+        List<Integer> depths = new ArrayList<>(entries.size());
+        for (FrontierEntry entry : entries) {
+            urlHashes.add(UrlNormalizer.fingerprint(entry.getUrl()));
+            urls.add(entry.getUrl());
+            depths.add(entry.getDepth());
+        }
+        bulkIndexRepository.insertQueued(siteId, urlHashes, urls, depths);
+    }
+
+    // Одинаковые уменьшения объединяются в один UPDATE ... WHERE id IN (...)
+    private void applyDecrements(Map<Integer, Integer> decrements, LemmaDictionary dictionary) {
+        Map<Integer, List<Long>> idsByDelta = new TreeMap<>();
+        decrements.forEach((id, delta) -> idsByDelta.computeIfAbsent(delta, d -> new ArrayList<>())
+                .add(dictionary.lemmaId(id)));
+        idsByDelta.forEach((delta, ids) -> {
+            for (int from = 0; from < ids.size(); from += LEMMA_LOOKUP_CHUNK) {
+                lemmaRepository.decrementFrequency(ids.subList(from, Math.min(ids.size(), from + LEMMA_LOOKUP_CHUNK)),
+                        delta);
+            }
+        });
+    }
+
+    // Запоминает в словаре id строк lemma, которые ещё не известны
+    private void resolveLemmaIds(Long siteId, int generation, List<CrawledPage> indexed,
+            LemmaDictionary dictionary) {
+        Set<String> unresolved = new HashSet<>();
+        for (CrawledPage crawledPage : indexed) {
+            PagePostings postings = crawledPage.getPostings();
+            for (int i = 0; i < postings.size(); i++) {
+                if (dictionary.lemmaId(postings.lemmaId(i)) == 0) {
+                    unresolved.add(dictionary.lemma(postings.lemmaId(i)));
+                }
+            }
+        }
+        List<String> lemmas = new ArrayList<>(unresolved);
+        for (int from = 0; from < lemmas.size(); from += LEMMA_LOOKUP_CHUNK) {
+            List<String> chunk = lemmas.subList(from, Math.min(lemmas.size(), from + LEMMA_LOOKUP_CHUNK));
+            for (LemmaEntity lemma : lemmaRepository.findBySiteIdAndGenerationAndLemmaIn(siteId, generation, chunk)) {
+                dictionary.setLemmaId(dictionary.idOf(lemma.getLemma()), lemma.getId());
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package searchengine.services.crawler;
+
+/**
+ * Множество 64-битных отпечатков адресов на массивах long с открытой адресацией.
+ * Занимает около 10–16 байт на адрес против сотни с лишним у множества строк.
+ * Таблица разбита на сегменты со своей блокировкой, {@link #add(long)} атомарно
+ * проверяет и добавляет отпечаток.
+ */
+public class UrlFingerprintSet {
+
+    private static final int SEGMENT_BITS = 4;
+    // Отпечаток 0 обозначает пустую ячейку и заменяется этой константой
+    private static final long ZERO_SUBSTITUTE = 0x9E3779B97F4A7C15L;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    public UrlFingerprintSet() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    // Добавляет канонический адрес; false, если он уже встречался
+    public boolean add(String canonicalUrl) {
+        return add(UrlNormalizer.fingerprint(canonicalUrl));
+    }
+
+    // Добавляет отпечаток; false, если он уже встречался
+    public boolean add(long fingerprint) {
+        long key = fingerprint == 0 ? ZERO_SUBSTITUTE : fingerprint;
+        return segments[(int) (key >>> (64 - SEGMENT_BITS))].add(key);
+    }
+
+    public boolean contains(String canonicalUrl) {
+        long fingerprint = UrlNormalizer.fingerprint(canonicalUrl);
+        long key = fingerprint == 0 ? ZERO_SUBSTITUTE : fingerprint;
+        return segments[(int) (key >>> (64 - SEGMENT_BITS))].contains(key);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private static final class Segment {
+        private long[] table = new long[64];
+        private int size;
+
+        synchronized boolean add(long key) {
+            if ((size + 1) * 4 > table.length * 3) {
+                resize();
+            }
+            if (!insert(table, key)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        synchronized boolean contains(long key) {
+            int mask = table.length - 1;
+            for (int i = (int) key & mask; table[i] != 0; i = (i + 1) & mask) {
+                if (table[i] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void resize() {
+            long[] resized = new long[table.length * 2];
+            for (long key : table) {
+                if (key != 0) {
+                    insert(resized, key);
+                }
+            }
+            table = resized;
+        }
+
+        private static boolean insert(long[] table, long key) {
+            int mask = table.length - 1;
+            int i = (int) key & mask;
+            while (table[i] != 0) {
+                if (table[i] == key) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = key;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package searchengine.services.crawler;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Приведение адресов к каноническому виду, чтобы одна и та же страница,
+ * найденная по разным ссылкам, загружалась один раз: схема и хост в нижнем
+ * регистре, без порта по умолчанию, фрагмента, идентификаторов сессий и
+ * параметров отслеживания, параметры запроса отсортированы, не-ASCII символы
+ * и экранирование приведены к единому виду {@code %XX}.
+ */
+public final class UrlNormalizer {
+
+    private static final Set<String> TRACKING_PARAMS = Set.of(
+            "gclid", "fbclid", "yclid", "ysclid", "msclkid", "igshid", "_openstat", "mc_cid", "mc_eid",
+            "_ga", "_gl", "jsessionid", "phpsessid");
+    private static final Pattern SESSION_PATH_PARAM = Pattern.compile(";jsessionid=[^/?#]*",
+            Pattern.CASE_INSENSITIVE);
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private UrlNormalizer() {
+    }
+
+    // Канонический адрес или null, если это не http(s)-адрес
+    public static String normalize(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        URI uri;
+        try {
+            uri = new URI(escapeIllegal(url.trim())).normalize();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        String scheme = uri.getScheme();
+        String host = uri.getHost();
+        if (scheme == null || host == null) {
+            return null;
+        }
+        scheme = scheme.toLowerCase(Locale.ROOT);
+        if (!scheme.equals("http") && !scheme.equals("https")) {
+            return null;
+        }
+
+        StringBuilder result = new StringBuilder(url.length());
+        result.append(scheme).append("://").append(host.toLowerCase(Locale.ROOT));
+        int port = uri.getPort();
+        if (port != -1 && port != (scheme.equals("http") ? 80 : 443)) {
+            result.append(':').append(port);
+        }
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        }
+        appendEncoded(result, SESSION_PATH_PARAM.matcher(path).replaceAll(""));
+        String query = canonicalQuery(uri.getRawQuery());
+        if (query != null) {
+            result.append('?');
+            appendEncoded(result, query);
+        }
+        return result.toString();
+    }
+
+    // 64-битный отпечаток канонического адреса (FNV-1a с финальным перемешиванием)
+    public static long fingerprint(String canonicalUrl) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < canonicalUrl.length(); i++) {
+            hash ^= canonicalUrl.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static String canonicalQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return null;
+        }
+        List<String> params = new ArrayList<>();
+        for (String param : rawQuery.split("&")) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            int eq = param.indexOf('=');
+            String name = (eq < 0 ? param : param.substring(0, eq)).toLowerCase(Locale.ROOT);
+            if (name.startsWith("utm_") || TRACKING_PARAMS.contains(name)) {
+                continue;
+            }
+            params.add(param);
+        }
+        if (params.isEmpty()) {
+            return null;
+        }
+        Collections.sort(params);
+        return String.join("&", params);
+    }
+
+    // Символы, недопустимые в URI, но встречающиеся в ссылках на страницах
+    private static String escapeIllegal(String url) {
+        StringBuilder result = null;
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            boolean illegal = c == ' ' || c == '"' || c == '<' || c == '>' || c == '\\' || c == '^'
+                    || c == '`' || c == '{' || c == '|' || c == '}';
+            if (illegal && result == null) {
+                result = new StringBuilder(url.length() + 8).append(url, 0, i);
+            }
+            if (result != null) {
+                if (illegal) {
+                    result.append('%').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                } else {
+                    result.append(c);
+                }
+            }
+        }
+        return result == null ? url : result.toString();
+    }
+
+    // Кодирует не-ASCII символы в UTF-8 %XX и переводит существующие %xx в верхний регистр
+    private static void appendEncoded(StringBuilder result, String raw) {
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '%' && i + 2 < raw.length() && isHex(raw.charAt(i + 1)) && isHex(raw.charAt(i + 2))) {
+                result.append('%')
+                        .append(Character.toUpperCase(raw.charAt(i + 1)))
+                        .append(Character.toUpperCase(raw.charAt(i + 2)));
+                i += 2;
+            } else if (c < 0x80) {
+                result.append(c);
+            } else {
+                int end = Character.isHighSurrogate(c) && i + 1 < raw.length() ? i + 2 : i + 1;
+                for (byte b : raw.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                    result.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+                }
+                i = end - 1;
+            }
+        }
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+}
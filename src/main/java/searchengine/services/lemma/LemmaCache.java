@@ -0,0 +1,125 @@
+package searchengine.services.lemma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Ограниченный по размеру потокобезопасный кеш «словоформа → лемма» для
+ * {@link LemmaService}. Кеш разделён на сегменты с собственной блокировкой и
+ * LRU-вытеснением, поэтому потоки индексации и поиска почти не мешают друг
+ * другу. Для каждой словоформы хранится и результат проверки на служебную
+ * часть речи, так что повторное слово не обращается к словарю морфологии.
+ */
+public class LemmaCache {
+
+    private static final int SEGMENTS = 64;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public LemmaCache(int maxSize) {
+        int segmentCapacity = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity, evictions);
+        }
+    }
+
+    /**
+     * Возвращает сведения о словоформе, при промахе вычисляя их через {@code loader}.
+     * Загрузка выполняется вне блокировки сегмента: одно слово изредка может
+     * быть вычислено дважды, зато медленный словарь не задерживает другие потоки.
+     */
+    public WordInfo get(String word, Function<String, WordInfo> loader) {
+        Segment segment = segmentFor(word);
+        WordInfo info;
+        synchronized (segment) {
+            info = segment.get(word);
+        }
+        if (info != null) {
+            hits.increment();
+            return info;
+        }
+        misses.increment();
+        info = loader.apply(word);
+        synchronized (segment) {
+            segment.put(word, info);
+        }
+        return info;
+    }
+
+    public Stats stats() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    private Segment segmentFor(String word) {
+        int hash = word.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    // Словоформа и её лемма; lemma == null, если слово не распознано
+    @Getter
+    @RequiredArgsConstructor
+    public static class WordInfo {
+        static final WordInfo UNKNOWN = new WordInfo(null, false);
+
+        private final String lemma;
+        private final boolean servicePartOfSpeech;
+
+        public boolean isIndexable() {
+            return lemma != null && !servicePartOfSpeech;
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long size;
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("попаданий %d, промахов %d (%.1f%% попаданий), вытеснено %d, размер %d",
+                    hits, misses, getHitRate() * 100, evictions, size);
+        }
+    }
+
+    private static class Segment extends LinkedHashMap<String, WordInfo> {
+        private final int capacity;
+        private final LongAdder evictions;
+
+        Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, WordInfo> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
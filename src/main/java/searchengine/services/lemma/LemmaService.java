@@ -1,66 +1,235 @@
 package searchengine.services.lemma;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
 
 import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
 import org.springframework.stereotype.Service;
 
 import lombok.extern.slf4j.Slf4j;
+import searchengine.config.SearchEngineProperties;
 
 @Service
 @Slf4j
 public class LemmaService {
-        private final LuceneMorphology morphology;
+    // Элементы, текст которых не относится к содержимому страницы
+    private static final Set<String> SKIPPED_TAGS = Set.of(
+            "script", "style", "noscript", "template", "nav", "svg", "iframe", "object");
+
+    // Служебные части речи: теги морфологии после кода словоформы ("и|l СОЮЗ", "and|k CONJ")
+    private static final Set<String> RUSSIAN_SERVICE_TAGS = Set.of("СОЮЗ", "ПРЕДЛ", "МЕЖД", "ЧАСТ");
+    private static final Set<String> ENGLISH_SERVICE_TAGS = Set.of("CONJ", "PREP", "ARTICLE", "INT", "PART");
+
+    // Словари загружаются один раз (десятки мегабайт в куче) и используются всеми
+    // потоками: поиск в них только читает неизменяемые после загрузки таблицы
+    private final LuceneMorphology russian;
+    private final LuceneMorphology english;
+    // Общий для индексации и поиска кеш разбора словоформ
+    private final LemmaCache cache;
+    // Пул пакетной лемматизации
+    private final ExecutorService lemmaPool;
+
+    public LemmaService(SearchEngineProperties props) throws IOException {
+        this.russian = new RussianLuceneMorphology();
+        this.english = new EnglishLuceneMorphology();
+        this.cache = new LemmaCache(props.getLemma().getCacheSize());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.lemmaPool = Executors.newFixedThreadPool(Math.max(1, props.getLemma().getThreads()), r -> {
+            Thread thread = new Thread(r, "lemma-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
-    public LemmaService() throws IOException {
-        this.morphology = new RussianLuceneMorphology();
+    @PreDestroy
+    public void shutdown() {
+        lemmaPool.shutdownNow();
     }
 
-    // Очистка HTML и извлечение текста
-    public String extractText(String html) {
-        return html.replaceAll("<[^>]*>", " ")
-                .replaceAll("\\s+", " ")
-                .trim();
+    /**
+     * Извлекает видимый текст страницы за один обход уже разобранного документа:
+     * без повторной сериализации в HTML и регулярных выражений. Содержимое
+     * служебных и навигационных элементов пропускается целиком, пробельные
+     * символы схлопываются, блочные элементы разделяются пробелом.
+     */
+    public String extractText(Document doc) {
+        StringBuilder text = new StringBuilder();
+        NodeTraversor.filter(new NodeFilter() {
+            @Override
+            public FilterResult head(Node node, int depth) {
+                if (node instanceof TextNode textNode) {
+                    appendCollapsed(text, textNode.getWholeText());
+                } else if (node instanceof Element element) {
+                    if (SKIPPED_TAGS.contains(element.normalName())) {
+                        return FilterResult.SKIP_ENTIRELY;
+                    }
+                    if (element.isBlock() || element.normalName().equals("br")) {
+                        appendSpace(text);
+                    }
+                }
+                return FilterResult.CONTINUE;
+            }
+
+            @Override
+            public FilterResult tail(Node node, int depth) {
+                if (node instanceof Element element && element.isBlock()) {
+                    appendSpace(text);
+                }
+                return FilterResult.CONTINUE;
+            }
+        }, doc.body());
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == ' ') {
+            end--;
+        }
+        text.setLength(end);
+        return text.toString();
     }
 
     // Главный метод: текст → Map<лемма, частота на странице>
     public Map<String, Integer> getLemmas(String text) {
-        String cleanText = extractText(text).toLowerCase();
-        String[] words = cleanText.split("\\s+");
-
         Map<String, Integer> lemmaFreq = new HashMap<>();
+        Tokenizer tokenizer = new Tokenizer(text);
+        while (tokenizer.next()) {
+            // Учитываются только слова из русских или латинских букв
+            if (tokenizer.length() < 2 || tokenizer.script() == Tokenizer.Script.OTHER) {
+                continue;
+            }
+            addLemma(tokenizer.lowerCaseToken(), lemmaFreq);
+        }
+        return lemmaFreq;
+    }
+
+    /**
+     * Пакетная лемматизация: тексты разбираются параллельно в пуле лемматизации,
+     * результат i соответствует texts[i]. Вызывающий поток ждёт весь пакет.
+     */
+    public List<Map<String, Integer>> getLemmas(List<String> texts) {
+        List<Future<Map<String, Integer>>> futures = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            futures.add(lemmaPool.submit(() -> getLemmas(text)));
+        }
+        List<Map<String, Integer>> result = new ArrayList<>(texts.size());
+        try {
+            for (Future<Map<String, Integer>> future : futures) {
+                result.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Лемматизация прервана", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Ошибка лемматизации", e.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * Лемма отдельного слова или null, если слово не распознано или является
+     * служебной частью речи.
+     */
+    public String lemmaOf(String word) {
+        if (word.length() < 2 || Tokenizer.scriptOf(word) == Tokenizer.Script.OTHER) {
+            return null;
+        }
+        LemmaCache.WordInfo info = cache.get(word.toLowerCase(), this::analyze);
+        return info.isIndexable() ? info.getLemma() : null;
+    }
+
+    public LemmaCache.Stats cacheStats() {
+        return cache.stats();
+    }
 
-        for (String word : words) {
-            if (word.length() < 2 || !word.matches("[а-яёa-z]+")) continue;
+    private void addLemma(String word, Map<String, Integer> lemmaFreq) {
+        LemmaCache.WordInfo info = cache.get(word, this::analyze);
+        if (info.isIndexable()) {
+            lemmaFreq.merge(info.getLemma(), 1, Integer::sum);
+        }
+    }
 
-            try {
-                List<String> morphInfo = morphology.getMorphInfo(word);
-                if (morphInfo.isEmpty()) continue;
+    // Два обращения к словарю морфологии; результат кешируется.
+    // Словарь выбирается по алфавиту слова: кириллица — русский, латиница — английский
+    private LemmaCache.WordInfo analyze(String word) {
+        Tokenizer.Script script = Tokenizer.scriptOf(word);
+        try {
+            LuceneMorphology morphology = switch (script) {
+                case CYRILLIC -> russian;
+                case LATIN -> english;
+                default -> null;
+            };
+            if (morphology == null) return LemmaCache.WordInfo.UNKNOWN;
 
-                String info = morphInfo.get(0);
-                if (isServicePartOfSpeech(info)) continue;
+            List<String> morphInfo = morphology.getMorphInfo(word);
+            if (morphInfo.isEmpty()) return LemmaCache.WordInfo.UNKNOWN;
 
-                List<String> normalForms = morphology.getNormalForms(word);
-                if (normalForms.isEmpty()) continue;
+            String info = morphInfo.get(0);
+            if (isServicePartOfSpeech(info)) return new LemmaCache.WordInfo(null, true);
 
-                String lemma = normalForms.get(0);
-                lemmaFreq.merge(lemma, 1, Integer::sum);
+            List<String> normalForms = morphology.getNormalForms(word);
+            if (normalForms.isEmpty()) return LemmaCache.WordInfo.UNKNOWN;
 
-            } catch (Exception e) {
-                // слово не распознано — пропускаем
+            return new LemmaCache.WordInfo(normalForms.get(0), false);
+
+        } catch (Exception e) {
+            // слово не распознано — пропускаем
+            return LemmaCache.WordInfo.UNKNOWN;
+        }
+    }
+
+    private static void appendCollapsed(StringBuilder text, String fragment) {
+        for (int i = 0; i < fragment.length(); i++) {
+            char c = fragment.charAt(i);
+            if (Character.isWhitespace(c) || c == '\u00A0') {
+                appendSpace(text);
+            } else {
+                text.append(c);
             }
         }
-        return lemmaFreq;
     }
 
-    private boolean isServicePartOfSpeech(String morphInfo) {
-        return morphInfo.contains("СОЮЗ") ||
-                morphInfo.contains("ПРЕДЛ") ||
-                morphInfo.contains("МЕЖД") ||
-                morphInfo.contains("ЧАСТ");
+    private static void appendSpace(StringBuilder text) {
+        if (text.length() > 0 && text.charAt(text.length() - 1) != ' ') {
+            text.append(' ');
+        }
+    }
+
+    // Тег части речи сравнивается целиком: подстрока "INT" нашлась бы и в другом теге
+    static boolean isServicePartOfSpeech(String morphInfo) {
+        String tag = partOfSpeech(morphInfo);
+        return RUSSIAN_SERVICE_TAGS.contains(tag) || ENGLISH_SERVICE_TAGS.contains(tag);
+    }
+
+    // "слово|код ТЕГ признаки" -> "ТЕГ"
+    private static String partOfSpeech(String morphInfo) {
+        int start = morphInfo.indexOf('|') + 1;
+        int space = morphInfo.indexOf(' ', start);
+        if (space < 0) {
+            return "";
+        }
+        int end = morphInfo.indexOf(' ', space + 1);
+        return morphInfo.substring(space + 1, end < 0 ? morphInfo.length() : end);
     }
 }
@@ -0,0 +1,109 @@
+package searchengine.services.lemma;
+
+/**
+ * Разбивает текст на слова без регулярных выражений и промежуточных строк.
+ * Токен — непрерывная последовательность букв и цифр; курсор отдаёт его
+ * границы в исходном тексте и алфавит, определённый при том же проходе.
+ * Строка создаётся только по запросу {@link #lowerCaseToken()} — для слов,
+ * прошедших фильтры.
+ * <p>
+ * Не потокобезопасен: один экземпляр обходит один текст.
+ */
+public final class Tokenizer {
+
+    public enum Script {
+        // Только русские буквы
+        CYRILLIC,
+        // Только латинские буквы
+        LATIN,
+        // Цифры, смешение алфавитов или другие буквы
+        OTHER
+    }
+
+    private final CharSequence text;
+    private int position;
+    private int start;
+    private int end;
+    private Script script;
+
+    public Tokenizer(CharSequence text) {
+        this.text = text;
+    }
+
+    /**
+     * Переходит к следующему токену.
+     * @return false, если текст закончился
+     */
+    public boolean next() {
+        int length = text.length();
+        int i = position;
+        while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+            i++;
+        }
+        if (i >= length) {
+            position = length;
+            return false;
+        }
+        start = i;
+        boolean cyrillic = true;
+        boolean latin = true;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                break;
+            }
+            cyrillic &= isCyrillic(c);
+            latin &= isLatin(c);
+            i++;
+        }
+        end = i;
+        position = i;
+        script = cyrillic ? Script.CYRILLIC : latin ? Script.LATIN : Script.OTHER;
+        return true;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    public int length() {
+        return end - start;
+    }
+
+    public Script script() {
+        return script;
+    }
+
+    // Текущий токен в нижнем регистре
+    public String lowerCaseToken() {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = Character.toLowerCase(text.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    // Алфавит отдельного слова целиком
+    public static Script scriptOf(CharSequence word) {
+        boolean cyrillic = true;
+        boolean latin = true;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            cyrillic &= isCyrillic(c);
+            latin &= isLatin(c);
+        }
+        return word.length() == 0 ? Script.OTHER : cyrillic ? Script.CYRILLIC : latin ? Script.LATIN : Script.OTHER;
+    }
+
+    private static boolean isCyrillic(char c) {
+        return (c >= 'а' && c <= 'я') || (c >= 'А' && c <= 'Я') || c == 'ё' || c == 'Ё';
+    }
+
+    private static boolean isLatin(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -0,0 +1,177 @@
+package searchengine.services.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.SearchEngineProperties;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.BulkIndexRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.crawler.GenerationActivatedEvent;
+import searchengine.services.crawler.IndexUpdatedEvent;
+import searchengine.services.crawler.PageUpdate;
+
+/**
+ * Необязательный поисковый индекс в памяти (search-engine.search.in-memory):
+ * активные поколения сайтов в виде списков страниц по леммам. Загружается из БД
+ * при старте и после переключения поколения, а между загрузками обновляется
+ * событиями писателя индекса после фиксации их транзакций. Пока поколение сайта
+ * не загружено, поиск по нему идёт через БД.
+ */
+@Component
+@Slf4j
+public class InvertedIndex {
+
+    private final boolean enabled;
+    private final SiteRepository siteRepository;
+    private final BulkIndexRepository bulkIndexRepository;
+
+    private final Map<Long, SiteIndex> sites = new ConcurrentHashMap<>();
+    // Загрузки выполняются по одной, чтобы не занимать несколько соединений длинными курсорами
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "inverted-index-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public InvertedIndex(SearchEngineProperties props, SiteRepository siteRepository,
+            BulkIndexRepository bulkIndexRepository) {
+        this.enabled = props.getSearch().isInMemory();
+        this.siteRepository = siteRepository;
+        this.bulkIndexRepository = bulkIndexRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAll() {
+        if (!enabled) {
+            return;
+        }
+        for (SiteEntity site : siteRepository.findByActiveGenerationIsNotNull()) {
+            scheduleLoad(site.getId(), site.getActiveGeneration());
+        }
+    }
+
+    @TransactionalEventListener
+    public void onGenerationActivated(GenerationActivatedEvent event) {
+        if (enabled) {
+            scheduleLoad(event.siteId(), event.generation());
+        }
+    }
+
+    @TransactionalEventListener
+    public void onIndexUpdated(IndexUpdatedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        SiteIndex index = sites.get(event.siteId());
+        if (index != null && index.getGeneration() == event.generation()) {
+            index.update(event.pages());
+        }
+    }
+
+    // Поиск в памяти возможен, если у каждого сайта загружено его активное поколение
+    public boolean isReady(Collection<SiteEntity> searchSites) {
+        if (!enabled) {
+            return false;
+        }
+        for (SiteEntity site : searchSites) {
+            SiteIndex index = sites.get(site.getId());
+            if (index == null || !index.isReady() || site.getActiveGeneration() == null
+                    || index.getGeneration() != site.getActiveGeneration()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Страницы сайтов, подходящие под запрос, с суммарным rank собираются в hits.
+     * Леммы, встречающиеся более чем на maxFrequencyPercent процентах страниц
+     * выбранных сайтов, в запросе не учитываются.
+     */
+    public void search(Collection<SiteEntity> searchSites, Collection<String> lemmas, int maxFrequencyPercent,
+            TopHits hits) {
+        List<SiteIndex> indexes = searchSites.stream().map(site -> sites.get(site.getId())).toList();
+        long totalPages = indexes.stream().mapToLong(SiteIndex::liveDocs).sum();
+        int maxFrequency = (int) (totalPages * (maxFrequencyPercent / 100.0));
+        indexes.forEach(index -> index.search(lemmas, maxFrequency, hits));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    private void scheduleLoad(Long siteId, int generation) {
+        SiteIndex index = new SiteIndex(generation);
+        sites.put(siteId, index);
+        loader.submit(() -> {
+            try {
+                load(siteId, index);
+            } catch (Exception e) {
+                sites.remove(siteId, index);
+                log.error("Не удалось загрузить индекс сайта " + siteId + " в память", e);
+            }
+        });
+    }
+
+    private void load(Long siteId, SiteIndex index) {
+        long started = System.currentTimeMillis();
+        PageCollector collector = new PageCollector(index);
+        bulkIndexRepository.scanPostings(siteId, index.getGeneration(), collector::accept);
+        collector.flush();
+        index.finishLoading();
+        log.info("Индекс сайта {} (поколение {}) загружен в память: {} страниц за {} мс", siteId,
+                index.getGeneration(), index.liveDocs(), System.currentTimeMillis() - started);
+    }
+
+    // Собирает строки одной страницы, идущие подряд, в PageUpdate
+    private static class PageCollector {
+        private final SiteIndex index;
+        private long pageId = -1;
+        private String[] lemmas = new String[256];
+        private float[] ranks = new float[256];
+        private int size;
+
+        PageCollector(SiteIndex index) {
+            this.index = index;
+        }
+
+        void accept(long pageId, String lemma, float rank) {
+            if (pageId != this.pageId) {
+                flush();
+                this.pageId = pageId;
+            }
+            if (lemma == null) {
+                return;
+            }
+            if (size == lemmas.length) {
+                lemmas = Arrays.copyOf(lemmas, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            lemmas[size] = lemma;
+            ranks[size] = rank;
+            size++;
+        }
+
+        void flush() {
+            if (pageId >= 0) {
+                index.load(new PageUpdate(pageId, Arrays.copyOf(lemmas, size), Arrays.copyOf(ranks, size)));
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package searchengine.services.search;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Последовательное чтение страниц одной леммы сегмента. advance перескакивает
+ * целые блоки по таблице пропусков и распаковывает только блок с нужной страницей.
+ */
+final class PostingCursor {
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int skipOffset;
+    private final int blocks;
+
+    // Прочитано страниц; текущая — с номером read - 1
+    private int read;
+    private int position;
+    private long doc;
+    private float rank;
+
+    PostingCursor(ByteBuffer buffer, int count, int postingsOffset, int skipOffset, int blocks) {
+        this.buffer = buffer;
+        this.count = count;
+        this.position = postingsOffset;
+        this.skipOffset = skipOffset;
+        this.blocks = blocks;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long doc() {
+        return doc;
+    }
+
+    float rank() {
+        return rank;
+    }
+
+    boolean next() {
+        if (read == count) {
+            return false;
+        }
+        doc += readVarLong();
+        rank = Segment.dequantize(readVarLong());
+        read++;
+        return true;
+    }
+
+    /**
+     * Переходит к первой странице с id не меньше target, не возвращаясь назад.
+     * Возвращает false, если такой страницы нет.
+     */
+    boolean advance(long target) {
+        if (read > 0 && doc >= target) {
+            return true;
+        }
+        int block = read == 0 ? 0 : (read - 1) / Segment.BLOCK_SIZE;
+        if (lastDoc(block) < target) {
+            // Экспоненциальный шаг по таблице пропусков, затем двоичный поиск
+            int low = block;
+            int step = 1;
+            while (low + step < blocks && lastDoc(low + step) < target) {
+                low += step;
+                step <<= 1;
+            }
+            int high = Math.min(blocks, low + step);
+            low++;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (lastDoc(mid) < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            if (low == blocks) {
+                read = count;
+                return false;
+            }
+            read = low * Segment.BLOCK_SIZE;
+            position = buffer.getInt(skipOffset + low * Segment.SKIP_ENTRY_SIZE + Long.BYTES);
+            doc = lastDoc(low - 1);
+        }
+        while (next()) {
+            if (doc >= target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long lastDoc(int block) {
+        return buffer.getLong(skipOffset + block * Segment.SKIP_ENTRY_SIZE);
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
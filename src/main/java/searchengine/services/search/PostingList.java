@@ -0,0 +1,93 @@
+package searchengine.services.search;
+
+import java.util.Arrays;
+
+/**
+ * Страницы одной леммы сайта: номера документов по возрастанию и rank рядом, в
+ * примитивных массивах. Документы только дописываются в конец, поэтому порядок
+ * сохраняется без сортировки; удалённые документы отсеиваются по отметкам
+ * {@link SiteIndex} и убираются при уплотнении.
+ */
+final class PostingList {
+
+    private int[] docs = new int[4];
+    private float[] ranks = new float[4];
+    private int size;
+    // Неудалённые документы списка — frequency леммы
+    private int live;
+
+    void add(int doc, float rank) {
+        if (size == docs.length) {
+            docs = Arrays.copyOf(docs, size * 2);
+            ranks = Arrays.copyOf(ranks, size * 2);
+        }
+        docs[size] = doc;
+        ranks[size] = rank;
+        size++;
+        live++;
+    }
+
+    void onDocDeleted() {
+        live--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int live() {
+        return live;
+    }
+
+    int doc(int index) {
+        return docs[index];
+    }
+
+    float rank(int index) {
+        return ranks[index];
+    }
+
+    /**
+     * Первая позиция не раньше from, где номер документа не меньше target:
+     * экспоненциальный шаг вперёд, затем двоичный поиск в найденном отрезке.
+     * Возвращает size, если такой позиции нет.
+     */
+    int gallop(int from, int target) {
+        if (from >= size || docs[from] >= target) {
+            return from;
+        }
+        // docs[low] < target
+        int low = from;
+        int step = 1;
+        while (low + step < size && docs[low + step] < target) {
+            low += step;
+            step <<= 1;
+        }
+        int high = Math.min(size, low + step);
+        low++;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (docs[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // remap — новые номера документов, -1 для удалённых; порядок номеров не меняется
+    void compact(int[] remap) {
+        int written = 0;
+        for (int i = 0; i < size; i++) {
+            int doc = remap[docs[i]];
+            if (doc >= 0) {
+                docs[written] = doc;
+                ranks[written] = ranks[i];
+                written++;
+            }
+        }
+        size = written;
+        live = written;
+    }
+}
@@ -0,0 +1,5 @@
+package searchengine.services.search;
+
+// Найденная страница и её суммарный rank по леммам запроса, до нормализации
+public record SearchHit(long pageId, float relevance) {
+}
@@ -0,0 +1,166 @@
+package searchengine.services.search;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import lombok.Getter;
+
+/**
+ * Файл сегмента индекса, отображённый в память только для чтения. Все чтения
+ * абсолютные, поэтому один буфер безопасно читают несколько потоков; данные
+ * в куче не копируются, их кеширует страничный кеш ОС.
+ * <p>
+ * Формат (big-endian):
+ * <pre>
+ * заголовок:  magic, version, termCount, coveredCount (int), postingCount (long),
+ *             termIndexOffset, coveredOffset (int)
+ * для каждой леммы:
+ *   блоки по BLOCK_SIZE страниц: varint(pageId - предыдущий pageId), varint(quantize(rank));
+ *   таблица пропусков: для каждого блока последний pageId (long) и смещение блока (int)
+ * словарь:    для каждой леммы длина (short) и UTF-8 байты леммы, count, postingsOffset,
+ *             skipOffset, blocks (int)
+ * индекс лемм: смещения записей словаря (int), отсортированные по байтам леммы
+ * covered:    отсортированные id страниц (long), чьё содержимое в старших сегментах заменено
+ * </pre>
+ */
+final class Segment {
+
+    static final int MAGIC = 0x53454731; // "SEG1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int BLOCK_SIZE = 128;
+    static final int SKIP_ENTRY_SIZE = 12;
+    // rank хранится целым числом четвертей: rank в индексе — число вхождений леммы
+    private static final float RANK_SCALE = 4f;
+
+    @Getter
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int termCount;
+    private final int coveredCount;
+    @Getter
+    private final long postingCount;
+    private final int termIndexOffset;
+    private final int coveredOffset;
+
+    private Segment(Path file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Файл не является сегментом индекса: " + file);
+        }
+        this.termCount = buffer.getInt(8);
+        this.coveredCount = buffer.getInt(12);
+        this.postingCount = buffer.getLong(16);
+        this.termIndexOffset = buffer.getInt(24);
+        this.coveredOffset = buffer.getInt(28);
+    }
+
+    static Segment open(Path file) throws IOException {
+        // Отображение остаётся действительным и после закрытия канала
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Сегмент превышает 2 ГБ: " + file);
+            }
+            return new Segment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    static long quantize(float rank) {
+        return Math.max(0, Math.round(rank * RANK_SCALE));
+    }
+
+    static float dequantize(long value) {
+        return value / RANK_SCALE;
+    }
+
+    int termCount() {
+        return termCount;
+    }
+
+    // Смещение записи словаря i-й по порядку леммы
+    int termEntry(int index) {
+        return buffer.getInt(termIndexOffset + index * Integer.BYTES);
+    }
+
+    // Запись словаря леммы или -1, если её в сегменте нет
+    int findTerm(byte[] lemma) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = termEntry(mid);
+            int cmp = compareLemma(entry, lemma);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    // Сравнение леммы записи с lemma по байтам без знака, как при сортировке словаря
+    int compareLemma(int entry, byte[] lemma) {
+        int length = Short.toUnsignedInt(buffer.getShort(entry));
+        int common = Math.min(length, lemma.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Byte.compareUnsigned(buffer.get(entry + 2 + i), lemma[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, lemma.length);
+    }
+
+    byte[] lemma(int entry) {
+        byte[] lemma = new byte[Short.toUnsignedInt(buffer.getShort(entry))];
+        buffer.get(entry + 2, lemma);
+        return lemma;
+    }
+
+    // Число страниц леммы
+    int count(int entry) {
+        return buffer.getInt(fieldsOffset(entry));
+    }
+
+    PostingCursor cursor(int entry) {
+        int fields = fieldsOffset(entry);
+        return new PostingCursor(buffer, buffer.getInt(fields), buffer.getInt(fields + 4),
+                buffer.getInt(fields + 8), buffer.getInt(fields + 12));
+    }
+
+    boolean covers(long pageId) {
+        int low = 0;
+        int high = coveredCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = buffer.getLong(coveredOffset + mid * Long.BYTES);
+            if (value < pageId) {
+                low = mid + 1;
+            } else if (value > pageId) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    long[] covered() {
+        long[] pageIds = new long[coveredCount];
+        for (int i = 0; i < coveredCount; i++) {
+            pageIds[i] = buffer.getLong(coveredOffset + i * Long.BYTES);
+        }
+        return pageIds;
+    }
+
+    private int fieldsOffset(int entry) {
+        return entry + 2 + Short.toUnsignedInt(buffer.getShort(entry));
+    }
+}
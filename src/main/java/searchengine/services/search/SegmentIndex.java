@@ -0,0 +1,345 @@
+package searchengine.services.search;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.SearchEngineProperties;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.BulkIndexRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.crawler.GenerationActivatedEvent;
+import searchengine.services.crawler.IndexUpdatedEvent;
+import searchengine.services.crawler.PageUpdate;
+
+/**
+ * Индекс активных поколений в файлах сегментов рядом с БД
+ * (search-engine.search.segment-dir). Базовый сегмент пишется из БД после
+ * переключения поколения, изменения страниц дописываются небольшими
+ * сегментами, которые в фоне сливаются, когда их становится больше
+ * max-segments. Поиск читает сегменты через отображение в память.
+ * <p>
+ * Состав сегментов сайта фиксирует файл manifest. При штатной остановке рядом
+ * кладётся отметка clean; без неё сегменты при запуске перестраиваются из БД,
+ * так как изменения могли не успеть попасть в файлы. Сайт, изменения которого
+ * были отклонены остановленным потоком записи, отметку не получает.
+ */
+@Component
+@Slf4j
+public class SegmentIndex {
+
+    private static final String MANIFEST = "manifest";
+    private static final String CLEAN = "clean";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path root;
+    private final int maxSegments;
+    private final SiteRepository siteRepository;
+    private final BulkIndexRepository bulkIndexRepository;
+
+    // Меняется только потоком записи сегментов
+    private final Map<Long, SegmentSet> sites = new ConcurrentHashMap<>();
+    // Сайты, изменения которых не попали в сегменты; снимается перестроением из БД
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+    // Все изменения файлов выполняются по очереди одним потоком
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "segment-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SegmentIndex(SearchEngineProperties props, SiteRepository siteRepository,
+            BulkIndexRepository bulkIndexRepository) {
+        String segmentDir = props.getSearch().getSegmentDir();
+        this.root = segmentDir == null || segmentDir.isBlank() ? null : Paths.get(segmentDir);
+        this.maxSegments = Math.max(2, props.getSearch().getMaxSegments());
+        this.siteRepository = siteRepository;
+        this.bulkIndexRepository = bulkIndexRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void openAll() {
+        if (root == null) {
+            return;
+        }
+        for (SiteEntity site : siteRepository.findByActiveGenerationIsNotNull()) {
+            Long siteId = site.getId();
+            int generation = site.getActiveGeneration();
+            submit(siteId, () -> open(siteId, generation));
+        }
+    }
+
+    @TransactionalEventListener
+    public void onGenerationActivated(GenerationActivatedEvent event) {
+        if (root != null) {
+            submit(event.siteId(), () -> build(event.siteId(), event.generation()));
+        }
+    }
+
+    @TransactionalEventListener
+    public void onIndexUpdated(IndexUpdatedEvent event) {
+        if (root != null) {
+            submit(event.siteId(), () -> {
+                try {
+                    addDelta(event);
+                } catch (IOException | RuntimeException e) {
+                    log.error("Ошибка записи изменений в сегменты сайта " + event.siteId()
+                            + ", сегменты перестраиваются", e);
+                    sites.remove(event.siteId());
+                    build(event.siteId(), event.generation());
+                }
+            });
+        }
+    }
+
+    // Поиск по сегментам возможен, если у каждого сайта записано его активное поколение
+    public boolean isReady(Collection<SiteEntity> searchSites) {
+        if (root == null) {
+            return false;
+        }
+        for (SiteEntity site : searchSites) {
+            SegmentSet set = sites.get(site.getId());
+            if (set == null || site.getActiveGeneration() == null
+                    || set.getGeneration() != site.getActiveGeneration()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Страницы сайтов, подходящие под запрос, с суммарным rank собираются в hits
+    public void search(Collection<SiteEntity> searchSites, Collection<String> lemmas, int maxFrequency,
+            TopHits hits) {
+        List<byte[]> lemmaBytes = lemmas.stream().map(lemma -> lemma.getBytes(StandardCharsets.UTF_8)).toList();
+        for (SiteEntity site : searchSites) {
+            // Набор мог быть сброшен после ошибки записи, уже после проверки isReady
+            SegmentSet set = sites.get(site.getId());
+            if (set != null) {
+                set.search(lemmaBytes, maxFrequency, hits);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        writer.shutdown();
+        if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Запись сегментов не завершилась, при запуске они будут перестроены");
+            writer.shutdownNow();
+            return;
+        }
+        for (Long siteId : sites.keySet()) {
+            if (dirty.contains(siteId)) {
+                log.warn("Изменения сайта {} не записаны в сегменты, при запуске они будут перестроены", siteId);
+                continue;
+            }
+            try {
+                Files.createFile(siteDir(siteId).resolve(CLEAN));
+            } catch (IOException e) {
+                log.warn("Не удалось отметить сегменты сайта {} как сохранённые: {}", siteId, e.getMessage());
+            }
+        }
+    }
+
+    private void submit(Long siteId, IoTask task) {
+        try {
+            writer.submit(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    // До следующего переключения поколения поиск по сайту идёт без сегментов
+                    dirty.add(siteId);
+                    sites.remove(siteId);
+                    log.error("Ошибка записи сегментов сайта " + siteId, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Изменение зафиксировано в БД после начала остановки и в сегменты уже не попадёт
+            dirty.add(siteId);
+            log.warn("Изменения сайта {} не записаны в сегменты: запись остановлена", siteId);
+        }
+    }
+
+    // Сегменты, сохранённые при штатной остановке, открываются; иначе строятся заново
+    private void open(Long siteId, int generation) throws IOException {
+        Path dir = siteDir(siteId);
+        Path clean = dir.resolve(CLEAN);
+        Path manifest = dir.resolve(MANIFEST);
+        if (Files.exists(clean) && Files.exists(manifest)) {
+            // Отметка снимается до первой записи: после сбоя сегменты не будут считаться целыми
+            Files.delete(clean);
+            List<String> lines = Files.readAllLines(manifest);
+            if (!lines.isEmpty() && Integer.parseInt(lines.get(0)) == generation) {
+                List<Segment> segments = new ArrayList<>();
+                for (String name : lines.subList(1, lines.size())) {
+                    segments.add(Segment.open(dir.resolve(name)));
+                }
+                sites.put(siteId, new SegmentSet(generation, segments));
+                log.info("Открыты сегменты сайта {} (поколение {}): {}", siteId, generation, segments.size());
+                return;
+            }
+        }
+        build(siteId, generation);
+    }
+
+    private void build(Long siteId, int generation) throws IOException {
+        long started = System.currentTimeMillis();
+        // Базовый сегмент читается из БД и учтёт потерянные ранее изменения; отклонённые
+        // во время чтения снова отметят сайт
+        dirty.remove(siteId);
+        Files.createDirectories(siteDir(siteId));
+        Path file = newSegmentFile(siteId, generation);
+        try (SegmentWriter segmentWriter = new SegmentWriter(file)) {
+            String[] current = new String[1];
+            bulkIndexRepository.scanPostingsByLemma(siteId, generation, (pageId, lemma, rank) -> {
+                try {
+                    if (!lemma.equals(current[0])) {
+                        if (current[0] != null) {
+                            segmentWriter.endTerm();
+                        }
+                        segmentWriter.startTerm(lemma);
+                        current[0] = lemma;
+                    }
+                    segmentWriter.add(pageId, rank);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (current[0] != null) {
+                segmentWriter.endTerm();
+            }
+            segmentWriter.finish(new long[0]);
+        }
+        Segment base = Segment.open(file);
+        publish(siteId, new SegmentSet(generation, List.of(base)));
+        log.info("Записан базовый сегмент сайта {} (поколение {}): {} строк за {} мс", siteId, generation,
+                base.getPostingCount(), System.currentTimeMillis() - started);
+    }
+
+    private void addDelta(IndexUpdatedEvent event) throws IOException {
+        SegmentSet set = sites.get(event.siteId());
+        if (set == null || set.getGeneration() != event.generation()) {
+            // Обход строит ещё не активное поколение; оно попадёт в базовый сегмент
+            return;
+        }
+        Map<Long, PageUpdate> latest = new HashMap<>();
+        event.pages().forEach(page -> latest.put(page.pageId(), page));
+        Map<String, List<Posting>> postings = new HashMap<>();
+        for (PageUpdate page : latest.values()) {
+            if (page.isRemoval()) {
+                continue;
+            }
+            for (int i = 0; i < page.lemmas().length; i++) {
+                postings.computeIfAbsent(page.lemmas()[i], lemma -> new ArrayList<>())
+                        .add(new Posting(page.pageId(), page.ranks()[i]));
+            }
+        }
+
+        Path file = newSegmentFile(event.siteId(), set.getGeneration());
+        try (SegmentWriter segmentWriter = new SegmentWriter(file)) {
+            for (Map.Entry<String, List<Posting>> term : postings.entrySet()) {
+                term.getValue().sort(Comparator.comparingLong(Posting::pageId));
+                segmentWriter.startTerm(term.getKey());
+                for (Posting posting : term.getValue()) {
+                    segmentWriter.add(posting.pageId(), posting.rank());
+                }
+                segmentWriter.endTerm();
+            }
+            segmentWriter.finish(latest.keySet().stream().mapToLong(Long::longValue).toArray());
+        }
+        publish(event.siteId(), set.with(Segment.open(file)));
+        mergeIfNeeded(event.siteId());
+    }
+
+    /**
+     * Когда сегментов больше max-segments, сливаются все добавочные; если в них
+     * накопилось не меньше четверти строк базового, сливается весь набор.
+     */
+    private void mergeIfNeeded(Long siteId) throws IOException {
+        SegmentSet set = sites.get(siteId);
+        List<Segment> segments = set.getSegments();
+        if (segments.size() <= maxSegments) {
+            return;
+        }
+        long deltaPostings = segments.subList(1, segments.size()).stream().mapToLong(Segment::getPostingCount).sum();
+        int from = deltaPostings * 4 >= segments.get(0).getPostingCount() ? 0 : 1;
+        long started = System.currentTimeMillis();
+        Path file = newSegmentFile(siteId, set.getGeneration());
+        SegmentMerger.merge(set, from, segments.size(), file);
+        publish(siteId, set.replace(from, segments.size(), Segment.open(file)));
+        log.info("Слиты сегменты сайта {}: {} из {} за {} мс", siteId, segments.size() - from, segments.size(),
+                System.currentTimeMillis() - started);
+    }
+
+    // Новый состав записывается в manifest атомарной заменой файла; ненужные файлы удаляются
+    private void publish(Long siteId, SegmentSet set) throws IOException {
+        Path dir = siteDir(siteId);
+        List<String> lines = new ArrayList<>();
+        lines.add(String.valueOf(set.getGeneration()));
+        Set<Path> live = new HashSet<>();
+        for (Segment segment : set.getSegments()) {
+            lines.add(segment.getFile().getFileName().toString());
+            live.add(segment.getFile().getFileName());
+        }
+        Path temp = dir.resolve(MANIFEST + ".tmp");
+        Files.write(temp, lines);
+        Files.move(temp, dir.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        sites.put(siteId, set);
+
+        // Отображённые в память файлы продолжают читаться запросами, начатыми до замены
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                if (!live.contains(file.getFileName())) {
+                    try {
+                        Files.delete(file);
+                    } catch (IOException e) {
+                        log.debug("Сегмент {} будет удалён позже: {}", file, e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private Path newSegmentFile(Long siteId, int generation) {
+        return siteDir(siteId).resolve(generation + "-" + sequence.incrementAndGet() + SEGMENT_SUFFIX);
+    }
+
+    private Path siteDir(Long siteId) {
+        return root.resolve("site-" + siteId);
+    }
+
+    private interface IoTask {
+        void run() throws IOException;
+    }
+
+    private record Posting(long pageId, float rank) {
+    }
+}
@@ -0,0 +1,94 @@
+package searchengine.services.search;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+/**
+ * Слияние подряд идущих сегментов набора в один. Словари обходятся параллельно
+ * в порядке лемм, списки страниц каждой леммы сливаются по возрастанию id;
+ * строки, скрытые более новыми сегментами из сливаемых, отбрасываются. Данные
+ * читаются потоком из отображённых файлов, в куче держится только словарь
+ * результата.
+ */
+final class SegmentMerger {
+
+    private SegmentMerger() {
+    }
+
+    static void merge(SegmentSet set, int from, int to, Path target) throws IOException {
+        List<Segment> segments = set.getSegments().subList(from, to);
+        int count = segments.size();
+        int[] termPositions = new int[count];
+        PostingCursor[] cursors = new PostingCursor[count];
+        boolean[] started = new boolean[count];
+
+        try (SegmentWriter writer = new SegmentWriter(target)) {
+            while (true) {
+                // Наименьшая среди текущих лемм сегментов
+                byte[] lemma = null;
+                for (int i = 0; i < count; i++) {
+                    Segment segment = segments.get(i);
+                    if (termPositions[i] < segment.termCount()) {
+                        byte[] candidate = segment.lemma(segment.termEntry(termPositions[i]));
+                        if (lemma == null || Arrays.compareUnsigned(candidate, lemma) < 0) {
+                            lemma = candidate;
+                        }
+                    }
+                }
+                if (lemma == null) {
+                    break;
+                }
+                for (int i = 0; i < count; i++) {
+                    Segment segment = segments.get(i);
+                    cursors[i] = null;
+                    if (termPositions[i] < segment.termCount()) {
+                        int entry = segment.termEntry(termPositions[i]);
+                        if (segment.compareLemma(entry, lemma) == 0) {
+                            cursors[i] = segment.cursor(entry);
+                            started[i] = cursors[i].next();
+                            termPositions[i]++;
+                        }
+                    }
+                }
+                writer.startTerm(lemma);
+                mergePostings(set, from, to, cursors, started, writer);
+                writer.endTerm();
+            }
+            // Результат слияния с базовым сегментом ничего старше себя не скрывает
+            long[] covered = from == 0 ? new long[0] : segments.stream()
+                    .flatMapToLong(segment -> LongStream.of(segment.covered()))
+                    .distinct()
+                    .toArray();
+            writer.finish(covered);
+        }
+    }
+
+    private static void mergePostings(SegmentSet set, int from, int to, PostingCursor[] cursors, boolean[] started,
+            SegmentWriter writer) throws IOException {
+        while (true) {
+            int smallest = -1;
+            for (int i = 0; i < cursors.length; i++) {
+                if (cursors[i] != null && started[i]
+                        && (smallest < 0 || cursors[i].doc() < cursors[smallest].doc())) {
+                    smallest = i;
+                }
+            }
+            if (smallest < 0) {
+                return;
+            }
+            long doc = cursors[smallest].doc();
+            // Страница действительна не больше чем в одном сегменте
+            for (int i = 0; i < cursors.length; i++) {
+                if (cursors[i] != null && started[i] && cursors[i].doc() == doc) {
+                    if (!set.isShadowed(from + i, doc, to)) {
+                        writer.add(doc, cursors[i].rank());
+                    }
+                    started[i] = cursors[i].next();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package searchengine.services.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import lombok.Getter;
+
+/**
+ * Неизменяемый набор сегментов одного поколения сайта, от базового к новым.
+ * Каждая страница действительна ровно в одном сегменте: самом новом из тех,
+ * что её содержат или перечисляют в covered; в более старых её строки
+ * скрыты. Изменение набора — создание нового экземпляра.
+ */
+final class SegmentSet {
+
+    @Getter
+    private final int generation;
+    @Getter
+    private final List<Segment> segments;
+    // Для каждого сегмента — отсортированные id страниц, скрытых в нём более новыми сегментами
+    private final long[][] shadowedPages;
+
+    SegmentSet(int generation, List<Segment> segments) {
+        this.generation = generation;
+        this.segments = List.copyOf(segments);
+        this.shadowedPages = new long[segments.size()][];
+        long[] newer = new long[0];
+        for (int index = segments.size() - 1; index >= 0; index--) {
+            shadowedPages[index] = newer;
+            newer = LongStream.concat(LongStream.of(newer), LongStream.of(segments.get(index).covered()))
+                    .sorted().distinct().toArray();
+        }
+    }
+
+    SegmentSet with(Segment segment) {
+        List<Segment> next = new ArrayList<>(segments);
+        next.add(segment);
+        return new SegmentSet(generation, next);
+    }
+
+    // Сегменты from..to-1 заменены результатом их слияния
+    SegmentSet replace(int from, int to, Segment merged) {
+        List<Segment> next = new ArrayList<>(segments.subList(0, from));
+        next.add(merged);
+        next.addAll(segments.subList(to, segments.size()));
+        return new SegmentSet(generation, next);
+    }
+
+    // Строка страницы из сегмента index скрыта более новым сегментом набора
+    boolean isShadowed(int index, long pageId, int to) {
+        for (int newer = index + 1; newer < to; newer++) {
+            if (segments.get(newer).covers(pageId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Число действительных страниц леммы: строки сегментов, скрытые более новыми
+     * сегментами, не учитываются, поэтому частота совпадает с lemma.frequency в БД.
+     */
+    long frequency(byte[] lemma) {
+        long frequency = 0;
+        for (int index = 0; index < segments.size(); index++) {
+            Segment segment = segments.get(index);
+            int entry = segment.findTerm(lemma);
+            if (entry < 0) {
+                continue;
+            }
+            frequency += segment.count(entry);
+            // Скрытые страницы сегмента ищутся в списке леммы с пропуском блоков
+            PostingCursor cursor = segment.cursor(entry);
+            for (long pageId : shadowedPages[index]) {
+                if (!cursor.advance(pageId)) {
+                    break;
+                }
+                if (cursor.doc() == pageId) {
+                    frequency--;
+                }
+            }
+        }
+        return frequency;
+    }
+
+    /**
+     * Страницы, содержащие все леммы запроса, кроме отсутствующих на сайте и тех,
+     * что встречаются чаще maxFrequency раз.
+     * Все леммы действительной страницы лежат в одном сегменте, поэтому списки
+     * пересекаются внутри каждого сегмента отдельно, от самого короткого.
+     */
+    void search(List<byte[]> lemmas, int maxFrequency, TopHits hits) {
+        List<byte[]> terms = new ArrayList<>();
+        for (byte[] lemma : lemmas) {
+            long frequency = frequency(lemma);
+            if (frequency > 0 && frequency <= maxFrequency) {
+                terms.add(lemma);
+            }
+        }
+        if (terms.isEmpty()) {
+            return;
+        }
+        for (int index = 0; index < segments.size(); index++) {
+            searchSegment(index, terms, hits);
+        }
+    }
+
+    private void searchSegment(int index, List<byte[]> terms, TopHits hits) {
+        Segment segment = segments.get(index);
+        List<PostingCursor> cursors = new ArrayList<>(terms.size());
+        for (byte[] lemma : terms) {
+            int entry = segment.findTerm(lemma);
+            if (entry < 0) {
+                return;
+            }
+            cursors.add(segment.cursor(entry));
+        }
+        cursors.sort(Comparator.comparingInt(PostingCursor::count));
+
+        // Кандидат из самого короткого списка проверяется по остальным; при промахе
+        // короткий список догоняет найденную страницу, пропуская целые блоки
+        PostingCursor first = cursors.get(0);
+        if (!first.next()) {
+            return;
+        }
+        while (true) {
+            long doc = first.doc();
+            float score = first.rank();
+            long ahead = doc;
+            for (int i = 1; i < cursors.size() && ahead == doc; i++) {
+                PostingCursor cursor = cursors.get(i);
+                if (!cursor.advance(doc)) {
+                    return;
+                }
+                ahead = cursor.doc();
+                score += cursor.rank();
+            }
+            if (ahead == doc) {
+                if (!isShadowed(index, doc, segments.size())) {
+                    hits.offer(doc, score);
+                }
+                if (!first.next()) {
+                    return;
+                }
+            } else if (!first.advance(ahead)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package searchengine.services.search;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Пишет файл сегмента (формат описан в {@link Segment}). Леммы подаются в любом
+ * порядке, страницы одной леммы — по возрастанию id; словарь сортируется и
+ * записывается в конце. Файл считается готовым только после finish.
+ */
+final class SegmentWriter implements Closeable {
+
+    private final Path file;
+    private final DataOutputStream out;
+
+    private final List<TermEntry> terms = new ArrayList<>();
+    private long postingCount;
+
+    // Текущая лемма
+    private byte[] lemma;
+    private int termStart;
+    private int termCount;
+    private long lastDoc;
+    private long[] skipDocs = new long[16];
+    private int[] skipOffsets = new int[16];
+    private int blocks;
+
+    SegmentWriter(Path file) throws IOException {
+        this.file = file;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 1 << 16));
+        out.write(new byte[Segment.HEADER_SIZE]);
+    }
+
+    void startTerm(byte[] lemma) {
+        this.lemma = lemma;
+        this.termStart = position();
+        this.termCount = 0;
+        this.lastDoc = 0;
+        this.blocks = 0;
+    }
+
+    void startTerm(String lemma) {
+        startTerm(lemma.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void add(long pageId, float rank) throws IOException {
+        if (termCount > 0 && pageId <= lastDoc) {
+            throw new IllegalStateException("Страницы леммы должны идти по возрастанию id");
+        }
+        if (termCount % Segment.BLOCK_SIZE == 0) {
+            if (blocks == skipDocs.length) {
+                skipDocs = Arrays.copyOf(skipDocs, blocks * 2);
+                skipOffsets = Arrays.copyOf(skipOffsets, blocks * 2);
+            }
+            skipOffsets[blocks++] = position();
+        }
+        writeVarLong(pageId - lastDoc);
+        writeVarLong(Segment.quantize(rank));
+        skipDocs[blocks - 1] = pageId;
+        lastDoc = pageId;
+        termCount++;
+    }
+
+    void endTerm() throws IOException {
+        if (termCount == 0) {
+            return;
+        }
+        int skipOffset = position();
+        for (int i = 0; i < blocks; i++) {
+            out.writeLong(skipDocs[i]);
+            out.writeInt(skipOffsets[i]);
+        }
+        terms.add(new TermEntry(lemma, termCount, termStart, skipOffset, blocks));
+        postingCount += termCount;
+    }
+
+    // pageIds — страницы, чьё прежнее содержимое в старших сегментах этот сегмент заменяет
+    void finish(long[] covered) throws IOException {
+        terms.sort((a, b) -> Arrays.compareUnsigned(a.lemma, b.lemma));
+        int[] entryOffsets = new int[terms.size()];
+        for (int i = 0; i < terms.size(); i++) {
+            TermEntry term = terms.get(i);
+            entryOffsets[i] = position();
+            out.writeShort(term.lemma.length);
+            out.write(term.lemma);
+            out.writeInt(term.count);
+            out.writeInt(term.postingsOffset);
+            out.writeInt(term.skipOffset);
+            out.writeInt(term.blocks);
+        }
+        int termIndexOffset = position();
+        for (int offset : entryOffsets) {
+            out.writeInt(offset);
+        }
+        int coveredOffset = position();
+        long[] sorted = covered.clone();
+        Arrays.sort(sorted);
+        for (long pageId : sorted) {
+            out.writeLong(pageId);
+        }
+        position();
+        out.close();
+
+        ByteBuffer header = ByteBuffer.allocate(Segment.HEADER_SIZE);
+        header.putInt(Segment.MAGIC).putInt(Segment.VERSION).putInt(terms.size()).putInt(sorted.length)
+                .putLong(postingCount).putInt(termIndexOffset).putInt(coveredOffset).flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(header, 0);
+            channel.force(true);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    // Смещения в файле хранятся в int: сегмент отображается в память одним буфером
+    private int position() {
+        if (out.size() == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Сегмент превышает 2 ГБ: " + file);
+        }
+        return out.size();
+    }
+
+    private record TermEntry(byte[] lemma, int count, int postingsOffset, int skipOffset, int blocks) {
+    }
+}
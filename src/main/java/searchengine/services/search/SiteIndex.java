@@ -0,0 +1,216 @@
+package searchengine.services.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import lombok.Getter;
+import searchengine.services.crawler.PageUpdate;
+
+/**
+ * Инвертированный индекс одного поколения сайта в памяти. Каждая страница —
+ * документ с номером, выдаваемым по возрастанию; изменённая страница получает
+ * новый номер, а прежний помечается удалённым. Когда удалённых становится
+ * больше половины, номера уплотняются.
+ * <p>
+ * Пока индекс загружается из БД, поступающие изменения копятся и применяются
+ * после загрузки; изменения идемпотентны, поэтому повтор уже загруженных не вредит.
+ */
+final class SiteIndex {
+
+    private static final int MIN_DOCS_TO_COMPACT = 1024;
+
+    @Getter
+    private final int generation;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<PostingList> postings = new ArrayList<>();
+    private long[] pageIds = new long[1024];
+    private int[][] docTerms = new int[1024][];
+    private int docCount;
+    private final BitSet deleted = new BitSet();
+    private final Map<Long, Integer> docByPage = new HashMap<>();
+    private int liveDocs;
+
+    private final List<PageUpdate> pending = new ArrayList<>();
+    private volatile boolean ready;
+
+    SiteIndex(int generation) {
+        this.generation = generation;
+    }
+
+    boolean isReady() {
+        return ready;
+    }
+
+    // Только для потока загрузки, до finishLoading
+    void load(PageUpdate page) {
+        apply(page);
+    }
+
+    void finishLoading() {
+        lock.writeLock().lock();
+        try {
+            pending.forEach(this::apply);
+            pending.clear();
+            compactIfNeeded();
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void update(Collection<PageUpdate> pages) {
+        lock.writeLock().lock();
+        try {
+            if (!ready) {
+                pending.addAll(pages);
+                return;
+            }
+            pages.forEach(this::apply);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int liveDocs() {
+        lock.readLock().lock();
+        try {
+            return liveDocs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Страницы, содержащие все леммы запроса, кроме отсутствующих на сайте и
+     * встречающихся чаще maxFrequency; relevance — сумма rank этих лемм.
+     * Списки пересекаются от самого короткого к длинным галопирующим поиском.
+     */
+    void search(Collection<String> lemmas, int maxFrequency, TopHits hits) {
+        lock.readLock().lock();
+        try {
+            List<PostingList> lists = new ArrayList<>();
+            for (String lemma : lemmas) {
+                Integer term = termIds.get(lemma);
+                if (term == null) {
+                    continue;
+                }
+                PostingList list = postings.get(term);
+                if (list.live() > 0 && list.live() <= maxFrequency) {
+                    lists.add(list);
+                }
+            }
+            if (lists.isEmpty()) {
+                return;
+            }
+            lists.sort(Comparator.comparingInt(PostingList::live));
+
+            PostingList first = lists.get(0);
+            int[] candidates = new int[first.live()];
+            float[] scores = new float[first.live()];
+            int count = 0;
+            for (int i = 0; i < first.size(); i++) {
+                int doc = first.doc(i);
+                if (!deleted.get(doc)) {
+                    candidates[count] = doc;
+                    scores[count] = first.rank(i);
+                    count++;
+                }
+            }
+            for (int l = 1; l < lists.size() && count > 0; l++) {
+                PostingList list = lists.get(l);
+                int position = 0;
+                int matched = 0;
+                for (int k = 0; k < count; k++) {
+                    position = list.gallop(position, candidates[k]);
+                    if (position == list.size()) {
+                        break;
+                    }
+                    if (list.doc(position) == candidates[k]) {
+                        candidates[matched] = candidates[k];
+                        scores[matched] = scores[k] + list.rank(position);
+                        matched++;
+                    }
+                }
+                count = matched;
+            }
+            for (int k = 0; k < count; k++) {
+                hits.offer(pageIds[candidates[k]], scores[k]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void apply(PageUpdate page) {
+        remove(page.pageId());
+        if (page.isRemoval()) {
+            return;
+        }
+        if (docCount == pageIds.length) {
+            pageIds = Arrays.copyOf(pageIds, docCount * 2);
+            docTerms = Arrays.copyOf(docTerms, docCount * 2);
+        }
+        int doc = docCount++;
+        String[] lemmas = page.lemmas();
+        int[] terms = new int[lemmas.length];
+        for (int i = 0; i < lemmas.length; i++) {
+            int term = termIds.computeIfAbsent(lemmas[i], lemma -> {
+                postings.add(new PostingList());
+                return postings.size() - 1;
+            });
+            postings.get(term).add(doc, page.ranks()[i]);
+            terms[i] = term;
+        }
+        pageIds[doc] = page.pageId();
+        docTerms[doc] = terms;
+        docByPage.put(page.pageId(), doc);
+        liveDocs++;
+    }
+
+    private void remove(long pageId) {
+        Integer doc = docByPage.remove(pageId);
+        if (doc == null) {
+            return;
+        }
+        deleted.set(doc);
+        for (int term : docTerms[doc]) {
+            postings.get(term).onDocDeleted();
+        }
+        docTerms[doc] = null;
+        liveDocs--;
+    }
+
+    private void compactIfNeeded() {
+        int deletedDocs = docCount - liveDocs;
+        if (docCount < MIN_DOCS_TO_COMPACT || deletedDocs * 2 < docCount) {
+            return;
+        }
+        int[] remap = new int[docCount];
+        int next = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (deleted.get(doc)) {
+                remap[doc] = -1;
+                continue;
+            }
+            remap[doc] = next;
+            pageIds[next] = pageIds[doc];
+            docTerms[next] = docTerms[doc];
+            docByPage.put(pageIds[next], next);
+            next++;
+        }
+        Arrays.fill(docTerms, next, docCount, null);
+        postings.forEach(list -> list.compact(remap));
+        docCount = next;
+        deleted.clear();
+    }
+}
@@ -0,0 +1,111 @@
+package searchengine.services.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Лучшие найденные страницы: двоичная куча из не более чем capacity элементов
+ * (offset + limit запроса) в примитивных массивах, в вершине — худшая из
+ * сохранённых. Остальные страницы только учитываются в общем числе и в
+ * наибольшей релевантности, нужной для нормализации.
+ */
+public final class TopHits {
+
+    private final int capacity;
+    private long[] pageIds = new long[16];
+    private float[] relevances = new float[16];
+    private int size;
+    private long total;
+    private float maxRelevance;
+
+    public TopHits(int offset, int limit) {
+        this.capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(0L, (long) offset + limit));
+    }
+
+    public void offer(long pageId, float relevance) {
+        total++;
+        maxRelevance = Math.max(maxRelevance, relevance);
+        if (size < capacity) {
+            if (size == pageIds.length) {
+                int grown = (int) Math.min(capacity, size * 2L);
+                pageIds = Arrays.copyOf(pageIds, grown);
+                relevances = Arrays.copyOf(relevances, grown);
+            }
+            pageIds[size] = pageId;
+            relevances[size] = relevance;
+            siftUp(size++);
+        } else if (capacity > 0 && worse(pageIds[0], relevances[0], pageId, relevance)) {
+            pageIds[0] = pageId;
+            relevances[0] = relevance;
+            siftDown(0);
+        }
+    }
+
+    // Сколько страниц найдено всего
+    public long total() {
+        return total;
+    }
+
+    public float maxRelevance() {
+        return maxRelevance;
+    }
+
+    // Сохранённые страницы начиная с offset, от более релевантных к менее
+    public List<SearchHit> window(int offset) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> worse(pageIds[a], relevances[a], pageIds[b], relevances[b]) ? 1
+                : worse(pageIds[b], relevances[b], pageIds[a], relevances[a]) ? -1 : 0);
+        List<SearchHit> window = new ArrayList<>(Math.max(0, size - offset));
+        for (int i = offset; i < size; i++) {
+            window.add(new SearchHit(pageIds[order[i]], relevances[order[i]]));
+        }
+        return window;
+    }
+
+    // Порядок выдачи: по убыванию релевантности, при равенстве — по возрастанию id, как в БД
+    private static boolean worse(long pageA, float relevanceA, long pageB, float relevanceB) {
+        return relevanceA < relevanceB || relevanceA == relevanceB && pageA > pageB;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!worse(pageIds[index], relevances[index], pageIds[parent], relevances[parent])) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && worse(pageIds[child + 1], relevances[child + 1], pageIds[child],
+                    relevances[child])) {
+                child++;
+            }
+            if (!worse(pageIds[child], relevances[child], pageIds[index], relevances[index])) {
+                return;
+            }
+            swap(index, child);
+            index = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long pageId = pageIds[a];
+        pageIds[a] = pageIds[b];
+        pageIds[b] = pageId;
+        float relevance = relevances[a];
+        relevances[a] = relevances[b];
+        relevances[b] = relevance;
+    }
+}
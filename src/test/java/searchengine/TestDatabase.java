@@ -0,0 +1,86 @@
+package searchengine;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Assumptions;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+
+/**
+ * Отдельная схема в тестовой PostgreSQL с применёнными миграциями Liquibase.
+ * БД задаётся переменными окружения TEST_DB_URL, TEST_DB_USER и TEST_DB_PASSWORD;
+ * без них тест, создающий схему, пропускается. Схема удаляется в {@link #close()}.
+ */
+public final class TestDatabase implements AutoCloseable {
+
+    private static final String CHANGELOG = "db/changelog/db.changelog-master.yaml";
+
+    private final String url;
+    private final Properties credentials;
+    private final String schema;
+    private final DriverManagerDataSource dataSource;
+
+    private TestDatabase(String url, Properties credentials, String schema) {
+        this.url = url;
+        this.credentials = credentials;
+        this.schema = schema;
+        this.dataSource = new DriverManagerDataSource(url);
+        Properties properties = new Properties();
+        properties.putAll(credentials);
+        properties.setProperty("currentSchema", schema);
+        dataSource.setConnectionProperties(properties);
+    }
+
+    public static TestDatabase create() throws SQLException, LiquibaseException {
+        String url = System.getenv("TEST_DB_URL");
+        Assumptions.assumeTrue(url != null && !url.isBlank(), "TEST_DB_URL не задан, тест с БД пропущен");
+        Properties credentials = new Properties();
+        credentials.setProperty("user", System.getenv().getOrDefault("TEST_DB_USER", ""));
+        credentials.setProperty("password", System.getenv().getOrDefault("TEST_DB_PASSWORD", ""));
+        String schema = "test_" + UUID.randomUUID().toString().replace("-", "");
+
+        TestDatabase database = new TestDatabase(url, credentials, schema);
+        try (Connection connection = DriverManager.getConnection(url, credentials);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE SCHEMA " + schema);
+        }
+        try (Connection connection = database.dataSource.getConnection()) {
+            Database liquibaseDatabase = DatabaseFactory.getInstance()
+                    .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+            liquibaseDatabase.setDefaultSchemaName(schema);
+            new Liquibase(CHANGELOG, new ClassLoaderResourceAccessor(), liquibaseDatabase).update(new Contexts());
+        }
+        return database;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public JdbcTemplate jdbcTemplate() {
+        return new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, credentials);
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA " + schema + " CASCADE");
+        }
+    }
+}
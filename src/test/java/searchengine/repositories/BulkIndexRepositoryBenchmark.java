@@ -0,0 +1,147 @@
+package searchengine.repositories;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import searchengine.TestDatabase;
+
+/**
+ * Сравнение пакетной записи {@link BulkIndexRepository} (INSERT ... SELECT FROM
+ * unnest) с COPY FROM STDIN через {@link CopyManager} драйвера PostgreSQL.
+ * Индекс пишется напрямую COPY в таблицу "index"; леммам нужны ON CONFLICT и
+ * RETURNING, поэтому для них COPY идёт во временную таблицу, из которой
+ * выполняется тот же upsert. Каждый замер — с пустыми таблицами, на одном
+ * соединении; печатается число строк в секунду по раундам и медиана.
+ * <p>
+ * Запуск (нужна PostgreSQL, см. {@link TestDatabase}):
+ * {@code TEST_DB_URL=jdbc:postgresql://localhost:5432/postgres TEST_DB_USER=postgres
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=searchengine.repositories.BulkIndexRepositoryBenchmark}
+ */
+public class BulkIndexRepositoryBenchmark {
+
+    private static final int PAGES = 2_000;
+    private static final int LEMMAS = 20_000;
+    // Примерно столько строк индекса даёт пакет из 2000 страниц
+    private static final int INDEX_ROWS = 200_000;
+    private static final int ROUNDS = 7;
+
+    private static final String COPY_INDEXES = "COPY \"index\" (page_id, lemma_id, \"rank\") FROM STDIN";
+    private static final String COPY_LEMMAS = "COPY lemma_delta (lemma, delta) FROM STDIN";
+    private static final String UPSERT_FROM_DELTAS = """
+            INSERT INTO lemma (site_id, generation, lemma, frequency)
+            SELECT 1, 0, lemma, delta FROM lemma_delta ORDER BY lemma
+            ON CONFLICT (site_id, generation, lemma) DO UPDATE SET frequency = lemma.frequency + EXCLUDED.frequency
+            RETURNING lemma_id, lemma
+            """;
+
+    public static void main(String[] args) throws Exception {
+        try (TestDatabase database = TestDatabase.create();
+             Connection connection = database.getDataSource().getConnection()) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+            BulkIndexRepository repository = new BulkIndexRepository(jdbcTemplate);
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            jdbcTemplate.update("INSERT INTO site (site_id, status, status_time, url, name) "
+                    + "VALUES (1, 'INDEXING', now(), 'https://example.com/', 'example')");
+            jdbcTemplate.update("CREATE TEMPORARY TABLE lemma_delta (lemma text, delta int)");
+
+            SortedMap<String, Integer> deltas = new TreeMap<>();
+            Random random = new Random(1);
+            for (int i = 0; i < LEMMAS; i++) {
+                deltas.put("лемма" + i, 1 + random.nextInt(10));
+            }
+            double[] unnestLemmas = new double[ROUNDS];
+            double[] copyLemmas = new double[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                jdbcTemplate.execute("TRUNCATE lemma CASCADE");
+                long start = System.nanoTime();
+                repository.upsertLemmas(1L, 0, deltas);
+                unnestLemmas[round] = rate(LEMMAS, start);
+
+                jdbcTemplate.execute("TRUNCATE lemma CASCADE");
+                start = System.nanoTime();
+                copyManager.copyIn(COPY_LEMMAS, new StringReader(copyText(deltas)));
+                jdbcTemplate.query(UPSERT_FROM_DELTAS, row -> {
+                });
+                jdbcTemplate.execute("TRUNCATE lemma_delta");
+                copyLemmas[round] = rate(LEMMAS, start);
+            }
+            report("upsertLemmas", unnestLemmas, copyLemmas);
+
+            jdbcTemplate.update("INSERT INTO page (site_id, path, code, generation) "
+                    + "SELECT 1, 'https://example.com/' || g, 200, 0 FROM generate_series(1, ?) g", PAGES);
+            long[] pageIds = ids(jdbcTemplate, "SELECT page_id FROM page ORDER BY page_id");
+            long[] lemmaIds = ids(jdbcTemplate, "SELECT lemma_id FROM lemma ORDER BY lemma_id");
+            Long[] indexPages = new Long[INDEX_ROWS];
+            Long[] indexLemmas = new Long[INDEX_ROWS];
+            Double[] indexRanks = new Double[INDEX_ROWS];
+            for (int i = 0; i < INDEX_ROWS; i++) {
+                indexPages[i] = pageIds[i / (INDEX_ROWS / PAGES)];
+                indexLemmas[i] = lemmaIds[random.nextInt(lemmaIds.length)];
+                indexRanks[i] = 1.0 + random.nextInt(5);
+            }
+            double[] unnestIndexes = new double[ROUNDS];
+            double[] copyIndexes = new double[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                jdbcTemplate.execute("TRUNCATE \"index\"");
+                long start = System.nanoTime();
+                repository.insertIndexes(indexPages, indexLemmas, indexRanks);
+                unnestIndexes[round] = rate(INDEX_ROWS, start);
+
+                jdbcTemplate.execute("TRUNCATE \"index\"");
+                start = System.nanoTime();
+                copyManager.copyIn(COPY_INDEXES, new StringReader(copyText(indexPages, indexLemmas, indexRanks)));
+                copyIndexes[round] = rate(INDEX_ROWS, start);
+            }
+            report("insertIndexes", unnestIndexes, copyIndexes);
+        }
+    }
+
+    // Текстовый формат COPY: значения через табуляцию, строка на запись
+    private static String copyText(SortedMap<String, Integer> deltas) {
+        StringBuilder text = new StringBuilder();
+        deltas.forEach((lemma, delta) -> text.append(lemma).append('\t').append(delta).append('\n'));
+        return text.toString();
+    }
+
+    private static String copyText(Long[] pageIds, Long[] lemmaIds, Double[] ranks) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < pageIds.length; i++) {
+            text.append(pageIds[i]).append('\t').append(lemmaIds[i]).append('\t').append(ranks[i]).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static long[] ids(JdbcTemplate jdbcTemplate, String sql) {
+        return jdbcTemplate.queryForList(sql, Long.class).stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static double rate(int rows, long startNanos) {
+        return rows / ((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    // Первый раунд — прогрев, в медиану не входит
+    private static void report(String operation, double[] unnest, double[] copy) {
+        for (int round = 0; round < unnest.length; round++) {
+            System.out.printf("%s раунд %d: unnest %.0f строк/с, COPY %.0f строк/с%n", operation, round + 1,
+                    unnest[round], copy[round]);
+        }
+        System.out.printf("%s медиана: unnest %.0f строк/с, COPY %.0f строк/с%n", operation, median(unnest),
+                median(copy));
+    }
+
+    private static double median(double[] rates) {
+        double[] measured = Arrays.copyOfRange(rates, 1, rates.length);
+        Arrays.sort(measured);
+        return measured[measured.length / 2];
+    }
+}
@@ -0,0 +1,97 @@
+package searchengine.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import searchengine.TestDatabase;
+
+class BulkIndexRepositoryTest {
+
+    private TestDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private BulkIndexRepository repository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        database = TestDatabase.create();
+        jdbcTemplate = database.jdbcTemplate();
+        repository = new BulkIndexRepository(jdbcTemplate);
+        jdbcTemplate.update("INSERT INTO site (site_id, status, status_time, url, name) "
+                + "VALUES (1, 'INDEXING', now(), 'https://example.com/', 'example')");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    @Test
+    void upsertAddsFrequenciesAndReturnsIdsOfAllLemmas() {
+        Map<String, Long> first = repository.upsertLemmas(1L, 0, new TreeMap<>(Map.of("дом", 1, "кот", 2)));
+        Map<String, Long> second = repository.upsertLemmas(1L, 0, new TreeMap<>(Map.of("дом", 3, "лес", 1)));
+
+        assertThat(second.get("дом")).isEqualTo(first.get("дом"));
+        assertThat(jdbcTemplate.queryForList("SELECT lemma || ':' || frequency FROM lemma ORDER BY lemma",
+                String.class)).containsExactly("дом:4", "кот:2", "лес:1");
+    }
+
+    @Test
+    void nativeInsertsTakeConsecutiveIds() {
+        TreeMap<String, Integer> deltas = new TreeMap<>();
+        for (int i = 0; i < 5; i++) {
+            deltas.put("лемма" + i, 1);
+        }
+        Map<String, Long> lemmaIds = repository.upsertLemmas(1L, 0, deltas);
+        deltas.put("лемма5", 1);
+        Map<String, Long> moreLemmaIds = repository.upsertLemmas(1L, 0, deltas);
+
+        // Конфликтующие строки тоже вызывают nextval, но соседние id не пропадают по 50
+        List<Long> ids = jdbcTemplate.queryForList("SELECT lemma_id FROM lemma ORDER BY lemma_id", Long.class);
+        assertThat(ids.get(4) - ids.get(0)).isEqualTo(4);
+        assertThat(moreLemmaIds.get("лемма5") - lemmaIds.get("лемма4")).isLessThanOrEqualTo(deltas.size());
+
+        jdbcTemplate.update("INSERT INTO page (site_id, path, code, generation) VALUES (1, '/', 200, 0)");
+        Long pageId = jdbcTemplate.queryForObject("SELECT page_id FROM page", Long.class);
+        Long[] lemmaColumn = lemmaIds.values().toArray(new Long[0]);
+        Long[] pageColumn = new Long[lemmaColumn.length];
+        Double[] rankColumn = new Double[lemmaColumn.length];
+        Arrays.fill(pageColumn, pageId);
+        Arrays.fill(rankColumn, 1.0);
+        repository.insertIndexes(pageColumn, lemmaColumn, rankColumn);
+        repository.insertIndexes(pageColumn, lemmaColumn, rankColumn);
+
+        List<Long> indexIds = jdbcTemplate.queryForList("SELECT index_id FROM \"index\" ORDER BY index_id",
+                Long.class);
+        assertThat(indexIds).hasSize(10);
+        assertThat(indexIds.get(9) - indexIds.get(0)).isEqualTo(9);
+    }
+
+    @Test
+    void upsertBodiesReplacesExistingBodies() {
+        jdbcTemplate.update("INSERT INTO page (site_id, path, code, generation) VALUES (1, '/a', 200, 0), "
+                + "(1, '/b', 200, 0)");
+        Long[] pageIds = jdbcTemplate.queryForList("SELECT page_id FROM page ORDER BY path", Long.class)
+                .toArray(new Long[0]);
+
+        repository.upsertBodies(pageIds, new byte[][] {{1}, {2}}, new byte[][] {{10}, null});
+        repository.upsertBodies(new Long[] {pageIds[1]}, new byte[][] {{3}}, new byte[][] {{30}});
+
+        assertThat(jdbcTemplate.queryForList("SELECT text FROM page_body ORDER BY page_id", byte[].class))
+                .containsExactly(new byte[] {1}, new byte[] {3});
+        assertThat(jdbcTemplate.queryForList("SELECT html FROM page_body ORDER BY page_id", byte[].class))
+                .containsExactly(new byte[] {10}, new byte[] {30});
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM page_body WHERE html IS NULL", Integer.class))
+                .isZero();
+    }
+}
@@ -0,0 +1,104 @@
+package searchengine.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import searchengine.TestDatabase;
+
+/**
+ * Планы поисковых запросов {@link IndexRepository} на сгенерированном индексе:
+ * списки страниц лемм запроса должны читаться из покрывающего индекса
+ * idx_index_lemma_page, без обращения к таблице "index".
+ */
+class IndexRepositoryPlanTest {
+
+    // В среднем ~26 строк "index" на страницу: TEST_PLAN_PAGES=400000 даёт индекс ~10M строк
+    private static final int PAGES = Integer.parseInt(System.getenv().getOrDefault("TEST_PLAN_PAGES", "10000"));
+    private static final int LEMMAS = 5_000;
+    private static final int LEMMAS_PER_PAGE = 30;
+
+    private static TestDatabase database;
+    private static NamedParameterJdbcTemplate namedJdbcTemplate;
+    private static List<Long> queryLemmaIds;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        database = TestDatabase.create();
+        JdbcTemplate jdbcTemplate = database.jdbcTemplate();
+        namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        seed(jdbcTemplate);
+        // Частая, средняя и редкая леммы, у которых есть общие страницы
+        queryLemmaIds = jdbcTemplate.queryForList(
+                "SELECT lemma_id FROM lemma WHERE lemma IN ('l5', 'l20', 'l100') ORDER BY lemma_id", Long.class);
+    }
+
+    @AfterAll
+    static void dropSchema() throws Exception {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    @Test
+    void rankedPagesReadPostingsFromCoveringIndex() {
+        String plan = explain(IndexRepository.RANKED_PAGES);
+
+        assertThat(plan).contains("Index Only Scan using idx_index_lemma_page").doesNotContain("Seq Scan on index");
+    }
+
+    @Test
+    void matchingPageCountReadsPostingsFromCoveringIndex() {
+        String plan = explain("SELECT count(*) FROM (" + IndexRepository.MATCHING_PAGES + ") found");
+
+        assertThat(plan).contains("Index Only Scan using idx_index_lemma_page").doesNotContain("Seq Scan on index");
+    }
+
+    private static String explain(String sql) {
+        List<String> lines = namedJdbcTemplate.queryForList("EXPLAIN (ANALYZE, BUFFERS) " + sql,
+                Map.of("lemmaIds", queryLemmaIds, "limit", 20, "offset", 0), String.class);
+        return String.join("\n", lines);
+    }
+
+    /**
+     * Сайт из {@link #PAGES} страниц по {@value #LEMMAS_PER_PAGE} лемм, частоты
+     * лемм по закону Ципфа. Данные не зависят от случайных чисел, поэтому планы
+     * от запуска к запуску одинаковы.
+     */
+    static void seed(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("INSERT INTO site (site_id, status, status_time, url, name, active_generation) "
+                + "VALUES (1, 'INDEXED', now(), 'https://example.com/', 'example', 0)");
+        jdbcTemplate.update("INSERT INTO page (site_id, path, code, generation) "
+                + "SELECT 1, '/page' || g, 200, 0 FROM generate_series(1, ?) g", PAGES);
+        jdbcTemplate.update("INSERT INTO lemma (site_id, generation, lemma, frequency) "
+                + "SELECT 1, 0, 'l' || g, 0 FROM generate_series(1, ?) g", LEMMAS);
+        // Ранг леммы с вероятностью ~1/rank из хеша номера страницы и позиции слова;
+        // повторы леммы на странице отбрасываются
+        jdbcTemplate.update("""
+                INSERT INTO "index" (page_id, lemma_id, "rank")
+                SELECT DISTINCT ON (w.page_id, l.lemma_id) w.page_id, l.lemma_id, 1 + w.position % 5
+                FROM (
+                    SELECT p.page_id, g AS position,
+                           least(?, floor(exp(abs(hashtext(p.page_id || ':' || g)) / 2147483648.0
+                                              * ln(? + 1.0)))::int) AS word_rank
+                    FROM page p CROSS JOIN generate_series(1, ?) g
+                ) w
+                JOIN lemma l ON l.lemma = 'l' || w.word_rank
+                """, LEMMAS, LEMMAS, LEMMAS_PER_PAGE);
+        jdbcTemplate.update("""
+                UPDATE lemma l SET frequency = c.pages
+                FROM (SELECT lemma_id, count(*) AS pages FROM "index" GROUP BY lemma_id) c
+                WHERE c.lemma_id = l.lemma_id
+                """);
+        jdbcTemplate.execute("VACUUM ANALYZE page");
+        jdbcTemplate.execute("VACUUM ANALYZE lemma");
+        jdbcTemplate.execute("VACUUM ANALYZE \"index\"");
+    }
+}
@@ -0,0 +1,99 @@
+package searchengine.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import searchengine.config.SearchEngineProperties;
+import searchengine.config.Site;
+import searchengine.model.IndexingStatus;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.FrontierRepository;
+import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.crawler.CrawlMode;
+import searchengine.services.crawler.CrawlScheduler;
+import searchengine.services.crawler.PageFetcher;
+import searchengine.services.crawler.PolitenessScheduler;
+import searchengine.services.crawler.RobotsRules;
+import searchengine.services.crawler.SiteDiscovery;
+import searchengine.services.crawler.SiteIndexWriter;
+import searchengine.services.lemma.LemmaService;
+
+class SiteIndexerTest {
+
+    private final SiteRepository siteRepository = mock(SiteRepository.class);
+    private final SiteIndexWriter indexWriter = mock(SiteIndexWriter.class);
+    private final PageFetcher pageFetcher = mock(PageFetcher.class);
+    private final SiteDiscovery discovery = mock(SiteDiscovery.class);
+    private final CrawlScheduler scheduler = mock(CrawlScheduler.class);
+    private SiteIndexer indexer;
+    private SiteEntity saved;
+
+    @BeforeEach
+    void setUp() {
+        indexer = new SiteIndexer(new SearchEngineProperties(), siteRepository, mock(PageRepository.class),
+                mock(LemmaRepository.class), mock(LemmaService.class), indexWriter, mock(PolitenessScheduler.class),
+                pageFetcher, mock(FrontierRepository.class), discovery, scheduler);
+        when(siteRepository.findByUrl(any())).thenReturn(Optional.empty());
+        when(siteRepository.save(any())).thenAnswer(invocation -> {
+            saved = invocation.getArgument(0);
+            saved.setId(1L);
+            return saved;
+        });
+        when(siteRepository.findById(1L)).thenAnswer(invocation -> Optional.ofNullable(saved));
+    }
+
+    @AfterEach
+    void tearDown() {
+        indexer.shutdown();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"http:/example.com", "example.com", "ftp://example.com/", "https://"})
+    void failsSiteWithMalformedUrlBeforeCrawling(String url) {
+        Site config = new Site();
+        config.setUrl(url);
+        config.setName("Опечатка");
+
+        indexer.index(config, CrawlMode.FULL);
+
+        assertThat(saved.getIndexingStatus()).isEqualTo(IndexingStatus.FAILED);
+        assertThat(saved.getLastError()).startsWith("Некорректный адрес сайта: " + url);
+        verifyNoInteractions(discovery, pageFetcher, scheduler, indexWriter);
+    }
+
+    @Test
+    void stopInterruptsDiscoveryBeforeCrawlStarts() throws Exception {
+        CompletableFuture<RobotsRules> robots = new CompletableFuture<>();
+        when(discovery.loadRobots(any())).thenReturn(robots);
+        Site config = new Site();
+        config.setUrl("https://example.com/");
+        config.setName("Пример");
+
+        Thread indexing = new Thread(() -> indexer.index(config, CrawlMode.FULL));
+        indexing.start();
+        // Остановка может прийти раньше, чем индексация дойдёт до загрузки robots.txt
+        while (indexing.isAlive()) {
+            indexer.stop();
+            indexing.join(20);
+        }
+
+        assertThat(robots).isCancelled();
+        assertThat(saved.getIndexingStatus()).isEqualTo(IndexingStatus.FAILED);
+        assertThat(saved.getLastError()).isEqualTo("Индексация остановлена пользователем");
+        verifyNoInteractions(pageFetcher, scheduler);
+    }
+}
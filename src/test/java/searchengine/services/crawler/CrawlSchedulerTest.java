@@ -0,0 +1,126 @@
+package searchengine.services.crawler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import searchengine.config.SearchEngineProperties;
+import searchengine.model.SiteEntity;
+
+class CrawlSchedulerTest {
+
+    private final SearchEngineProperties props = new SearchEngineProperties();
+    private CrawlScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void fillsGlobalBudgetInProportionToWeights() {
+        props.getCrawl().setMaxInFlight(8);
+        scheduler = new CrawlScheduler(props);
+        // Сайты готовы к загрузке только после регистрации обоих
+        AtomicBoolean ready = new AtomicBoolean();
+        AtomicInteger heavy = new AtomicInteger();
+        AtomicInteger light = new AtomicInteger();
+        SiteCrawl first = crawl("https://a.example/", () -> ready.get() && heavy.incrementAndGet() > 0);
+        SiteCrawl second = crawl("https://b.example/", () -> ready.get() && light.incrementAndGet() > 0);
+        scheduler.register(first, 3);
+        scheduler.register(second, 1);
+
+        ready.set(true);
+        scheduler.dispatch();
+
+        assertThat(heavy.get()).isEqualTo(6);
+        assertThat(light.get()).isEqualTo(2);
+    }
+
+    @Test
+    void startsFetchesOutsideSchedulerLock() {
+        props.getCrawl().setMaxInFlight(4);
+        scheduler = new CrawlScheduler(props);
+        AtomicBoolean heldLock = new AtomicBoolean();
+        AtomicInteger calls = new AtomicInteger();
+        SiteCrawl crawl = crawl("https://a.example/", () -> {
+            heldLock.compareAndSet(false, Thread.holdsLock(scheduler));
+            return calls.incrementAndGet() <= 4;
+        });
+
+        scheduler.register(crawl, 1);
+
+        assertThat(calls.get()).isEqualTo(4);
+        assertThat(heldLock.get()).isFalse();
+    }
+
+    @Test
+    void completionFreesBudgetForNextFetch() {
+        props.getCrawl().setMaxInFlight(1);
+        scheduler = new CrawlScheduler(props);
+        AtomicInteger started = new AtomicInteger();
+        SiteCrawl crawl = crawl("https://a.example/", () -> {
+            started.incrementAndGet();
+            return true;
+        });
+
+        scheduler.register(crawl, 1);
+        scheduler.dispatch();
+        assertThat(started.get()).isEqualTo(1);
+
+        scheduler.onComplete();
+        assertThat(started.get()).isEqualTo(2);
+    }
+
+    @Test
+    void slowStartOfOneSiteDoesNotBlockAnother() throws Exception {
+        props.getCrawl().setMaxInFlight(4);
+        scheduler = new CrawlScheduler(props);
+        CountDownLatch slowEntered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean slowStarted = new AtomicBoolean();
+        SiteCrawl slow = crawl("https://slow.example/", () -> {
+            if (slowStarted.compareAndSet(false, true)) {
+                slowEntered.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return true;
+            }
+            return false;
+        });
+        AtomicInteger fast = new AtomicInteger();
+        SiteCrawl quick = crawl("https://fast.example/", () -> fast.incrementAndGet() <= 2);
+
+        Thread registering = new Thread(() -> scheduler.register(slow, 1));
+        registering.start();
+        assertThat(slowEntered.await(10, TimeUnit.SECONDS)).isTrue();
+        try {
+            scheduler.register(quick, 1);
+            assertThat(fast.get()).isGreaterThanOrEqualTo(2);
+        } finally {
+            release.countDown();
+            registering.join(10_000);
+        }
+    }
+
+    private static SiteCrawl crawl(String url, Dispatch dispatch) {
+        SiteEntity site = new SiteEntity();
+        site.setUrl(url);
+        SiteCrawl crawl = mock(SiteCrawl.class);
+        when(crawl.getSite()).thenReturn(site);
+        when(crawl.tryDispatch()).thenAnswer(invocation -> dispatch.run());
+        return crawl;
+    }
+
+    @FunctionalInterface
+    private interface Dispatch {
+        boolean run() throws Exception;
+    }
+}
@@ -0,0 +1,136 @@
+package searchengine.services.crawler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+
+class FetchResultTest {
+
+    private static final String HTML = "<html><head><title>Привет</title></head>"
+            + "<body><a href=\"/next\">дальше</a></body></html>";
+
+    @Test
+    void decodesGzipBody() throws IOException {
+        FetchResult result = result("https://example.com/", gzip(utf8(HTML)), "text/html; charset=utf-8", "gzip");
+
+        assertThat(result.parse().title()).isEqualTo("Привет");
+    }
+
+    @Test
+    void decodesDeflateWithAndWithoutZlibHeader() throws IOException {
+        FetchResult zlib = result("https://example.com/", deflate(utf8(HTML), false), "text/html; charset=utf-8",
+                "deflate");
+        FetchResult raw = result("https://example.com/", deflate(utf8(HTML), true), "text/html; charset=utf-8",
+                "deflate");
+
+        assertThat(zlib.text()).isEqualTo(HTML);
+        assertThat(raw.text()).isEqualTo(HTML);
+    }
+
+    @Test
+    void usesCharsetFromContentType() throws IOException {
+        byte[] body = "Кириллица".getBytes(Charset.forName("windows-1251"));
+        FetchResult result = result("https://example.com/", body, "text/plain; charset=\"windows-1251\"", null);
+
+        assertThat(result.text()).isEqualTo("Кириллица");
+    }
+
+    @Test
+    void defaultsToUtf8WhenCharsetIsMissingOrUnknown() throws IOException {
+        assertThat(result("https://example.com/", utf8("ёж"), "text/plain", null).text()).isEqualTo("ёж");
+        assertThat(result("https://example.com/", utf8("ёж"), "text/plain; charset=x-unknown", null).text())
+                .isEqualTo("ёж");
+    }
+
+    @Test
+    void resolvesLinksAgainstResponseUrl() throws IOException {
+        FetchResult result = result("https://example.com/moved/", utf8(HTML), "text/html", null);
+
+        Document doc = result.parse();
+
+        assertThat(doc.select("a[href]").first().absUrl("href")).isEqualTo("https://example.com/next");
+        assertThat(doc.location()).isEqualTo("https://example.com/moved/");
+    }
+
+    @Test
+    void rejectsBodyThatExceedsDecodedLimitAfterDecompression() throws IOException {
+        byte[] bomb = gzip(new byte[10_000]);
+        FetchResult result = new FetchResult("https://example.com/", 200,
+                headers("text/plain", "gzip"), bomb, false, 1_000);
+
+        assertThatThrownBy(result::text).isInstanceOf(FetchResult.BodyTooLargeException.class);
+    }
+
+    @Test
+    void acceptsBodyExactlyAtDecodedLimit() throws IOException {
+        FetchResult result = new FetchResult("https://example.com/", 200, headers("text/plain", null),
+                utf8("abcd"), false, 4);
+
+        assertThat(result.text()).isEqualTo("abcd");
+    }
+
+    @Test
+    void exposesTruncationAndValidators() {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        map.put("ETag", List.of("\"v1\""));
+        map.put("Last-Modified", List.of("Wed, 21 Oct 2015 07:28:00 GMT"));
+        FetchResult result = new FetchResult("https://example.com/", 304, HttpHeaders.of(map, (a, b) -> true),
+                null, true, 100);
+
+        assertThat(result.isTruncated()).isTrue();
+        assertThat(result.isNotModified()).isTrue();
+        assertThat(result.hasBody()).isFalse();
+        assertThat(result.getEtag()).isEqualTo("\"v1\"");
+        assertThat(result.getLastModified()).isEqualTo("Wed, 21 Oct 2015 07:28:00 GMT");
+    }
+
+    private static FetchResult result(String url, byte[] body, String contentType, String encoding) {
+        return new FetchResult(url, 200, headers(contentType, encoding), body, false, 1 << 20);
+    }
+
+    private static HttpHeaders headers(String contentType, String encoding) {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        if (contentType != null) {
+            map.put("Content-Type", List.of(contentType));
+        }
+        if (encoding != null) {
+            map.put("Content-Encoding", List.of(encoding));
+        }
+        return HttpHeaders.of(map, (name, value) -> true);
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean nowrap) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION,
+                nowrap))) {
+            deflate.write(data);
+        }
+        return out.toByteArray();
+    }
+}
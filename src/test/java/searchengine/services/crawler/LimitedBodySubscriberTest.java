@@ -0,0 +1,88 @@
+package searchengine.services.crawler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.junit.jupiter.api.Test;
+
+class LimitedBodySubscriberTest {
+
+    @Test
+    void collectsWholeBodyWithinLimit() {
+        LimitedBodySubscriber subscriber = new LimitedBodySubscriber(10);
+        FakeSubscription subscription = new FakeSubscription();
+
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(List.of(buffer("abc"), buffer("def")));
+        subscriber.onComplete();
+
+        LimitedBodySubscriber.Body body = subscriber.getBody().toCompletableFuture().join();
+        assertThat(new String(body.bytes(), StandardCharsets.UTF_8)).isEqualTo("abcdef");
+        assertThat(body.truncated()).isFalse();
+        assertThat(subscription.cancelled).isFalse();
+    }
+
+    @Test
+    void bodyExactlyAtLimitIsNotTruncated() {
+        LimitedBodySubscriber subscriber = new LimitedBodySubscriber(6);
+        subscriber.onSubscribe(new FakeSubscription());
+        subscriber.onNext(List.of(buffer("abcdef")));
+        subscriber.onComplete();
+
+        LimitedBodySubscriber.Body body = subscriber.getBody().toCompletableFuture().join();
+        assertThat(body.bytes()).hasSize(6);
+        assertThat(body.truncated()).isFalse();
+    }
+
+    @Test
+    void marksTruncatedAndCancelsWhenLimitIsExceeded() {
+        LimitedBodySubscriber subscriber = new LimitedBodySubscriber(4);
+        FakeSubscription subscription = new FakeSubscription();
+
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(List.of(buffer("abc"), buffer("def")));
+        subscriber.onNext(List.of(buffer("ignored")));
+
+        LimitedBodySubscriber.Body body = subscriber.getBody().toCompletableFuture().join();
+        assertThat(new String(body.bytes(), StandardCharsets.UTF_8)).isEqualTo("abcd");
+        assertThat(body.truncated()).isTrue();
+        assertThat(subscription.cancelled).isTrue();
+    }
+
+    @Test
+    void skipsBodyWhenLimitIsZero() {
+        LimitedBodySubscriber subscriber = new LimitedBodySubscriber(0);
+        FakeSubscription subscription = new FakeSubscription();
+
+        subscriber.onSubscribe(subscription);
+
+        LimitedBodySubscriber.Body body = subscriber.getBody().toCompletableFuture().join();
+        assertThat(body.bytes()).isNull();
+        assertThat(body.truncated()).isFalse();
+        assertThat(subscription.cancelled).isTrue();
+        assertThat(subscription.requested).isZero();
+    }
+
+    private static ByteBuffer buffer(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class FakeSubscription implements Flow.Subscription {
+        long requested;
+        boolean cancelled;
+
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package searchengine.services.crawler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class NearDuplicateIndexTest {
+
+    @Test
+    void findsPageWithinMaxDistance() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+
+        assertThat(index.findOrAdd(0L, "https://example.com/a")).isNull();
+        assertThat(index.findOrAdd(0b111L, "https://example.com/b")).isEqualTo("https://example.com/a");
+        assertThat(index.findOrAdd(0b1111L, "https://example.com/c")).isNull();
+    }
+
+    @Test
+    void samePageIsNotItsOwnDuplicate() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+
+        assertThat(index.findOrAdd(42L, "https://example.com/a")).isNull();
+        assertThat(index.findOrAdd(42L, "https://example.com/a")).isNull();
+        assertThat(index.findOrAdd(43L, "https://example.com/b")).isEqualTo("https://example.com/a");
+    }
+
+    @Test
+    void removedFingerprintNoLongerMatches() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        index.add(1000L, "https://example.com/a");
+
+        index.remove(1000L, "https://example.com/a");
+
+        assertThat(index.findOrAdd(1001L, "https://example.com/b")).isNull();
+    }
+
+    @Test
+    void matchesBruteForceModel() {
+        Random random = new Random(11);
+        for (int maxDistance : new int[] {0, 3, 6}) {
+            NearDuplicateIndex index = new NearDuplicateIndex(maxDistance);
+            Map<String, Long> added = new LinkedHashMap<>();
+            List<Long> fingerprints = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                long simhash;
+                if (!fingerprints.isEmpty() && random.nextBoolean()) {
+                    // Копия уже добавленного отпечатка с несколькими изменёнными битами
+                    simhash = fingerprints.get(random.nextInt(fingerprints.size()));
+                    for (int flips = random.nextInt(maxDistance + 3); flips > 0; flips--) {
+                        simhash ^= 1L << random.nextInt(64);
+                    }
+                } else {
+                    simhash = random.nextLong();
+                }
+                boolean expectedDuplicate = false;
+                for (long existing : fingerprints) {
+                    expectedDuplicate |= SimHash.distance(existing, simhash) <= maxDistance;
+                }
+
+                String url = "https://example.com/page-" + i;
+                String canonical = index.findOrAdd(simhash, url);
+
+                assertThat(canonical != null).isEqualTo(expectedDuplicate);
+                if (canonical == null) {
+                    added.put(url, simhash);
+                    fingerprints.add(simhash);
+                } else {
+                    assertThat(SimHash.distance(added.get(canonical), simhash)).isLessThanOrEqualTo(maxDistance);
+                }
+            }
+        }
+    }
+}
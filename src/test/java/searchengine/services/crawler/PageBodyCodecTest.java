@@ -0,0 +1,54 @@
+package searchengine.services.crawler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.Test;
+
+class PageBodyCodecTest {
+
+    @Test
+    void roundTripsText() {
+        String text = "Съешь же ещё этих мягких французских булок, да выпей чаю. The quick brown fox 🦊";
+
+        for (int level = Deflater.NO_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++) {
+            assertThat(PageBodyCodec.decompress(PageBodyCodec.compress(text, level))).isEqualTo(text);
+        }
+    }
+
+    @Test
+    void roundTripsEmptyAndNull() {
+        assertThat(PageBodyCodec.decompress(PageBodyCodec.compress("", 6))).isEmpty();
+        assertThat(PageBodyCodec.compress(null, 6)).isNull();
+        assertThat(PageBodyCodec.decompress(null)).isNull();
+    }
+
+    @Test
+    void roundTripsTextLargerThanBuffer() {
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 200_000) {
+            text.append((char) ('а' + random.nextInt(32)));
+        }
+
+        byte[] compressed = PageBodyCodec.compress(text.toString(), 6);
+
+        assertThat(PageBodyCodec.decompress(compressed)).isEqualTo(text.toString());
+    }
+
+    @Test
+    void compressesRepetitiveText() {
+        String text = "лемма индекс страница ".repeat(1_000);
+
+        assertThat(PageBodyCodec.compress(text, 6).length).isLessThan(text.length() / 10);
+    }
+
+    @Test
+    void rejectsCorruptedData() {
+        assertThatThrownBy(() -> PageBodyCodec.decompress(new byte[] {1, 2, 3, 4, 5}))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,161 @@
+package searchengine.services.crawler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class RobotsRulesTest {
+
+    private static final String AGENT = "HeliontSearchBot/1.0 (+https://example.com/bot)";
+
+    @Test
+    void matchesProductTokenCaseInsensitively() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /
+
+                User-agent: HELIONTSEARCHBOT
+                Disallow: /private
+                """, AGENT);
+
+        assertThat(rules.isAllowed("https://example.com/page")).isTrue();
+        assertThat(rules.isAllowed("https://example.com/private/a")).isFalse();
+    }
+
+    @Test
+    void doesNotMatchAgentNameThatIsOnlyASubstring() {
+        // Раньше "bot" совпадал с "heliontsearchbot" как подстрока
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: bot
+                Disallow: /
+
+                User-agent: *
+                Disallow: /tmp
+                """, AGENT);
+
+        assertThat(rules.isAllowed("https://example.com/page")).isTrue();
+        assertThat(rules.isAllowed("https://example.com/tmp/x")).isFalse();
+    }
+
+    @Test
+    void longestMatchingAgentWins() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: heliontsearchbot
+                Disallow: /a
+
+                User-agent: heliontsearchbot-news
+                Disallow: /b
+                """, "HeliontSearchBot-News/2.0");
+
+        assertThat(rules.isAllowed("https://example.com/a")).isTrue();
+        assertThat(rules.isAllowed("https://example.com/b")).isFalse();
+    }
+
+    @Test
+    void agentPrefixMatchesAtHyphenBoundary() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: heliontsearchbot
+                Disallow: /a
+                """, "HeliontSearchBot-News/2.0");
+
+        assertThat(rules.isAllowed("https://example.com/a")).isFalse();
+    }
+
+    @Test
+    void combinesGroupsForTheSameAgent() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: heliontsearchbot
+                Disallow: /a
+
+                User-agent: other
+                Disallow: /c
+
+                User-agent: HeliontSearchBot
+                Disallow: /b
+                Crawl-delay: 2
+                """, AGENT);
+
+        assertThat(rules.isAllowed("https://example.com/a")).isFalse();
+        assertThat(rules.isAllowed("https://example.com/b")).isFalse();
+        assertThat(rules.isAllowed("https://example.com/c")).isTrue();
+        assertThat(rules.getCrawlDelayMs()).isEqualTo(2000);
+    }
+
+    @Test
+    void groupWithSeveralAgentsAppliesToEach() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: other
+                User-agent: heliontsearchbot
+                Disallow: /x
+                """, AGENT);
+
+        assertThat(rules.isAllowed("https://example.com/x")).isFalse();
+    }
+
+    @Test
+    void longestRuleWinsAndAllowWinsTies() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /shop
+                Allow: /shop/public
+                Disallow: /same
+                Allow: /same
+                """, AGENT);
+
+        assertThat(rules.isAllowed("https://example.com/shop/cart")).isFalse();
+        assertThat(rules.isAllowed("https://example.com/shop/public/1")).isTrue();
+        assertThat(rules.isAllowed("https://example.com/same")).isTrue();
+    }
+
+    @Test
+    void supportsWildcardsAndEndAnchor() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /*.pdf$
+                Disallow: /search*q=
+                """, AGENT);
+
+        assertThat(rules.isAllowed("https://example.com/doc/file.pdf")).isFalse();
+        assertThat(rules.isAllowed("https://example.com/doc/file.pdf?download=1")).isTrue();
+        assertThat(rules.isAllowed("https://example.com/search/?page=2&q=x")).isFalse();
+        assertThat(rules.isAllowed("https://example.com/search/?page=2")).isTrue();
+    }
+
+    @Test
+    void emptyDisallowAllowsEverything() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow:
+                """, AGENT);
+
+        assertThat(rules.isAllowed("https://example.com/anything")).isTrue();
+    }
+
+    @Test
+    void collectsSitemapsAndIgnoresComments() {
+        RobotsRules rules = RobotsRules.parse("""
+                # комментарий
+                Sitemap: https://example.com/sitemap-1.xml
+                User-agent: * # все роботы
+                Disallow: /admin # закрыто
+                Crawl-delay: 0.5
+                Sitemap: https://example.com/sitemap-2.xml
+                """, AGENT);
+
+        assertThat(rules.getSitemaps()).containsExactly("https://example.com/sitemap-1.xml",
+                "https://example.com/sitemap-2.xml");
+        assertThat(rules.isAllowed("https://example.com/admin/")).isFalse();
+        assertThat(rules.getCrawlDelayMs()).isEqualTo(500);
+    }
+
+    @Test
+    void withoutMatchingGroupEverythingIsAllowed() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: otherbot
+                Disallow: /
+                """, AGENT);
+
+        assertThat(rules.isAllowed("https://example.com/")).isTrue();
+        assertThat(rules.getCrawlDelayMs()).isZero();
+    }
+}
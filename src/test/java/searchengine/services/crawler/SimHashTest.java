@@ -0,0 +1,76 @@
+package searchengine.services.crawler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SimHashTest {
+
+    private static final String TEXT = "Поисковый движок обходит страницы сайта, извлекает из них текст, "
+            + "приводит слова к начальной форме и сохраняет леммы в индекс. По запросу пользователя он находит "
+            + "страницы, содержащие все леммы запроса, и сортирует их по релевантности, которая считается как "
+            + "сумма рангов лемм на странице, делённая на наибольшую сумму среди найденных страниц.";
+
+    @Test
+    void shortTextHasNoFingerprint() {
+        assertThat(SimHash.of("всего несколько слов")).isNull();
+        assertThat(SimHash.of("")).isNull();
+    }
+
+    @Test
+    void ignoresCaseAndPunctuation() {
+        String shouted = TEXT.toUpperCase().replace(",", " ;").replace(".", "!!!");
+
+        assertThat(SimHash.of(shouted)).isEqualTo(SimHash.of(TEXT));
+    }
+
+    @Test
+    void smallEditOfLongPageGivesCloseFingerprint() {
+        // Страница из нескольких сотен слов, в которой изменено одно слово (дата, счётчик)
+        String page = randomText(new Random(5), 400);
+        String edited = page.replaceFirst(" [a-z]+ ", " changed ");
+
+        assertThat(SimHash.distance(SimHash.of(page), SimHash.of(edited))).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    void unrelatedTextsAreFarApart() {
+        String other = "Осенью в лесу собирают грибы и ягоды, а в огороде выкапывают картофель. Листья "
+                + "желтеют и опадают, птицы улетают на юг, дни становятся короче, а ночи длиннее и холоднее. "
+                + "К зиме запасают дрова и утепляют окна.";
+
+        assertThat(SimHash.distance(SimHash.of(TEXT), SimHash.of(other))).isGreaterThan(10);
+    }
+
+    @Test
+    void distanceCountsDifferingBits() {
+        assertThat(SimHash.distance(0L, 0L)).isZero();
+        assertThat(SimHash.distance(0L, -1L)).isEqualTo(64);
+        assertThat(SimHash.distance(0b1011L, 0b0110L)).isEqualTo(3);
+    }
+
+    @Test
+    void randomTextsSpreadAroundHalfTheBits() {
+        Random random = new Random(3);
+        long total = 0;
+        int pairs = 200;
+        for (int i = 0; i < pairs; i++) {
+            total += SimHash.distance(SimHash.of(randomText(random, 60)), SimHash.of(randomText(random, 60)));
+        }
+
+        assertThat(total / pairs).isBetween(24L, 40L);
+    }
+
+    private static String randomText(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int word = 0; word < words; word++) {
+            for (int c = 0; c < 3 + random.nextInt(6); c++) {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+            text.append(' ');
+        }
+        return text.toString();
+    }
+}
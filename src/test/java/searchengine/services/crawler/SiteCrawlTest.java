@@ -0,0 +1,219 @@
+package searchengine.services.crawler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import searchengine.config.SearchEngineProperties;
+import searchengine.config.Site;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.PageRepository.PageState;
+import searchengine.services.lemma.LemmaService;
+
+class SiteCrawlTest {
+
+    private static final String SITE = "https://example.com/";
+    private static final String TEXT = "Текст статьи о том, как устроен поиск почти одинаковых страниц: документ "
+            + "разбивается на слова, каждое слово хешируется, а из хешей складывается короткий отпечаток, "
+            + "по которому похожие страницы находятся без сравнения их содержимого целиком.";
+    private static final String OTHER = "Совсем другая страница сайта: расписание занятий кружка юных натуралистов "
+            + "на осенний семестр, список необходимых материалов, адрес зоопарка и телефон руководителя, "
+            + "а также правила поведения во время экскурсий в ботанический сад и на пруд.";
+
+    private final SearchEngineProperties props = new SearchEngineProperties();
+    private final PolitenessScheduler politeness;
+    private final CrawlScheduler scheduler;
+    private final LemmaService lemmaService = mock(LemmaService.class);
+    // Текущий текст страниц сайта; остальные адреса отвечают 404
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+    // Запрошенные адреса; условные запросы помечены ETag
+    private final List<String> requested = new CopyOnWriteArrayList<>();
+    // Последнее записанное изменение каждого адреса
+    private final Map<String, CrawledPage> written = new HashMap<>();
+    private long nextPageId = 100;
+
+    SiteCrawlTest() {
+        props.setDelayMinMs(1);
+        props.setDelayMaxMs(1);
+        props.getCrawl().setBatchSize(1);
+        props.getCrawl().setPerSiteMaxInFlight(1);
+        politeness = new PolitenessScheduler(props);
+        scheduler = new CrawlScheduler(props);
+        when(lemmaService.extractText(any(Document.class)))
+                .thenAnswer(invocation -> invocation.<Document>getArgument(0).body().text());
+        when(lemmaService.getLemmas(anyList())).thenAnswer(invocation -> {
+            List<Map<String, Integer>> lemmas = new ArrayList<>();
+            invocation.<List<String>>getArgument(0).forEach(text -> lemmas.add(Map.of("поиск", 1)));
+            return lemmas;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+        politeness.shutdown();
+    }
+
+    @Test
+    void contentMovedToNewUrlIsIndexedThere() throws Exception {
+        responses.put(SITE + "new", TEXT);
+
+        crawl(List.of(known(1, "old", TEXT, null)), "old", "new");
+
+        assertThat(written.get(SITE + "old").getChange()).isEqualTo(CrawledPage.Change.GONE);
+        assertThat(written.get(SITE + "new").getChange()).isEqualTo(CrawledPage.Change.NEW);
+        assertThat(written.get(SITE + "new").hasPostings()).isTrue();
+    }
+
+    @Test
+    void duplicateWrittenBeforeItsCanonicalWentIsRefetched() throws Exception {
+        responses.put(SITE + "new", TEXT);
+
+        crawl(List.of(known(1, "old", TEXT, null)), "new", "old");
+
+        // Новый адрес мог стать дубликатом ещё существовавшей страницы, но в итоге проиндексирован
+        CrawledPage page = written.get(SITE + "new");
+        assertThat(page.getChange()).isIn(CrawledPage.Change.NEW, CrawledPage.Change.MODIFIED);
+        assertThat(page.hasPostings()).isTrue();
+        assertThat(page.getPage().getId()).isNotNull();
+    }
+
+    @Test
+    void knownDuplicatesOfGonePageAreRefetchedWithoutValidators() throws Exception {
+        responses.put(SITE + "copy", TEXT);
+
+        crawl(List.of(known(1, "old", TEXT, null), known(2, "copy", TEXT, 1L)), "copy", "old");
+
+        assertThat(requested).containsSubsequence(SITE + "copy ETag", SITE + "old ETag", SITE + "copy");
+        CrawledPage copy = written.get(SITE + "copy");
+        assertThat(copy.getChange()).isEqualTo(CrawledPage.Change.MODIFIED);
+        assertThat(copy.getPage().getId()).isEqualTo(2);
+        assertThat(copy.hasPostings()).isTrue();
+    }
+
+    @Test
+    void pageTurningIntoDuplicateRequeuesItsDuplicates() throws Exception {
+        // Текст канонической страницы сменился на текст новой страницы, а её дубликат не изменился
+        responses.put(SITE + "main", TEXT);
+        responses.put(SITE + "old", TEXT);
+        responses.put(SITE + "copy", OTHER);
+
+        crawl(List.of(known(1, "old", OTHER, null), known(2, "copy", OTHER, 1L)), "main", "old", "copy");
+
+        assertThat(written.get(SITE + "main").getChange()).isEqualTo(CrawledPage.Change.NEW);
+        assertThat(written.get(SITE + "old").getChange()).isEqualTo(CrawledPage.Change.DUPLICATE);
+        assertThat(written.get(SITE + "old").getCanonicalUrl()).isEqualTo(SITE + "main");
+        // Прежний дубликат загружен без условного GET и проиндексирован самостоятельно
+        assertThat(requested).contains(SITE + "copy");
+        CrawledPage copy = written.get(SITE + "copy");
+        assertThat(copy.getChange()).isEqualTo(CrawledPage.Change.MODIFIED);
+        assertThat(copy.getPage().getId()).isEqualTo(2);
+    }
+
+    // Страницы загружаются по одной в порядке paths; пакет из одной страницы
+    private void crawl(List<Known> knownPages, String... paths) throws InterruptedException {
+        Map<String, PageState> states = new HashMap<>();
+        knownPages.forEach(page -> states.put(page.getPath(), page));
+        SiteEntity site = new SiteEntity();
+        site.setUrl(SITE);
+        Site config = new Site();
+        config.setUrl(SITE);
+        SiteCrawl crawl = new SiteCrawl(site, config, props, lemmaService, politeness, this::fetch, scheduler,
+                states, RobotsRules.allowAll());
+        for (String path : paths) {
+            crawl.seed(List.of(SITE + path), 1);
+        }
+        scheduler.register(crawl, 1);
+        try {
+            crawl.run(this::write);
+        } finally {
+            scheduler.unregister(crawl);
+        }
+    }
+
+    // ETag страницы — хеш её текста: условный запрос с ним получает 304
+    private CompletableFuture<FetchResult> fetch(String url, String etag, String lastModified) {
+        requested.add(etag != null ? url + " ETag" : url);
+        String text = responses.get(url);
+        int code = text == null ? 404 : etag(text).equals(etag) ? 304 : 200;
+        byte[] body = code == 200 ? ("<html><body><p>" + text + "</p></body></html>").getBytes(StandardCharsets.UTF_8)
+                : null;
+        HttpHeaders headers = HttpHeaders.of(Map.of("Content-Type", List.of("text/html; charset=utf-8")),
+                (a, b) -> true);
+        return CompletableFuture.completedFuture(new FetchResult(url, code, headers, body, false, 1 << 20));
+    }
+
+    // Как писатель: новые страницы, в том числе дубликаты, получают id при записи
+    private void write(List<CrawledPage> batch) {
+        for (CrawledPage page : batch) {
+            if (page.getPage() != null && page.getPage().getId() == null) {
+                page.getPage().setId(nextPageId++);
+            }
+            if (page.getChange() != CrawledPage.Change.SKIPPED) {
+                written.put(page.getUrl(), page);
+            }
+        }
+    }
+
+    private static String etag(String text) {
+        return "\"" + ContentHash.of(text) + "\"";
+    }
+
+    // Страница, записанная прежним обходом с текстом text
+    private static Known known(long id, String path, String text, Long canonicalPageId) {
+        return new Known(id, SITE + path, text, canonicalPageId);
+    }
+
+    private record Known(Long id, String path, String text, Long canonicalPageId) implements PageState {
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public String getEtag() {
+            return etag(text);
+        }
+
+        @Override
+        public String getLastModified() {
+            return null;
+        }
+
+        @Override
+        public String getContentHash() {
+            return ContentHash.of(text);
+        }
+
+        @Override
+        public Long getSimhash() {
+            return SimHash.of(text);
+        }
+
+        @Override
+        public Long getCanonicalPageId() {
+            return canonicalPageId;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package searchengine.services.crawler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import searchengine.config.SearchEngineProperties;
+
+class SiteDiscoveryTest {
+
+    private final SearchEngineProperties props = new SearchEngineProperties();
+    private final PolitenessScheduler politeness;
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+    private final List<String> requested = new CopyOnWriteArrayList<>();
+    private final SiteDiscovery discovery;
+
+    SiteDiscoveryTest() {
+        props.setUserAgent("HeliontSearchBot/1.0");
+        props.setDelayMinMs(1);
+        props.setDelayMaxMs(1);
+        politeness = new PolitenessScheduler(props);
+        PageFetcher fetcher = (url, etag, lastModified) -> {
+            requested.add(url);
+            String body = responses.get(url);
+            Map<String, List<String>> headers = Map.of("Content-Type", List.of("text/xml; charset=utf-8"));
+            return CompletableFuture.completedFuture(new FetchResult(url, body == null ? 404 : 200,
+                    HttpHeaders.of(headers, (a, b) -> true),
+                    body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8), false, 1 << 20));
+        };
+        discovery = new SiteDiscovery(props, fetcher, politeness);
+    }
+
+    @AfterEach
+    void tearDown() {
+        politeness.shutdown();
+    }
+
+    @Test
+    void missingRobotsAllowsEverything() throws Exception {
+        RobotsRules rules = discovery.loadRobots("https://example.com/").get(5, TimeUnit.SECONDS);
+
+        assertThat(rules.isAllowed("https://example.com/any")).isTrue();
+        assertThat(requested).containsExactly("https://example.com/robots.txt");
+    }
+
+    @Test
+    void followsSitemapIndexAndOrdersByLastmod() throws Exception {
+        responses.put("https://example.com/robots.txt", "Sitemap: https://example.com/index.xml\n");
+        responses.put("https://example.com/index.xml", """
+                <sitemapindex>
+                  <sitemap><loc>https://example.com/a.xml</loc></sitemap>
+                  <sitemap><loc>https://example.com/b.xml</loc></sitemap>
+                </sitemapindex>
+                """);
+        responses.put("https://example.com/a.xml", """
+                <urlset>
+                  <url><loc>https://example.com/old</loc><lastmod>2020-01-01</lastmod></url>
+                  <url><loc>https://example.com/undated</loc></url>
+                </urlset>
+                """);
+        responses.put("https://example.com/b.xml", """
+                <urlset>
+                  <url><loc>https://example.com/new</loc><lastmod>2024-05-01T10:00:00+03:00</lastmod></url>
+                  <url><loc>https://example.com/old</loc></url>
+                </urlset>
+                """);
+
+        RobotsRules robots = discovery.loadRobots("https://example.com/").get(5, TimeUnit.SECONDS);
+        List<String> urls = discovery.loadSitemapUrls("https://example.com/", robots).get(5, TimeUnit.SECONDS);
+
+        assertThat(urls).containsExactly("https://example.com/new", "https://example.com/old",
+                "https://example.com/undated");
+    }
+
+    @Test
+    void stopsAtMaxSitemaps() throws Exception {
+        props.getDiscovery().setMaxSitemaps(1);
+        responses.put("https://example.com/sitemap.xml", """
+                <sitemapindex><sitemap><loc>https://example.com/a.xml</loc></sitemap></sitemapindex>
+                """);
+
+        List<String> urls = discovery.loadSitemapUrls("https://example.com/", RobotsRules.allowAll())
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(urls).isEmpty();
+        assertThat(requested).containsExactly("https://example.com/sitemap.xml");
+    }
+
+    @Test
+    void cancellingStopsWaitingForCrawlDelay() throws Exception {
+        responses.put("https://example.com/robots.txt", "User-agent: *\nCrawl-delay: 60\n");
+        RobotsRules robots = discovery.loadRobots("https://example.com/").get(5, TimeUnit.SECONDS);
+        assertThat(robots.getCrawlDelayMs()).isEqualTo(60_000);
+
+        // Следующий запрос к хосту разрешён не раньше чем через минуту
+        CompletableFuture<List<String>> sitemaps = discovery.loadSitemapUrls("https://example.com/", robots);
+        Thread.sleep(50);
+        assertThat(sitemaps).isNotDone();
+        sitemaps.cancel(false);
+        Thread.sleep(50);
+
+        assertThat(requested).containsExactly("https://example.com/robots.txt");
+    }
+
+    @Test
+    void crawlDelayIsLiftedForTheNextCrawl() throws Exception {
+        politeness.setCrawlDelay("https://example.com/", 60_000);
+        politeness.tryAcquire("example.com");
+        assertThat(politeness.tryAcquire("example.com")).isGreaterThan(1_000);
+
+        politeness.clearCrawlDelay("https://example.com/");
+        Thread.sleep(5);
+
+        assertThat(politeness.tryAcquire("example.com")).isZero();
+    }
+
+    @Test
+    void crawlDelayOfHostIsTheLongestAmongItsActiveSites() throws Exception {
+        politeness.setCrawlDelay("https://example.com/blog/", 60_000);
+        politeness.setCrawlDelay("https://example.com/shop/", 2_000);
+        politeness.tryAcquire("example.com");
+        assertThat(politeness.tryAcquire("example.com")).isGreaterThan(30_000);
+
+        // Окончание обхода одного сайта не снимает предел другого
+        politeness.clearCrawlDelay("https://example.com/shop/");
+        assertThat(politeness.tryAcquire("example.com")).isGreaterThan(30_000);
+
+        politeness.clearCrawlDelay("https://example.com/blog/");
+        Thread.sleep(5);
+        assertThat(politeness.tryAcquire("example.com")).isZero();
+    }
+}
@@ -0,0 +1,82 @@
+package searchengine.services.crawler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class UrlFingerprintSetTest {
+
+    @Test
+    void addReportsWhetherAddressIsNew() {
+        UrlFingerprintSet set = new UrlFingerprintSet();
+
+        assertThat(set.add("https://example.com/a")).isTrue();
+        assertThat(set.add("https://example.com/a")).isFalse();
+        assertThat(set.add("https://example.com/b")).isTrue();
+        assertThat(set.contains("https://example.com/a")).isTrue();
+        assertThat(set.contains("https://example.com/c")).isFalse();
+        assertThat(set.size()).isEqualTo(2);
+    }
+
+    @Test
+    void storesZeroFingerprint() {
+        UrlFingerprintSet set = new UrlFingerprintSet();
+
+        assertThat(set.add(0L)).isTrue();
+        assertThat(set.add(0L)).isFalse();
+        assertThat(set.size()).isEqualTo(1);
+    }
+
+    @Test
+    void matchesHashSetAcrossResizes() {
+        UrlFingerprintSet set = new UrlFingerprintSet();
+        Set<Long> model = new HashSet<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 50_000; i++) {
+            // Малый диапазон даёт и повторы, и рост таблиц сегментов
+            long fingerprint = random.nextInt(30_000) * 0x9E3779B97F4A7C15L;
+            if (fingerprint == 0) {
+                continue;
+            }
+            assertThat(set.add(fingerprint)).isEqualTo(model.add(fingerprint));
+        }
+        assertThat(set.size()).isEqualTo(model.size());
+    }
+
+    @Test
+    void concurrentAddsAcceptEachAddressOnce() throws Exception {
+        UrlFingerprintSet set = new UrlFingerprintSet();
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] tasks = new Future<?>[4];
+            for (int t = 0; t < tasks.length; t++) {
+                tasks[t] = pool.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        if (set.add("https://example.com/page/" + i)) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            for (Future<?> task : tasks) {
+                task.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(accepted.get()).isEqualTo(10_000);
+        assertThat(set.size()).isEqualTo(10_000);
+    }
+}
@@ -0,0 +1,59 @@
+package searchengine.services.crawler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class UrlNormalizerTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "HTTPS://Example.COM|https://example.com/",
+            "http://example.com:80/a|http://example.com/a",
+            "https://example.com:443/a|https://example.com/a",
+            "https://example.com:8443/a|https://example.com:8443/a",
+            "https://example.com/a/./b/../c|https://example.com/a/c",
+            "https://example.com/page#section|https://example.com/page",
+            "https://example.com/?b=2&a=1|https://example.com/?a=1&b=2",
+            "https://example.com/?utm_source=x&id=5&gclid=y|https://example.com/?id=5",
+            "https://example.com/?UTM_Medium=x|https://example.com/",
+            "https://example.com/a;jsessionid=ABC123?x=1|https://example.com/a?x=1",
+            "https://example.com/a?&&x=1|https://example.com/a?x=1",
+            "https://example.com/%d0%b0|https://example.com/%D0%B0",
+            "https://example.com/а|https://example.com/%D0%B0",
+            "https://example.com/a b|https://example.com/a%20b",
+            "'  https://example.com/x  '|https://example.com/x",
+    })
+    void normalizesToCanonicalForm(String url, String expected) {
+        assertThat(UrlNormalizer.normalize(url)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = {"  ", "mailto:info@example.com", "javascript:void(0)", "ftp://example.com/",
+            "/relative/path", "https://", "http://[broken"})
+    void rejectsNonHttpAddresses(String url) {
+        assertThat(UrlNormalizer.normalize(url)).isNull();
+    }
+
+    @Test
+    void normalizationIsIdempotent() {
+        String canonical = UrlNormalizer.normalize("HTTP://Example.com:80/Путь/?b=%c3%a9&a=1#top");
+
+        assertThat(UrlNormalizer.normalize(canonical)).isEqualTo(canonical);
+    }
+
+    @Test
+    void equivalentAddressesShareFingerprint() {
+        long first = UrlNormalizer.fingerprint(UrlNormalizer.normalize("https://EXAMPLE.com/a?y=2&x=1#f"));
+        long second = UrlNormalizer.fingerprint(UrlNormalizer.normalize("https://example.com:443/a?x=1&y=2"));
+        long other = UrlNormalizer.fingerprint(UrlNormalizer.normalize("https://example.com/b?x=1&y=2"));
+
+        assertThat(first).isEqualTo(second);
+        assertThat(first).isNotEqualTo(other);
+    }
+}
@@ -0,0 +1,70 @@
+package searchengine.services.lemma;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Микробенчмарк {@link LemmaCache} на потоке слов страницы (см.
+ * {@link TokenizerBenchmark#wordStream(int)}) из нескольких потоков, как при
+ * лемматизации пакетов обхода. Загрузчик не обращается к морфологии, поэтому
+ * измеряются только поиск в сегменте, блокировки и вытеснение.
+ * <p>
+ * Запуск: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=searchengine.services.lemma.LemmaCacheBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class LemmaCacheBenchmark {
+
+    // Весь словарь помещается в кеш / кеш в десять раз меньше словаря
+    @Param({"200000", "2000"})
+    public int cacheSize;
+
+    private String[] stream;
+    private LemmaCache cache;
+    private final Function<String, LemmaCache.WordInfo> loader = word -> new LemmaCache.WordInfo(word, false);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stream = TokenizerBenchmark.wordStream(1500);
+        cache = new LemmaCache(cacheSize);
+        for (String word : TokenizerBenchmark.vocabulary()) {
+            cache.get(word, loader);
+        }
+    }
+
+    // Одна страница: 1500 обращений к кешу
+    @Benchmark
+    public void page(Blackhole blackhole) {
+        for (String word : stream) {
+            blackhole.consume(cache.get(word, loader));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LemmaCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,103 @@
+package searchengine.services.lemma;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+class LemmaCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, LemmaCache.WordInfo> loader = word -> {
+        loads.incrementAndGet();
+        return new LemmaCache.WordInfo(word + "-лемма", false);
+    };
+
+    @Test
+    void loadsEachWordOnceWhileItFits() {
+        LemmaCache cache = new LemmaCache(1_000);
+
+        assertThat(cache.get("дома", loader).getLemma()).isEqualTo("дома-лемма");
+        assertThat(cache.get("дома", loader).getLemma()).isEqualTo("дома-лемма");
+        cache.get("домов", loader);
+
+        assertThat(loads.get()).isEqualTo(2);
+        LemmaCache.Stats stats = cache.stats();
+        assertThat(stats.getHits()).isEqualTo(1);
+        assertThat(stats.getMisses()).isEqualTo(2);
+        assertThat(stats.getSize()).isEqualTo(2);
+        assertThat(stats.getEvictions()).isZero();
+        assertThat(stats.getHitRate()).isEqualTo(1.0 / 3);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedWordOfSegment() {
+        // 128 мест на 64 сегмента — по два слова в сегменте
+        LemmaCache cache = new LemmaCache(128);
+        List<String> words = wordsOfOneSegment(3);
+        String first = words.get(0);
+        String second = words.get(1);
+        String third = words.get(2);
+
+        cache.get(first, loader);
+        cache.get(second, loader);
+        // Обращение делает первое слово самым свежим, вытесняется второе
+        cache.get(first, loader);
+        cache.get(third, loader);
+        int loadsBefore = loads.get();
+
+        cache.get(first, loader);
+        cache.get(third, loader);
+        assertThat(loads.get()).isEqualTo(loadsBefore);
+        cache.get(second, loader);
+        assertThat(loads.get()).isEqualTo(loadsBefore + 1);
+        assertThat(cache.stats().getEvictions()).isEqualTo(2);
+    }
+
+    @Test
+    void sizeStaysWithinCapacity() {
+        LemmaCache cache = new LemmaCache(640);
+
+        for (int i = 0; i < 10_000; i++) {
+            cache.get("слово" + i, loader);
+        }
+
+        LemmaCache.Stats stats = cache.stats();
+        assertThat(stats.getSize()).isLessThanOrEqualTo(640);
+        assertThat(stats.getSize() + stats.getEvictions()).isEqualTo(10_000);
+    }
+
+    @Test
+    void emptyStatsHaveZeroHitRate() {
+        assertThat(new LemmaCache(10).stats().getHitRate()).isZero();
+    }
+
+    @Test
+    void indexableOnlyForKnownNonServiceWords() {
+        assertThat(new LemmaCache.WordInfo("дом", false).isIndexable()).isTrue();
+        assertThat(new LemmaCache.WordInfo("и", true).isIndexable()).isFalse();
+        assertThat(LemmaCache.WordInfo.UNKNOWN.isIndexable()).isFalse();
+    }
+
+    // Сегмент выбирается так же, как в LemmaCache.segmentFor
+    private static List<String> wordsOfOneSegment(int count) {
+        List<String> words = new ArrayList<>();
+        int target = segment("слово0");
+        for (int i = 0; words.size() < count; i++) {
+            String word = "слово" + i;
+            if (segment(word) == target) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static int segment(String word) {
+        int hash = word.hashCode();
+        return (hash ^ (hash >>> 16)) & 63;
+    }
+}
@@ -0,0 +1,23 @@
+package searchengine.services.lemma;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class LemmaServiceTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"и|l СОЮЗ", "в|n ПРЕДЛ", "ой|o МЕЖД", "же|p ЧАСТ", "and|k CONJ", "in|n PREP",
+            "the|a ARTICLE", "oh|j INT", "to|q PART"})
+    void recognizesServicePartsOfSpeech(String morphInfo) {
+        assertThat(LemmaService.isServicePartOfSpeech(morphInfo)).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"дом|A С мр,ед,им", "бежать|a Г дст,инф", "house|a NOUN sg", "point|a NOUN sg",
+            "interest|a NOUN sg", "party|a NOUN sg", "print|b VERB inf", "|", "", "слово"})
+    void keepsContentWordsWhoseTagsMerelyContainServiceTags(String morphInfo) {
+        assertThat(LemmaService.isServicePartOfSpeech(morphInfo)).isFalse();
+    }
+}
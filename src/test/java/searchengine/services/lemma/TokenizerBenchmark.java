@@ -0,0 +1,139 @@
+package searchengine.services.lemma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Микробенчмарк разбора текста на слова: {@link Tokenizer} против прежних
+ * способов. Текст страницы генерируется из словаря с частотами по закону
+ * Ципфа, как в реальных текстах, с фиксированным seed, поэтому запуски
+ * сравнимы между собой.
+ * <p>
+ * Запуск: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=searchengine.services.lemma.TokenizerBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    static final int VOCABULARY_SIZE = 20_000;
+
+    // Около 10 КБ текста — типичная страница после извлечения текста
+    @Param({"1500"})
+    public int words;
+
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] stream = wordStream(words);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < stream.length; i++) {
+            String word = stream[i];
+            builder.append(i % 12 == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+            builder.append(i % 9 == 8 ? ". " : i % 5 == 4 ? ", " : " ");
+        }
+        text = builder.toString();
+    }
+
+    // Курсор по тексту: строка создаётся только для слова, которое пойдёт в словарь
+    @Benchmark
+    public void tokenizer(Blackhole blackhole) {
+        Tokenizer tokenizer = new Tokenizer(text);
+        while (tokenizer.next()) {
+            if (tokenizer.length() >= 2 && tokenizer.script() != Tokenizer.Script.OTHER) {
+                blackhole.consume(tokenizer.lowerCaseToken());
+            }
+        }
+    }
+
+    // Прежний разбор: посимвольное накопление слова в StringBuilder
+    @Benchmark
+    public void stringBuilderScan(Blackhole blackhole) {
+        StringBuilder word = new StringBuilder();
+        boolean valid = true;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? Character.toLowerCase(text.charAt(i)) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+                valid &= (c >= 'а' && c <= 'я') || c == 'ё' || (c >= 'a' && c <= 'z');
+            } else if (word.length() > 0) {
+                if (valid && word.length() >= 2) {
+                    blackhole.consume(word.toString());
+                }
+                word.setLength(0);
+                valid = true;
+            }
+        }
+    }
+
+    // Регулярные выражения, как в исходной версии сервиса
+    @Benchmark
+    public void regexSplit(Blackhole blackhole) {
+        for (String word : text.toLowerCase().replaceAll("[^а-яёa-z0-9\\s]", " ").trim().split("\\s+")) {
+            if (word.length() >= 2) {
+                blackhole.consume(word);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TokenizerBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    // Поток слов из словаря в 20 000 словоформ с частотами по закону Ципфа
+    static String[] wordStream(int count) {
+        Random random = new Random(17);
+        String[] vocabulary = vocabulary(random, VOCABULARY_SIZE);
+        String[] stream = new String[count];
+        for (int i = 0; i < count; i++) {
+            stream[i] = vocabulary[zipf(random, vocabulary.length)];
+        }
+        return stream;
+    }
+
+    static String[] vocabulary() {
+        return vocabulary(new Random(17), VOCABULARY_SIZE);
+    }
+
+    private static String[] vocabulary(Random random, int size) {
+        String letters = "абвгдеёжзийклмнопрстуфхцчшщъыьэюя";
+        String[] vocabulary = new String[size];
+        for (int i = 0; i < size; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 2 + random.nextInt(9);
+            for (int j = 0; j < length; j++) {
+                word.append(letters.charAt(random.nextInt(letters.length())));
+            }
+            vocabulary[i] = word.toString();
+        }
+        return vocabulary;
+    }
+
+    // Ранг слова с вероятностью ~1/rank (приближение обратным преобразованием)
+    private static int zipf(Random random, int size) {
+        double rank = Math.exp(random.nextDouble() * Math.log(size + 1.0)) - 1;
+        return Math.min(size - 1, (int) rank);
+    }
+}
@@ -0,0 +1,75 @@
+package searchengine.services.lemma;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TokenizerTest {
+
+    @Test
+    void splitsOnNonLetterOrDigitCharacters() {
+        assertThat(tokens("Привет, мир!  Hello-world\t42\nend.")).containsExactly("привет", "мир", "hello", "world",
+                "42", "end");
+    }
+
+    @Test
+    void reportsTokenBoundariesInSourceText() {
+        Tokenizer tokenizer = new Tokenizer("  ab, cde");
+
+        assertThat(tokenizer.next()).isTrue();
+        assertThat(tokenizer.start()).isEqualTo(2);
+        assertThat(tokenizer.end()).isEqualTo(4);
+        assertThat(tokenizer.length()).isEqualTo(2);
+        assertThat(tokenizer.next()).isTrue();
+        assertThat(tokenizer.start()).isEqualTo(6);
+        assertThat(tokenizer.end()).isEqualTo(9);
+        assertThat(tokenizer.next()).isFalse();
+        assertThat(tokenizer.next()).isFalse();
+    }
+
+    @Test
+    void classifiesScriptOfEachToken() {
+        Tokenizer tokenizer = new Tokenizer("Ёлка tree ёlka 2024 naïve");
+        List<Tokenizer.Script> scripts = new ArrayList<>();
+        while (tokenizer.next()) {
+            scripts.add(tokenizer.script());
+        }
+
+        assertThat(scripts).containsExactly(Tokenizer.Script.CYRILLIC, Tokenizer.Script.LATIN,
+                Tokenizer.Script.OTHER, Tokenizer.Script.OTHER, Tokenizer.Script.OTHER);
+    }
+
+    @Test
+    void emptyAndSeparatorOnlyTextsHaveNoTokens() {
+        assertThat(tokens("")).isEmpty();
+        assertThat(tokens(" \n\t—…,.!")).isEmpty();
+    }
+
+    @Test
+    void lowerCasesOnlyTheCurrentToken() {
+        Tokenizer tokenizer = new Tokenizer("ЗАГОЛОВОК Текст");
+        tokenizer.next();
+
+        assertThat(tokenizer.lowerCaseToken()).isEqualTo("заголовок");
+    }
+
+    @Test
+    void scriptOfWholeWord() {
+        assertThat(Tokenizer.scriptOf("дом")).isEqualTo(Tokenizer.Script.CYRILLIC);
+        assertThat(Tokenizer.scriptOf("House")).isEqualTo(Tokenizer.Script.LATIN);
+        assertThat(Tokenizer.scriptOf("домhouse")).isEqualTo(Tokenizer.Script.OTHER);
+        assertThat(Tokenizer.scriptOf("")).isEqualTo(Tokenizer.Script.OTHER);
+    }
+
+    private static List<String> tokens(String text) {
+        Tokenizer tokenizer = new Tokenizer(text);
+        List<String> tokens = new ArrayList<>();
+        while (tokenizer.next()) {
+            tokens.add(tokenizer.lowerCaseToken());
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,125 @@
+package searchengine.services.search;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import searchengine.services.crawler.PageUpdate;
+
+/**
+ * Наивная модель поискового индекса для сравнения с настоящими: текущие леммы
+ * каждой страницы в словаре, поиск полным перебором страниц. Порядок выдачи —
+ * как у {@link TopHits}: по убыванию релевантности, при равенстве по id.
+ */
+final class IndexModel {
+
+    private final Map<Long, Map<String, Float>> pages = new TreeMap<>();
+
+    void apply(PageUpdate page) {
+        if (page.isRemoval()) {
+            pages.remove(page.pageId());
+            return;
+        }
+        Map<String, Float> lemmas = new HashMap<>();
+        for (int i = 0; i < page.lemmas().length; i++) {
+            lemmas.put(page.lemmas()[i], page.ranks()[i]);
+        }
+        pages.put(page.pageId(), lemmas);
+    }
+
+    Map<Long, Map<String, Float>> pages() {
+        return pages;
+    }
+
+    int frequency(String lemma) {
+        return (int) pages.values().stream().filter(lemmas -> lemmas.containsKey(lemma)).count();
+    }
+
+    // Леммы, которых нет, и леммы с частотой больше maxFrequency не учитываются
+    List<SearchHit> search(Collection<String> lemmas, int maxFrequency) {
+        List<String> terms = new ArrayList<>();
+        for (String lemma : lemmas) {
+            int frequency = frequency(lemma);
+            if (frequency > 0 && frequency <= maxFrequency) {
+                terms.add(lemma);
+            }
+        }
+        List<SearchHit> hits = new ArrayList<>();
+        if (terms.isEmpty()) {
+            return hits;
+        }
+        pages.forEach((pageId, pageLemmas) -> {
+            if (pageLemmas.keySet().containsAll(terms)) {
+                float relevance = 0;
+                for (String term : terms) {
+                    relevance += pageLemmas.get(term);
+                }
+                hits.add(new SearchHit(pageId, relevance));
+            }
+        });
+        hits.sort(Comparator.comparing(SearchHit::relevance, Comparator.reverseOrder())
+                .thenComparing(SearchHit::pageId));
+        return hits;
+    }
+
+    static List<SearchHit> collect(Consumer<TopHits> search) {
+        TopHits hits = new TopHits(0, 1_000_000);
+        search.accept(hits);
+        return hits.window(0);
+    }
+
+    /**
+     * Записывает страницы в файл сегмента так же, как {@link SegmentIndex}:
+     * страницы лемм по возрастанию id, удалённые страницы только в covered.
+     */
+    static Segment writeSegment(Path file, Collection<PageUpdate> pages, long[] covered) throws IOException {
+        Map<String, TreeMap<Long, Float>> postings = new TreeMap<>();
+        for (PageUpdate page : pages) {
+            if (page.isRemoval()) {
+                continue;
+            }
+            for (int i = 0; i < page.lemmas().length; i++) {
+                postings.computeIfAbsent(page.lemmas()[i], lemma -> new TreeMap<>())
+                        .put(page.pageId(), page.ranks()[i]);
+            }
+        }
+        try (SegmentWriter writer = new SegmentWriter(file)) {
+            for (Map.Entry<String, TreeMap<Long, Float>> term : postings.entrySet()) {
+                writer.startTerm(term.getKey());
+                for (Map.Entry<Long, Float> posting : term.getValue().entrySet()) {
+                    writer.add(posting.getKey(), posting.getValue());
+                }
+                writer.endTerm();
+            }
+            writer.finish(covered);
+        }
+        return Segment.open(file);
+    }
+
+    /**
+     * Страница со случайным набором лемм словаря lemma0..lemma(vocabulary-1):
+     * младшие леммы встречаются чаще. rank — целое число вхождений, поэтому суммы
+     * совпадают при любом порядке сложения и хранятся в сегменте без потерь.
+     */
+    static PageUpdate randomPage(Random random, long pageId, int vocabulary, int lemmasPerPage) {
+        Map<String, Float> lemmas = new TreeMap<>();
+        for (int i = 0; i < lemmasPerPage; i++) {
+            int rank = (int) Math.min(vocabulary - 1, Math.exp(random.nextDouble() * Math.log(vocabulary + 1.0)) - 1);
+            lemmas.put("lemma" + rank, 1f + random.nextInt(4));
+        }
+        String[] names = lemmas.keySet().toArray(new String[0]);
+        float[] ranks = new float[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ranks[i] = lemmas.get(names[i]);
+        }
+        return new PageUpdate(pageId, names, ranks);
+    }
+}
@@ -0,0 +1,137 @@
+package searchengine.services.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PostingCursorTest {
+
+    @TempDir
+    Path dir;
+    private int segments;
+
+    @Test
+    void nextReadsAllPagesWithRanks() throws IOException {
+        Segment segment = segment(new long[] {3, 7, 1_000_000_000_000L}, new float[] {1f, 2.5f, 0.25f});
+        PostingCursor cursor = segment.cursor(segment.findTerm(bytes("дом")));
+
+        assertThat(cursor.count()).isEqualTo(3);
+        assertThat(cursor.next()).isTrue();
+        assertThat(cursor.doc()).isEqualTo(3);
+        assertThat(cursor.rank()).isEqualTo(1f);
+        assertThat(cursor.next()).isTrue();
+        assertThat(cursor.rank()).isEqualTo(2.5f);
+        assertThat(cursor.next()).isTrue();
+        assertThat(cursor.doc()).isEqualTo(1_000_000_000_000L);
+        assertThat(cursor.rank()).isEqualTo(0.25f);
+        assertThat(cursor.next()).isFalse();
+    }
+
+    @Test
+    void advanceSkipsToBlockWithTarget() throws IOException {
+        // Три блока: 2..256, 258..512, 514..600
+        PostingCursor cursor = cursor(evenDocs(300));
+
+        assertThat(cursor.advance(259)).isTrue();
+        assertThat(cursor.doc()).isEqualTo(260);
+        // Цель не дальше текущей страницы — курсор не двигается
+        assertThat(cursor.advance(100)).isTrue();
+        assertThat(cursor.doc()).isEqualTo(260);
+        assertThat(cursor.advance(514)).isTrue();
+        assertThat(cursor.doc()).isEqualTo(514);
+        assertThat(cursor.next()).isTrue();
+        assertThat(cursor.doc()).isEqualTo(516);
+    }
+
+    @Test
+    void advancePastLastBlockExhaustsCursor() throws IOException {
+        PostingCursor cursor = cursor(evenDocs(300));
+
+        assertThat(cursor.advance(601)).isFalse();
+        assertThat(cursor.next()).isFalse();
+        assertThat(cursor.advance(602)).isFalse();
+
+        PostingCursor started = cursor(evenDocs(300));
+        assertThat(started.advance(600)).isTrue();
+        assertThat(started.doc()).isEqualTo(600);
+        assertThat(started.advance(601)).isFalse();
+        assertThat(started.next()).isFalse();
+    }
+
+    @Test
+    void advanceWithinLastBlockPastItsEnd() throws IOException {
+        PostingCursor cursor = cursor(evenDocs(300));
+
+        assertThat(cursor.advance(550)).isTrue();
+        assertThat(cursor.advance(10_000)).isFalse();
+        assertThat(cursor.next()).isFalse();
+    }
+
+    @Test
+    void advanceMatchesLinearScan() throws IOException {
+        Random random = new Random(23);
+        for (int round = 0; round < 40; round++) {
+            long[] docs = new long[1 + random.nextInt(1_000)];
+            long doc = 0;
+            for (int i = 0; i < docs.length; i++) {
+                doc += 1 + random.nextInt(20);
+                docs[i] = doc;
+            }
+            PostingCursor cursor = cursor(docs);
+            int position = 0;
+            long target = 0;
+            while (true) {
+                target += random.nextInt(random.nextBoolean() ? 5 : 2_000);
+                while (position < docs.length && docs[position] < target) {
+                    position++;
+                }
+                boolean found = cursor.advance(target);
+                assertThat(found).as("цель %d", target).isEqualTo(position < docs.length);
+                if (!found) {
+                    break;
+                }
+                assertThat(cursor.doc()).isEqualTo(docs[position]);
+            }
+        }
+    }
+
+    private PostingCursor cursor(long[] docs) throws IOException {
+        float[] ranks = new float[docs.length];
+        Arrays.fill(ranks, 1f);
+        Segment segment = segment(docs, ranks);
+        return segment.cursor(segment.findTerm(bytes("дом")));
+    }
+
+    // Каждый сегмент в своём файле: перезапись отображённого в память файла недопустима
+    private Segment segment(long[] docs, float[] ranks) throws IOException {
+        Path file = dir.resolve(segments++ + ".seg");
+        try (SegmentWriter writer = new SegmentWriter(file)) {
+            writer.startTerm("дом");
+            for (int i = 0; i < docs.length; i++) {
+                writer.add(docs[i], ranks[i]);
+            }
+            writer.endTerm();
+            writer.finish(new long[0]);
+        }
+        return Segment.open(file);
+    }
+
+    private static long[] evenDocs(int count) {
+        long[] docs = new long[count];
+        for (int i = 0; i < count; i++) {
+            docs[i] = 2L * (i + 1);
+        }
+        return docs;
+    }
+
+    private static byte[] bytes(String lemma) {
+        return lemma.getBytes(StandardCharsets.UTF_8);
+    }
+}
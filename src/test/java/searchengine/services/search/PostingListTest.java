@@ -0,0 +1,98 @@
+package searchengine.services.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class PostingListTest {
+
+    @Test
+    void gallopFindsFirstDocNotLessThanTarget() {
+        PostingList list = list(2, 4, 8, 16, 32);
+
+        assertThat(list.gallop(0, 1)).isZero();
+        assertThat(list.gallop(0, 2)).isZero();
+        assertThat(list.gallop(0, 3)).isEqualTo(1);
+        assertThat(list.gallop(0, 16)).isEqualTo(3);
+        assertThat(list.gallop(0, 17)).isEqualTo(4);
+        assertThat(list.gallop(0, 32)).isEqualTo(4);
+    }
+
+    @Test
+    void gallopNeverMovesBackBeforeFrom() {
+        PostingList list = list(2, 4, 8, 16, 32);
+
+        assertThat(list.gallop(3, 2)).isEqualTo(3);
+        assertThat(list.gallop(3, 20)).isEqualTo(4);
+    }
+
+    @Test
+    void gallopPastLastDocReturnsSize() {
+        PostingList list = list(2, 4, 8);
+
+        assertThat(list.gallop(0, 9)).isEqualTo(3);
+        assertThat(list.gallop(2, 100)).isEqualTo(3);
+        assertThat(list.gallop(3, 1)).isEqualTo(3);
+        assertThat(new PostingList().gallop(0, 1)).isZero();
+    }
+
+    @Test
+    void gallopMatchesLinearScan() {
+        Random random = new Random(22);
+        for (int round = 0; round < 200; round++) {
+            int size = random.nextInt(300);
+            int[] docs = new int[size];
+            int doc = 0;
+            for (int i = 0; i < size; i++) {
+                doc += 1 + random.nextInt(5);
+                docs[i] = doc;
+            }
+            PostingList list = list(docs);
+            for (int probe = 0; probe < 50; probe++) {
+                int from = random.nextInt(size + 1);
+                int target = random.nextInt(doc + 10);
+
+                assertThat(list.gallop(from, target)).as("size %d, from %d, target %d", size, from, target)
+                        .isEqualTo(linearScan(docs, from, target));
+            }
+        }
+    }
+
+    @Test
+    void compactRenumbersDocsAndDropsDeleted() {
+        PostingList list = new PostingList();
+        list.add(0, 1f);
+        list.add(2, 2f);
+        list.add(3, 3f);
+        list.add(5, 4f);
+        list.onDocDeleted();
+        list.onDocDeleted();
+
+        list.compact(new int[] {0, -1, -1, 1, -1, -1});
+
+        assertThat(list.size()).isEqualTo(2);
+        assertThat(list.live()).isEqualTo(2);
+        assertThat(list.doc(0)).isZero();
+        assertThat(list.rank(0)).isEqualTo(1f);
+        assertThat(list.doc(1)).isEqualTo(1);
+        assertThat(list.rank(1)).isEqualTo(3f);
+    }
+
+    private static int linearScan(int[] docs, int from, int target) {
+        int position = from;
+        while (position < docs.length && docs[position] < target) {
+            position++;
+        }
+        return position;
+    }
+
+    private static PostingList list(int... docs) {
+        PostingList list = new PostingList();
+        for (int doc : docs) {
+            list.add(doc, 1f);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,216 @@
+package searchengine.services.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import searchengine.TestDatabase;
+import searchengine.repositories.IndexRepository;
+import searchengine.services.crawler.PageUpdate;
+
+/**
+ * Один и тот же корпус ищется всеми путями поиска: индексом в памяти,
+ * сегментами (базовый и добавочные с заменёнными страницами) и запросом к БД.
+ * Окна выдачи должны совпадать, включая порядок страниц с равной релевантностью,
+ * и при пороге частоты лемм: частота — число действительных страниц леммы.
+ */
+class SearchPathsConsistencyTest {
+
+    private static final int VOCABULARY = 40;
+    private static final int[][] WINDOWS = {{0, 10}, {5, 10}, {0, 1_000}, {30, 7}, {10_000, 10}};
+    // Лемма есть только в базовом сегменте: все её страницы переписаны первым пакетом
+    private static final String VANISHED = "исчезнувшая";
+    // Часть страниц леммы переписана с ней же: строк в сегментах больше, чем страниц
+    private static final String BOUNDARY = "пограничная";
+
+    @TempDir
+    Path dir;
+
+    private final IndexModel model = new IndexModel();
+    private final SiteIndex memory = new SiteIndex(0);
+    private SegmentSet segments;
+    private final List<List<String>> queries = new ArrayList<>();
+    // Без порога, ровно на частоте BOUNDARY и на единицу ниже
+    private final List<Integer> maxFrequencies = new ArrayList<>();
+
+    @BeforeEach
+    void buildCorpus() throws IOException {
+        Random random = new Random(2022);
+        List<PageUpdate> initial = new ArrayList<>();
+        for (long pageId = 1; pageId <= 600; pageId++) {
+            PageUpdate page = IndexModel.randomPage(random, pageId, VOCABULARY, 8);
+            initial.add(pageId <= 5 ? withLemma(page, VANISHED) : pageId >= 10 && pageId < 20
+                    ? withLemma(page, BOUNDARY) : page);
+        }
+        initial.forEach(memory::load);
+        initial.forEach(model::apply);
+        memory.finishLoading();
+        segments = new SegmentSet(0, List.of(IndexModel.writeSegment(dir.resolve("0.seg"), initial, new long[0])));
+
+        for (int batch = 1; batch <= 3; batch++) {
+            Map<Long, PageUpdate> updates = new LinkedHashMap<>();
+            for (int i = 0; i < 60; i++) {
+                long pageId = 1 + random.nextInt(650);
+                updates.put(pageId, random.nextInt(6) == 0 ? PageUpdate.removal(pageId)
+                        : IndexModel.randomPage(random, pageId, VOCABULARY, 8));
+            }
+            if (batch == 1) {
+                for (long pageId = 1; pageId <= 5; pageId++) {
+                    updates.put(pageId, IndexModel.randomPage(random, pageId, VOCABULARY, 8));
+                }
+                for (long pageId = 10; pageId < 15; pageId++) {
+                    updates.put(pageId, withLemma(IndexModel.randomPage(random, pageId, VOCABULARY, 8), BOUNDARY));
+                }
+            }
+            memory.update(updates.values());
+            updates.values().forEach(model::apply);
+            long[] covered = updates.keySet().stream().mapToLong(Long::longValue).toArray();
+            segments = segments.with(IndexModel.writeSegment(dir.resolve(batch + ".seg"), updates.values(), covered));
+        }
+
+        queries.add(List.of("lemma0"));
+        queries.add(List.of("lemma1", "lemma2"));
+        queries.add(List.of("lemma3", "lemma30", "lemma1"));
+        queries.add(List.of("lemma5", "неизвестная"));
+        queries.add(List.of("неизвестная"));
+        queries.add(List.of(VANISHED));
+        queries.add(List.of(VANISHED, "lemma1"));
+        queries.add(List.of(BOUNDARY));
+        queries.add(List.of(BOUNDARY, "lemma0"));
+        queries.add(List.of(BOUNDARY, "lemma3", "lemma20"));
+        for (int i = 0; i < 20; i++) {
+            queries.add(List.of("lemma" + random.nextInt(VOCABULARY), "lemma" + random.nextInt(VOCABULARY / 4)));
+        }
+
+        int boundary = model.frequency(BOUNDARY);
+        maxFrequencies.addAll(List.of(Integer.MAX_VALUE, boundary, boundary - 1));
+    }
+
+    @Test
+    void segmentsCountOnlyLivePages() {
+        assertThat(model.frequency(VANISHED)).isZero();
+        assertThat(segments.frequency(VANISHED.getBytes(StandardCharsets.UTF_8))).isZero();
+        assertThat(model.frequency(BOUNDARY)).isPositive();
+        assertThat(segments.frequency(BOUNDARY.getBytes(StandardCharsets.UTF_8)))
+                .isEqualTo(model.frequency(BOUNDARY));
+    }
+
+    @Test
+    void memoryAndSegmentsReturnSameWindowsAsModel() {
+        for (int maxFrequency : maxFrequencies) {
+            for (List<String> query : queries) {
+                List<SearchHit> expected = model.search(query, maxFrequency);
+                for (int[] window : WINDOWS) {
+                    TopHits fromMemory = new TopHits(window[0], window[1]);
+                    memory.search(query, maxFrequency, fromMemory);
+                    TopHits fromSegments = new TopHits(window[0], window[1]);
+                    segments.search(bytes(query), maxFrequency, fromSegments);
+
+                    List<SearchHit> expectedWindow = slice(expected, window[0], window[1]);
+                    assertThat(fromMemory.window(window[0])).as("память: %s %s ≤%d", query, window, maxFrequency)
+                            .isEqualTo(expectedWindow);
+                    assertThat(fromSegments.window(window[0]))
+                            .as("сегменты: %s %s ≤%d", query, window, maxFrequency)
+                            .isEqualTo(expectedWindow);
+                    assertThat(fromMemory.total()).isEqualTo(expected.size());
+                    assertThat(fromSegments.total()).isEqualTo(expected.size());
+                }
+            }
+        }
+    }
+
+    @Test
+    void databaseReturnsSameWindowsAsMemory() throws Exception {
+        try (TestDatabase database = TestDatabase.create()) {
+            seed(database.jdbcTemplate());
+            NamedParameterJdbcTemplate jdbcTemplate = new NamedParameterJdbcTemplate(database.jdbcTemplate());
+
+            for (int maxFrequency : maxFrequencies) {
+                for (List<String> query : queries) {
+                    // Как при поиске по БД: леммы без строки в lemma и слишком частые отбрасываются
+                    List<Long> ids = jdbcTemplate.queryForList("SELECT lemma_id FROM lemma WHERE lemma IN (:lemmas) "
+                            + "AND frequency <= :maxFrequency", Map.of("lemmas", query, "maxFrequency", maxFrequency),
+                            Long.class);
+                    for (int[] window : WINDOWS) {
+                        TopHits fromMemory = new TopHits(window[0], window[1]);
+                        memory.search(query, maxFrequency, fromMemory);
+                        List<SearchHit> expected = fromMemory.window(window[0]);
+                        List<Map<String, Object>> rows = ids.isEmpty() ? List.of()
+                                : jdbcTemplate.queryForList(IndexRepository.RANKED_PAGES,
+                                        Map.of("lemmaIds", ids, "limit", window[1], "offset", window[0]));
+
+                        assertThat(rows.stream().map(row -> ((Number) row.get("pageId")).longValue()).toList())
+                                .as("БД: %s %s ≤%d", query, window, maxFrequency)
+                                .isEqualTo(expected.stream().map(SearchHit::pageId).toList());
+                        for (int i = 0; i < rows.size(); i++) {
+                            assertThat(((Number) rows.get(i).get("relevance")).doubleValue())
+                                    .isCloseTo(expected.get(i).relevance() / fromMemory.maxRelevance(), within(1e-6));
+                            assertThat(((Number) rows.get(i).get("total")).longValue())
+                                    .isEqualTo(fromMemory.total());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Итоговое состояние корпуса в таблицах page, lemma и index; строк лемм с нулевой
+    // частотой нет, как после их удаления писателем
+    private void seed(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("INSERT INTO site (site_id, status, status_time, url, name, active_generation) "
+                + "VALUES (1, 'INDEXED', now(), 'https://example.com/', 'example', 0)");
+        Map<String, Long> lemmaIds = new HashMap<>();
+        List<Object[]> pages = new ArrayList<>();
+        List<Object[]> postings = new ArrayList<>();
+        model.pages().forEach((pageId, lemmas) -> {
+            pages.add(new Object[] {pageId, "/page" + pageId});
+            lemmas.forEach((lemma, rank) -> postings.add(new Object[] {pageId, lemma, rank}));
+        });
+        jdbcTemplate.batchUpdate("INSERT INTO page (page_id, site_id, path, code, generation) VALUES (?, 1, ?, 200, 0)",
+                pages);
+        Set<String> lemmas = new TreeSet<>();
+        model.pages().values().forEach(pageLemmas -> lemmas.addAll(pageLemmas.keySet()));
+        for (String lemma : lemmas) {
+            lemmaIds.put(lemma, jdbcTemplate.queryForObject("INSERT INTO lemma (site_id, generation, lemma, frequency) "
+                    + "VALUES (1, 0, ?, ?) RETURNING lemma_id", Long.class, lemma, model.frequency(lemma)));
+        }
+        List<Object[]> indexRows = postings.stream()
+                .map(row -> new Object[] {row[0], lemmaIds.get((String) row[1]), ((Float) row[2]).doubleValue()})
+                .toList();
+        jdbcTemplate.batchUpdate("INSERT INTO \"index\" (page_id, lemma_id, \"rank\") VALUES (?, ?, ?)", indexRows);
+    }
+
+    private static PageUpdate withLemma(PageUpdate page, String lemma) {
+        String[] lemmas = Arrays.copyOf(page.lemmas(), page.lemmas().length + 1);
+        float[] ranks = Arrays.copyOf(page.ranks(), page.ranks().length + 1);
+        lemmas[lemmas.length - 1] = lemma;
+        ranks[ranks.length - 1] = 2f;
+        return new PageUpdate(page.pageId(), lemmas, ranks);
+    }
+
+    private static List<SearchHit> slice(List<SearchHit> hits, int offset, int limit) {
+        return hits.subList(Math.min(offset, hits.size()), Math.min(hits.size(), offset + limit));
+    }
+
+    private static List<byte[]> bytes(List<String> lemmas) {
+        return lemmas.stream().map(lemma -> lemma.getBytes(StandardCharsets.UTF_8)).toList();
+    }
+}
@@ -0,0 +1,70 @@
+package searchengine.services.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import searchengine.config.SearchEngineProperties;
+import searchengine.repositories.BulkIndexRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.services.crawler.GenerationActivatedEvent;
+import searchengine.services.crawler.IndexUpdatedEvent;
+import searchengine.services.crawler.PageUpdate;
+
+class SegmentIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void siteWithUpdateRejectedDuringShutdownIsNotMarkedClean() throws Exception {
+        SearchEngineProperties props = new SearchEngineProperties();
+        props.getSearch().setSegmentDir(dir.toString());
+        BulkIndexRepository bulkIndexRepository = mock(BulkIndexRepository.class);
+        CountDownLatch scanning = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Построение сегмента второго сайта держит поток записи, пока идёт остановка
+        doAnswer(invocation -> {
+            scanning.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(bulkIndexRepository).scanPostingsByLemma(eq(2L), anyInt(), any());
+        SegmentIndex index = new SegmentIndex(props, mock(SiteRepository.class), bulkIndexRepository);
+
+        index.onGenerationActivated(new GenerationActivatedEvent(1L, 0));
+        index.onGenerationActivated(new GenerationActivatedEvent(2L, 0));
+        assertThat(scanning.await(10, TimeUnit.SECONDS)).isTrue();
+        Thread stopping = new Thread(() -> {
+            try {
+                index.shutdown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stopping.start();
+        // Остановка ждёт завершения записи, новые задачи уже не принимаются
+        while (stopping.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+        index.onIndexUpdated(new IndexUpdatedEvent(1L, 0,
+                List.of(new PageUpdate(7, new String[] {"дом"}, new float[] {1f}))));
+        release.countDown();
+        stopping.join(10_000);
+
+        assertThat(dir.resolve("site-1").resolve("manifest")).exists();
+        assertThat(Files.exists(dir.resolve("site-1").resolve("clean"))).isFalse();
+        assertThat(dir.resolve("site-2").resolve("clean")).exists();
+    }
+}
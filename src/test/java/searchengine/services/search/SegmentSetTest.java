@@ -0,0 +1,176 @@
+package searchengine.services.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import searchengine.services.crawler.PageUpdate;
+
+class SegmentSetTest {
+
+    private static final int VOCABULARY = 40;
+
+    @TempDir
+    Path dir;
+    private int files;
+
+    @Test
+    void emptyCoveredListShadowsNothing() throws IOException {
+        SegmentSet set = new SegmentSet(0, List.of(segment(new long[0], page(1, "дом", 1), page(2, "дом", 2))));
+        Segment added = segment(new long[0], page(3, "дом", 3));
+        Segment empty = segment(new long[0]);
+        set = set.with(added).with(empty);
+
+        assertThat(added.covered()).isEmpty();
+        assertThat(added.covers(1)).isFalse();
+        assertThat(empty.termCount()).isZero();
+        assertThat(search(set, "дом"))
+                .containsExactly(new SearchHit(3, 3f), new SearchHit(2, 2f), new SearchHit(1, 1f));
+
+        SegmentSet merged = merge(set, 1, 3);
+        assertThat(merged.getSegments()).hasSize(2);
+        assertThat(merged.getSegments().get(1).covered()).isEmpty();
+        assertThat(search(merged, "дом"))
+                .containsExactly(new SearchHit(3, 3f), new SearchHit(2, 2f), new SearchHit(1, 1f));
+    }
+
+    @Test
+    void mergeFromBaseDropsShadowedRowsAndCoversNothing() throws IOException {
+        SegmentSet set = new SegmentSet(0, List.of(segment(new long[0], page(1, "дом", 1), page(2, "дом", 2))))
+                .with(segment(new long[] {1}, page(1, "кот", 1)))
+                .with(segment(new long[] {2}));
+
+        SegmentSet merged = merge(set, 0, 3);
+
+        Segment result = merged.getSegments().get(0);
+        assertThat(merged.getSegments()).hasSize(1);
+        assertThat(result.covered()).isEmpty();
+        assertThat(result.getPostingCount()).isEqualTo(1);
+        assertThat(search(merged, "дом")).isEmpty();
+        assertThat(search(merged, "кот")).containsExactly(new SearchHit(1, 1f));
+    }
+
+    @Test
+    void mergeOfDeltasKeepsTheirCoveredPages() throws IOException {
+        SegmentSet set = new SegmentSet(0, List.of(segment(new long[0], page(5, "дом", 1), page(7, "дом", 1))))
+                .with(segment(new long[] {5}, page(5, "кот", 1)))
+                .with(segment(new long[] {6}, page(6, "дом", 2)));
+
+        SegmentSet merged = merge(set, 1, 3);
+
+        assertThat(merged.getSegments().get(1).covered()).containsExactly(5, 6);
+        assertThat(search(merged, "дом")).containsExactly(new SearchHit(6, 2f), new SearchHit(7, 1f));
+        assertThat(search(merged, "кот")).containsExactly(new SearchHit(5, 1f));
+    }
+
+    @Test
+    void pageShadowedInSeveralSegmentsKeepsOnlyNewestVersion() throws IOException {
+        SegmentSet set = new SegmentSet(0, List.of(segment(new long[0], page(5, "дом", 1), page(9, "дом", 1))))
+                .with(segment(new long[] {5}, page(5, "дом", 2)))
+                .with(segment(new long[] {5}, page(5, "дом", 3)))
+                .with(segment(new long[] {9}, page(9, "дом", 2)))
+                .with(segment(new long[] {9}));
+
+        assertThat(search(set, "дом")).containsExactly(new SearchHit(5, 3f));
+        for (int from = 0; from < 4; from++) {
+            for (int to = from + 2; to <= 5; to++) {
+                assertThat(search(merge(set, from, to), "дом")).as("слияние %d..%d", from, to)
+                        .containsExactly(new SearchHit(5, 3f));
+            }
+        }
+    }
+
+    @Test
+    void randomSegmentsAndMergesMatchNaiveModel() throws IOException {
+        Random random = new Random(23);
+        IndexModel model = new IndexModel();
+        List<PageUpdate> initial = new ArrayList<>();
+        for (long pageId = 1; pageId <= 1_500; pageId++) {
+            initial.add(IndexModel.randomPage(random, pageId, VOCABULARY, 8));
+        }
+        initial.forEach(model::apply);
+        SegmentSet set = new SegmentSet(0, List.of(segment(initial, new long[0])));
+        assertSameResults(random, model, set);
+
+        for (int batch = 0; batch < 15; batch++) {
+            // Одни и те же страницы меняются в нескольких сегментах подряд
+            Map<Long, PageUpdate> updates = new LinkedHashMap<>();
+            for (int i = 0; i < 80; i++) {
+                long pageId = 1 + random.nextInt(random.nextBoolean() ? 100 : 1_600);
+                updates.put(pageId, random.nextInt(6) == 0 ? PageUpdate.removal(pageId)
+                        : IndexModel.randomPage(random, pageId, VOCABULARY, 8));
+            }
+            updates.values().forEach(model::apply);
+            set = set.with(segment(updates.values(), updates.keySet().stream().mapToLong(Long::longValue).toArray()));
+            assertSameResults(random, model, set);
+
+            if (set.getSegments().size() > 4) {
+                int from = random.nextInt(set.getSegments().size() - 1);
+                int to = from + 2 + random.nextInt(set.getSegments().size() - from - 1);
+                set = merge(set, from, to);
+                assertSameResults(random, model, set);
+            }
+        }
+
+        SegmentSet merged = merge(set, 0, set.getSegments().size());
+        long livePostings = model.pages().values().stream().mapToLong(Map::size).sum();
+        assertThat(merged.getSegments().get(0).getPostingCount()).isEqualTo(livePostings);
+        assertThat(merged.getSegments().get(0).covered()).isEmpty();
+        assertSameResults(random, model, merged);
+    }
+
+    private static void assertSameResults(Random random, IndexModel model, SegmentSet set) {
+        for (int i = 0; i < VOCABULARY; i++) {
+            String lemma = "lemma" + i;
+            assertThat(set.frequency(lemma.getBytes(StandardCharsets.UTF_8))).as("частота %s", lemma)
+                    .isEqualTo(model.frequency(lemma));
+        }
+        for (int query = 0; query < 20; query++) {
+            List<String> lemmas = new ArrayList<>();
+            int size = 1 + random.nextInt(3);
+            for (int i = 0; i < size; i++) {
+                lemmas.add("lemma" + random.nextInt(VOCABULARY + 2));
+            }
+
+            assertThat(search(set, lemmas.toArray(new String[0]))).as("запрос %s", lemmas)
+                    .isEqualTo(model.search(lemmas, Integer.MAX_VALUE));
+        }
+    }
+
+    private SegmentSet merge(SegmentSet set, int from, int to) throws IOException {
+        Path file = dir.resolve(files++ + ".seg");
+        SegmentMerger.merge(set, from, to, file);
+        return set.replace(from, to, Segment.open(file));
+    }
+
+    private Segment segment(long[] covered, PageUpdate... pages) throws IOException {
+        return segment(List.of(pages), covered);
+    }
+
+    private Segment segment(Collection<PageUpdate> pages, long[] covered) throws IOException {
+        return IndexModel.writeSegment(dir.resolve(files++ + ".seg"), pages, covered);
+    }
+
+    private static List<SearchHit> search(SegmentSet set, String... lemmas) {
+        List<byte[]> bytes = new ArrayList<>();
+        for (String lemma : lemmas) {
+            bytes.add(lemma.getBytes(StandardCharsets.UTF_8));
+        }
+        return IndexModel.collect(hits -> set.search(bytes, Integer.MAX_VALUE, hits));
+    }
+
+    private static PageUpdate page(long pageId, String lemma, float rank) {
+        return new PageUpdate(pageId, new String[] {lemma}, new float[] {rank});
+    }
+}
@@ -0,0 +1,131 @@
+package searchengine.services.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import searchengine.services.crawler.PageUpdate;
+
+class SiteIndexTest {
+
+    private static final int VOCABULARY = 40;
+
+    @Test
+    void intersectsListsOfAllQueryLemmas() {
+        SiteIndex index = loaded(
+                page(1, "дом", 1, "кот", 2),
+                page(2, "дом", 3),
+                page(3, "дом", 1, "кот", 1, "лес", 1),
+                page(4, "кот", 4));
+
+        assertThat(search(index, List.of("дом", "кот"), 100))
+                .containsExactly(new SearchHit(1, 3f), new SearchHit(3, 2f));
+    }
+
+    @Test
+    void ignoresMissingAndTooFrequentLemmas() {
+        SiteIndex index = loaded(
+                page(1, "дом", 1, "кот", 2),
+                page(2, "дом", 3),
+                page(3, "дом", 1, "лес", 5));
+
+        // "дом" есть на трёх страницах из трёх и при пороге 2 отбрасывается
+        assertThat(search(index, List.of("дом", "лес", "нет"), 2)).containsExactly(new SearchHit(3, 5f));
+        assertThat(search(index, List.of("дом"), 2)).isEmpty();
+        assertThat(search(index, List.of("нет"), 100)).isEmpty();
+    }
+
+    @Test
+    void changedAndRemovedPagesReplaceTheirOldLemmas() {
+        SiteIndex index = loaded(page(1, "дом", 1), page(2, "дом", 2));
+
+        index.update(List.of(page(1, "кот", 1), PageUpdate.removal(2), page(3, "дом", 4)));
+
+        assertThat(search(index, List.of("дом"), 100)).containsExactly(new SearchHit(3, 4f));
+        assertThat(search(index, List.of("кот"), 100)).containsExactly(new SearchHit(1, 1f));
+        assertThat(index.liveDocs()).isEqualTo(2);
+    }
+
+    @Test
+    void updatesArriveDuringLoadingAreAppliedAfterIt() {
+        SiteIndex index = new SiteIndex(0);
+        index.load(page(1, "дом", 1));
+        index.update(List.of(page(1, "кот", 1)));
+
+        assertThat(index.isReady()).isFalse();
+        index.finishLoading();
+
+        assertThat(search(index, List.of("дом"), 100)).isEmpty();
+        assertThat(search(index, List.of("кот"), 100)).containsExactly(new SearchHit(1, 1f));
+    }
+
+    @Test
+    void matchesNaiveModelThroughUpdatesAndCompaction() {
+        Random random = new Random(22);
+        IndexModel model = new IndexModel();
+        SiteIndex index = new SiteIndex(0);
+        for (long pageId = 1; pageId <= 1_500; pageId++) {
+            PageUpdate page = IndexModel.randomPage(random, pageId, VOCABULARY, 8);
+            index.load(page);
+            model.apply(page);
+        }
+        index.finishLoading();
+        assertSameResults(random, model, index);
+
+        // Больше половины номеров документов устаревает, и индекс уплотняется
+        for (int batch = 0; batch < 10; batch++) {
+            List<PageUpdate> updates = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                long pageId = 1 + random.nextInt(1_700);
+                updates.add(random.nextInt(10) == 0 ? PageUpdate.removal(pageId)
+                        : IndexModel.randomPage(random, pageId, VOCABULARY, 8));
+            }
+            index.update(updates);
+            updates.forEach(model::apply);
+            assertSameResults(random, model, index);
+        }
+    }
+
+    private static void assertSameResults(Random random, IndexModel model, SiteIndex index) {
+        assertThat(index.liveDocs()).isEqualTo(model.pages().size());
+        for (int query = 0; query < 30; query++) {
+            List<String> lemmas = new ArrayList<>();
+            int size = 1 + random.nextInt(3);
+            for (int i = 0; i < size; i++) {
+                lemmas.add("lemma" + random.nextInt(VOCABULARY + 2));
+            }
+            int maxFrequency = random.nextBoolean() ? Integer.MAX_VALUE : model.pages().size() / 4;
+
+            assertThat(search(index, lemmas, maxFrequency)).as("запрос %s, порог %d", lemmas, maxFrequency)
+                    .isEqualTo(model.search(lemmas, maxFrequency));
+        }
+    }
+
+    private static List<SearchHit> search(SiteIndex index, List<String> lemmas, int maxFrequency) {
+        return IndexModel.collect(hits -> index.search(lemmas, maxFrequency, hits));
+    }
+
+    private static SiteIndex loaded(PageUpdate... pages) {
+        SiteIndex index = new SiteIndex(0);
+        for (PageUpdate page : pages) {
+            index.load(page);
+        }
+        index.finishLoading();
+        return index;
+    }
+
+    // Чередующиеся лемма и rank
+    private static PageUpdate page(long pageId, Object... lemmasAndRanks) {
+        String[] lemmas = new String[lemmasAndRanks.length / 2];
+        float[] ranks = new float[lemmas.length];
+        for (int i = 0; i < lemmas.length; i++) {
+            lemmas[i] = (String) lemmasAndRanks[2 * i];
+            ranks[i] = ((Number) lemmasAndRanks[2 * i + 1]).floatValue();
+        }
+        return new PageUpdate(pageId, lemmas, ranks);
+    }
+}
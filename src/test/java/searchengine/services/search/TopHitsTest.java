@@ -0,0 +1,113 @@
+package searchengine.services.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TopHitsTest {
+
+    private static final Comparator<SearchHit> ORDER = Comparator
+            .comparing(SearchHit::relevance, Comparator.reverseOrder())
+            .thenComparing(SearchHit::pageId);
+
+    @Test
+    void equalRelevanceIsOrderedByPageId() {
+        TopHits hits = new TopHits(0, 10);
+        hits.offer(7, 1f);
+        hits.offer(3, 2f);
+        hits.offer(5, 1f);
+        hits.offer(1, 1f);
+        hits.offer(9, 2f);
+
+        assertThat(hits.window(0)).containsExactly(new SearchHit(3, 2f), new SearchHit(9, 2f), new SearchHit(1, 1f),
+                new SearchHit(5, 1f), new SearchHit(7, 1f));
+    }
+
+    @Test
+    void tieAtTheBoundaryKeepsSmallerPageIds() {
+        TopHits hits = new TopHits(0, 2);
+        for (long pageId : new long[] {8, 4, 6, 2, 9}) {
+            hits.offer(pageId, 1f);
+        }
+
+        assertThat(hits.window(0)).containsExactly(new SearchHit(2, 1f), new SearchHit(4, 1f));
+        assertThat(hits.total()).isEqualTo(5);
+    }
+
+    @Test
+    void windowLargerThanResultReturnsEverything() {
+        TopHits hits = new TopHits(0, 100);
+        hits.offer(1, 1f);
+        hits.offer(2, 3f);
+        hits.offer(3, 2f);
+
+        assertThat(hits.window(0)).containsExactly(new SearchHit(2, 3f), new SearchHit(3, 2f), new SearchHit(1, 1f));
+        assertThat(hits.total()).isEqualTo(3);
+        assertThat(hits.maxRelevance()).isEqualTo(3f);
+    }
+
+    @Test
+    void offsetBeyondResultGivesEmptyWindowButKeepsTotal() {
+        TopHits hits = new TopHits(10, 5);
+        hits.offer(1, 1f);
+        hits.offer(2, 2f);
+
+        assertThat(hits.window(10)).isEmpty();
+        assertThat(hits.total()).isEqualTo(2);
+        assertThat(hits.maxRelevance()).isEqualTo(2f);
+    }
+
+    @Test
+    void emptyResult() {
+        TopHits hits = new TopHits(0, 10);
+
+        assertThat(hits.window(0)).isEmpty();
+        assertThat(hits.total()).isZero();
+        assertThat(hits.maxRelevance()).isZero();
+    }
+
+    @Test
+    void zeroLimitOnlyCounts() {
+        TopHits hits = new TopHits(0, 0);
+        hits.offer(1, 1f);
+        hits.offer(2, 5f);
+
+        assertThat(hits.window(0)).isEmpty();
+        assertThat(hits.total()).isEqualTo(2);
+        assertThat(hits.maxRelevance()).isEqualTo(5f);
+    }
+
+    @Test
+    void pagesConcatenateToFullSortWithManyTies() {
+        Random random = new Random(25);
+        for (int round = 0; round < 50; round++) {
+            List<SearchHit> offered = new ArrayList<>();
+            int count = random.nextInt(400);
+            for (int i = 0; i < count; i++) {
+                // Мало различных значений — много равных релевантностей
+                offered.add(new SearchHit(random.nextInt(1_000_000), random.nextInt(5) / 2f));
+            }
+            List<SearchHit> sorted = new ArrayList<>(offered);
+            sorted.sort(ORDER);
+            int limit = 1 + random.nextInt(30);
+
+            List<SearchHit> paged = new ArrayList<>();
+            for (int offset = 0; offset <= count; offset += limit) {
+                TopHits hits = new TopHits(offset, limit);
+                offered.forEach(hit -> hits.offer(hit.pageId(), hit.relevance()));
+                List<SearchHit> window = hits.window(offset);
+
+                assertThat(window).hasSizeLessThanOrEqualTo(limit);
+                assertThat(hits.total()).isEqualTo(count);
+                paged.addAll(window);
+            }
+
+            assertThat(paged).as("%d страниц по %d", count, limit).isEqualTo(sorted);
+        }
+    }
+}